@@ -63,6 +63,7 @@ import net.sourceforge.schemaspy.view.SqlFormatter;
 public class Config
 {
     private static Config instance;
+    private static final ThreadLocal<Config> threadInstance = new InheritableThreadLocal<Config>();
     private final List<String> options;
     private Map<String, String> dbSpecificOptions;
     private Map<String, String> originalDbSpecificOptions;
@@ -84,6 +85,7 @@ public class Config
     private Integer port;
     private String server;
     private String meta;
+    private File offlineXml;
     private Pattern tableInclusions;
     private Pattern tableExclusions;
     private Pattern columnExclusions;
@@ -91,7 +93,13 @@ public class Config
     private String userConnectionPropertiesFile;
     private Properties userConnectionProperties;
     private Integer maxDbThreads;
+    private Integer maxDotThreads;
+    private Integer maxSchemaThreads;
     private Integer maxDetailedTables;
+    private Integer rowCountTimeout;
+    private Integer summaryDiagramTimeout;
+    private Integer maxClusterSize;
+    private Long exactRowCountLimit;
     private String driverPath;
     private String css;
     private String charset;
@@ -110,6 +118,14 @@ public class Config
     private Boolean encodeCommentsEnabled;
     private Boolean numRowsEnabled;
     private Boolean viewsEnabled;
+    private Boolean diagramCacheEnabled;
+    private Boolean resumeEnabled;
+    private Boolean coordinatorEnabled;
+    private Boolean workerEnabled;
+    private Boolean bulkMetadataEnabled;
+    private Boolean skipFailedTables;
+    private Boolean snapshotEnabled;
+    private Boolean connectionPoolEnabled;
     private Boolean meterEnabled;
     private Boolean railsEnabled;
     private Boolean evaluteAll;
@@ -158,6 +174,10 @@ public class Config
     }
 
     public static Config getInstance() {
+        Config config = threadInstance.get();
+        if (config != null)
+            return config;
+
         if (instance == null)
             instance = new Config();
 
@@ -175,6 +195,21 @@ public class Config
         instance = config;
     }
 
+    /**
+     * Sets the instance that the current thread, and the threads that it starts
+     * from now on, get instead of the global instance.<p/>
+     *
+     * Used when several schemas are analyzed at once, each with its own configuration.
+     *
+     * @param config <code>null</code> to go back to the global instance
+     */
+    public static void setThreadInstance(Config config) {
+        if (config == null)
+            threadInstance.remove();
+        else
+            threadInstance.set(config);
+    }
+
     public void setHtmlGenerationEnabled(boolean generateHtml) {
         this.generateHtml = generateHtml;
     }
@@ -279,6 +314,30 @@ public class Config
         return meta;
     }
 
+    /**
+     * The XML written by a previous run of SchemaSpy (<code>[db].[schema].xml</code>).
+     * If specified then the output is generated from that XML instead of
+     * connecting to the database.
+     *
+     * @param offlineXml
+     */
+    public void setOfflineXml(File offlineXml) {
+        this.offlineXml = offlineXml;
+    }
+
+    /**
+     * @see #setOfflineXml(File)
+     * @return
+     */
+    public File getOfflineXml() {
+        if (offlineXml == null) {
+            String xml = pullParam("-offline");
+            if (xml != null)
+                offlineXml = new File(xml);
+        }
+        return offlineXml;
+    }
+
     public void setDbType(String dbType) {
         this.dbType = dbType;
     }
@@ -478,6 +537,126 @@ public class Config
         return maxDetailedTables.intValue();
     }
 
+    /**
+     * Maximum number of seconds to wait for the number of rows in a table
+     * to be counted before giving up on it.<p/>
+     *
+     * Defaults to <code>0</code> (no limit).
+     *
+     * @param seconds
+     */
+    public void setRowCountTimeout(int seconds) {
+        this.rowCountTimeout = new Integer(seconds);
+    }
+
+    /**
+     * @see #setRowCountTimeout(int)
+     * @return
+     */
+    public int getRowCountTimeout() {
+        if (rowCountTimeout == null) {
+            int seconds = 0; // default
+            try {
+                seconds = Integer.parseInt(pullParam("-rowtimeout"));
+            } catch (Exception notSpecified) {}
+
+            rowCountTimeout = new Integer(Math.max(seconds, 0));
+        }
+
+        return rowCountTimeout.intValue();
+    }
+
+    /**
+     * Maximum number of seconds to spend rendering each of the summary diagrams.
+     * If the diagram can't be rendered in time then progressively cheaper
+     * versions of it are rendered instead.<p/>
+     *
+     * Defaults to <code>0</code> (no limit).
+     *
+     * @param seconds
+     */
+    public void setSummaryDiagramTimeout(int seconds) {
+        this.summaryDiagramTimeout = new Integer(seconds);
+    }
+
+    /**
+     * @see #setSummaryDiagramTimeout(int)
+     * @return
+     */
+    public int getSummaryDiagramTimeout() {
+        if (summaryDiagramTimeout == null) {
+            int seconds = 0; // default
+            try {
+                seconds = Integer.parseInt(pullParam("-summarytimeout"));
+            } catch (Exception notSpecified) {}
+
+            summaryDiagramTimeout = new Integer(Math.max(seconds, 0));
+        }
+
+        return summaryDiagramTimeout.intValue();
+    }
+
+    /**
+     * Maximum number of related tables to put in a summary diagram.
+     * If there are more than that then the summary diagram is split into
+     * diagrams of clusters of closely related tables along with an overview
+     * of how the clusters relate to each other.<p/>
+     *
+     * Defaults to <code>500</code>.  <code>0</code> never splits the summary diagram.
+     *
+     * @param maxClusterSize
+     */
+    public void setMaxClusterSize(int maxClusterSize) {
+        this.maxClusterSize = new Integer(maxClusterSize);
+    }
+
+    /**
+     * @see #setMaxClusterSize(int)
+     * @return
+     */
+    public int getMaxClusterSize() {
+        if (maxClusterSize == null) {
+            int max = 500; // default
+            try {
+                max = Integer.parseInt(pullParam("-clustersize"));
+            } catch (Exception notSpecified) {}
+
+            maxClusterSize = new Integer(Math.max(max, 0));
+        }
+
+        return maxClusterSize.intValue();
+    }
+
+    /**
+     * Tables that the database estimates (via <code>selectRowEstimatesSql</code>)
+     * to have more than this number of rows will report that estimate
+     * instead of having their rows counted.<p/>
+     *
+     * Defaults to <code>100000</code>.
+     *
+     * @param rows
+     */
+    public void setExactRowCountLimit(long rows) {
+        this.exactRowCountLimit = new Long(rows);
+    }
+
+    /**
+     * @see #setExactRowCountLimit(long)
+     * @return
+     */
+    public long getExactRowCountLimit() {
+        if (exactRowCountLimit == null) {
+            long rows = 100000; // default
+            try {
+                rows = Long.parseLong(pullParam("-exactrows"));
+            } catch (Exception notSpecified) {}
+
+            exactRowCountLimit = new Long(rows);
+        }
+
+        return exactRowCountLimit.longValue();
+    }
+
     public String getConnectionPropertiesFile() {
         return userConnectionPropertiesFile;
     }
@@ -677,6 +856,69 @@ public class Config
         return description;
     }
 
+    /**
+     * Maximum number of <code>dot</code> processes to run at once while
+     * rendering the diagrams of the tables.<p/>
+     *
+     * Defaults to the number of available processors.
+     *
+     * @param maxDotThreads
+     */
+    public void setMaxDotThreads(int maxDotThreads) {
+        this.maxDotThreads = new Integer(maxDotThreads);
+    }
+
+    /**
+     * @see #setMaxDotThreads(int)
+     */
+    public int getMaxDotThreads() {
+        if (maxDotThreads == null) {
+            int max = Runtime.getRuntime().availableProcessors();
+            String threads = pullParam("-dotThreads");
+            if (threads == null)
+                threads = pullParam("-dotthreads");
+            if (threads != null)
+                max = Integer.parseInt(threads);
+            if (max < 1)
+                max = 1;
+
+            maxDotThreads = new Integer(max);
+        }
+
+        return maxDotThreads.intValue();
+    }
+
+    /**
+     * Maximum number of schemas to analyze at once when analyzing multiple schemas.<p/>
+     *
+     * Defaults to 1.
+     *
+     * @param maxSchemaThreads
+     */
+    public void setMaxSchemaThreads(int maxSchemaThreads) {
+        this.maxSchemaThreads = new Integer(maxSchemaThreads);
+    }
+
+    /**
+     * @see #setMaxSchemaThreads(int)
+     */
+    public int getMaxSchemaThreads() {
+        if (maxSchemaThreads == null) {
+            int max = 1;
+            String threads = pullParam("-schemaThreads");
+            if (threads == null)
+                threads = pullParam("-schemathreads");
+            if (threads != null)
+                max = Integer.parseInt(threads);
+            if (max < 1)
+                max = 1;
+
+            maxSchemaThreads = new Integer(max);
+        }
+
+        return maxSchemaThreads.intValue();
+    }
+
     /**
      * Maximum number of threads to use when querying database metadata information.
      *
@@ -723,6 +965,30 @@ public class Config
         return maxDbThreads.intValue();
     }
 
+    /**
+     * If enabled then each of the threads that query database metadata
+     * (see {@link #setMaxDbThreads(int)}) will use its own connection to the database
+     * instead of all of them sharing a single connection.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setConnectionPoolEnabled(boolean enabled) {
+        connectionPoolEnabled = enabled;
+    }
+
+    /**
+     * @see #setConnectionPoolEnabled(boolean)
+     * @return
+     */
+    public boolean isConnectionPoolEnabled() {
+        if (connectionPoolEnabled == null)
+            connectionPoolEnabled = options.remove("-dbpool");
+
+        return connectionPoolEnabled;
+    }
+
     public boolean isLogoEnabled() {
         if (logoEnabled == null)
             logoEnabled = !options.remove("-nologo");
@@ -838,6 +1104,179 @@ public class Config
         return viewsEnabled;
     }
 
+    /**
+     * If enabled we'll keep a copy of the diagrams that we render in the output directory
+     * (<code>diagrams/cache</code>) and reuse them in subsequent runs if nothing
+     * that they depict has changed.<p/>
+     *
+     * Defaults to <code>false</code> (disabled) since the copies double the
+     * disk space that the diagrams take.
+     *
+     * @param enabled
+     */
+    public void setDiagramCacheEnabled(boolean enabled) {
+        diagramCacheEnabled = enabled;
+    }
+
+    /**
+     * @see #setDiagramCacheEnabled(boolean)
+     * @return
+     */
+    public boolean isDiagramCacheEnabled() {
+        if (diagramCacheEnabled == null)
+            diagramCacheEnabled = options.remove("-diagramcache");
+
+        return diagramCacheEnabled;
+    }
+
+    /**
+     * If enabled then a multiple schema run picks up where a previous run into the
+     * same output directory left off, skipping the schemas that its manifest
+     * says were analyzed and only analyzing the ones that failed or weren't gotten to.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setResumeEnabled(boolean enabled) {
+        resumeEnabled = enabled;
+    }
+
+    /**
+     * @see #setResumeEnabled(boolean)
+     * @return
+     */
+    public boolean isResumeEnabled() {
+        if (resumeEnabled == null)
+            resumeEnabled = options.remove("-resume");
+
+        return resumeEnabled;
+    }
+
+    /**
+     * If enabled then a multiple schema run queues up its schemas in the output directory
+     * so that {@link #isWorkerEnabled() workers}, in other processes and possibly on
+     * other machines that share the output directory, can help analyze them.
+     * The coordinator analyzes schemas too and writes the index once they're all done.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setCoordinatorEnabled(boolean enabled) {
+        coordinatorEnabled = enabled;
+    }
+
+    /**
+     * @see #setCoordinatorEnabled(boolean)
+     * @return
+     */
+    public boolean isCoordinatorEnabled() {
+        if (coordinatorEnabled == null)
+            coordinatorEnabled = options.remove("-coordinator");
+
+        return coordinatorEnabled;
+    }
+
+    /**
+     * If enabled then a multiple schema run analyzes the schemas that a
+     * {@link #isCoordinatorEnabled() coordinator} queued up in the output directory
+     * until there aren't any left.
+     * Workers take the same options as the coordinator.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setWorkerEnabled(boolean enabled) {
+        workerEnabled = enabled;
+    }
+
+    /**
+     * @see #setWorkerEnabled(boolean)
+     * @return
+     */
+    public boolean isWorkerEnabled() {
+        if (workerEnabled == null)
+            workerEnabled = options.remove("-worker");
+
+        return workerEnabled;
+    }
+
+    /**
+     * If enabled we'll harvest metadata (such as table columns) for the entire
+     * schema with a single query rather than issuing one query per table.
+     * This drastically reduces the number of round trips to the database
+     * for schemas with lots of tables, but not all drivers support it.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setBulkMetadataEnabled(boolean enabled) {
+        bulkMetadataEnabled = enabled;
+    }
+
+    /**
+     * @see #setBulkMetadataEnabled(boolean)
+     * @return
+     */
+    public boolean isBulkMetadataEnabled() {
+        if (bulkMetadataEnabled == null)
+            bulkMetadataEnabled = options.remove("-bulkmeta");
+
+        return bulkMetadataEnabled;
+    }
+
+    /**
+     * If enabled, tables whose details can't be retrieved (e.g. they were dropped
+     * during the run or we lack permission to read them) are reported and left
+     * out of the model rather than aborting the analysis.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param skip
+     */
+    public void setSkipFailedTables(boolean skip) {
+        skipFailedTables = skip;
+    }
+
+    /**
+     * @see #setSkipFailedTables(boolean)
+     * @return
+     */
+    public boolean isSkipFailedTables() {
+        if (skipFailedTables == null)
+            skipFailedTables = options.remove("-skipfailedtables");
+
+        return skipFailedTables;
+    }
+
+    /**
+     * If enabled we'll keep a snapshot of the details of the schema's tables
+     * in the output directory and only query the details of tables that
+     * have changed since the snapshot was taken.
+     * Requires <code>selectTableChangesSql</code> in the database type's .properties.<p/>
+     *
+     * Defaults to <code>false</code> (disabled).
+     *
+     * @param enabled
+     */
+    public void setSnapshotEnabled(boolean enabled) {
+        snapshotEnabled = enabled;
+    }
+
+    /**
+     * @see #setSnapshotEnabled(boolean)
+     * @return
+     */
+    public boolean isSnapshotEnabled() {
+        if (snapshotEnabled == null)
+            snapshotEnabled = options.remove("-snapshot");
+
+        return snapshotEnabled;
+    }
+
     /**
      * Returns <code>true</code> if metering should be embedded in
      * the generated pages.<p/>
@@ -1732,6 +2171,22 @@ public class Config
             params.add("-norows");
         if (!isViewsEnabled())
             params.add("-noviews");
+        if (isResumeEnabled())
+            params.add("-resume");
+        if (isCoordinatorEnabled())
+            params.add("-coordinator");
+        if (isWorkerEnabled())
+            params.add("-worker");
+        if (isDiagramCacheEnabled())
+            params.add("-diagramcache");
+        if (isBulkMetadataEnabled())
+            params.add("-bulkmeta");
+        if (isSkipFailedTables())
+            params.add("-skipfailedtables");
+        if (isConnectionPoolEnabled())
+            params.add("-dbpool");
+        if (isSnapshotEnabled())
+            params.add("-snapshot");
         if (isRankDirBugEnabled())
             params.add("-rankdirbug");
         if (isRailsEnabled())
@@ -1847,8 +2302,20 @@ public class Config
         params.add(getIndirectColumnExclusions().toString());
         params.add("-dbthreads");
         params.add(String.valueOf(getMaxDbThreads()));
+        params.add("-dotthreads");
+        params.add(String.valueOf(getMaxDotThreads()));
+        params.add("-schemathreads");
+        params.add(String.valueOf(getMaxSchemaThreads()));
         params.add("-maxdet");
         params.add(String.valueOf(getMaxDetailedTables()));
+        params.add("-rowtimeout");
+        params.add(String.valueOf(getRowCountTimeout()));
+        params.add("-summarytimeout");
+        params.add(String.valueOf(getSummaryDiagramTimeout()));
+        params.add("-clustersize");
+        params.add(String.valueOf(getMaxClusterSize()));
+        params.add("-exactrows");
+        params.add(String.valueOf(getExactRowCountLimit()));
         params.add("-o");
         params.add(getOutputDir().toString());
 
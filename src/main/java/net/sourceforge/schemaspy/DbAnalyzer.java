@@ -27,11 +27,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -44,35 +50,43 @@ import net.sourceforge.schemaspy.model.TableIndex;
 import net.sourceforge.schemaspy.util.Inflection;
 
 public class DbAnalyzer {
+    /**
+     * Number of tables beyond which matching columns to primary keys
+     * is spread across the available processors
+     */
+    private static final int PARALLEL_THRESHOLD = 1000;
+
+    /**
+     * Returns the relationships implied by columns that have the same name, type
+     * and length as the primary key of another table.<p/>
+     *
+     * Primary keys are indexed by their normalized signature, so each column is
+     * matched with a hash lookup rather than a series of case-insensitive comparisons.
+     * Composite primary keys are matched by the signatures of all of their columns;
+     * a table is a child of a composite key if it has a column matching each column of the key.
+     *
+     * @param tables
+     * @return
+     */
     public static List<ImpliedForeignKeyConstraint> getImpliedConstraints(Collection<Table> tables) {
-        List<TableColumn> columnsWithoutParents = new ArrayList<TableColumn>();
-        Map<TableColumn, Table> allPrimaries = new TreeMap<TableColumn, Table>(new Comparator<TableColumn>() {
-            public int compare(TableColumn column1, TableColumn column2) {
-                int rc = column1.getName().compareToIgnoreCase(column2.getName());
-                if (rc == 0)
-                    rc = column1.getType().compareToIgnoreCase(column2.getType());
-                if (rc == 0)
-                    rc = column1.getLength() - column2.getLength();
-                return rc;
-            }
-        });
+        Map<ColumnSignature, TableColumn> allPrimaries = new HashMap<ColumnSignature, TableColumn>();
+        Map<List<ColumnSignature>, CompositeKey> compositePrimaries = new HashMap<List<ColumnSignature>, CompositeKey>();
+        Set<List<ColumnSignature>> ambiguousComposites = new HashSet<List<ColumnSignature>>();
 
         int duplicatePrimaries = 0;
 
-        // gather all the primary key columns and columns without parents
+        // gather all the primary keys
         for (Table table : tables) {
             List<TableColumn> tablePrimaries = table.getPrimaryColumns();
-            if (tablePrimaries.size() == 1) { // can't match up multiples...yet...
-                for (TableColumn primary : tablePrimaries) {
-                    if (primary.allowsImpliedChildren() &&
-                        allPrimaries.put(primary, table) != null)
-                        ++duplicatePrimaries;
-                }
-            }
-
-            for (TableColumn column : table.getColumns()) {
-                if (!column.isForeignKey() && column.allowsImpliedParents())
-                    columnsWithoutParents.add(column);
+            if (tablePrimaries.size() == 1) {
+                TableColumn primary = tablePrimaries.get(0);
+                if (primary.allowsImpliedChildren() &&
+                    allPrimaries.put(new ColumnSignature(primary), primary) != null)
+                    ++duplicatePrimaries;
+            } else if (tablePrimaries.size() > 1) {
+                CompositeKey key = CompositeKey.create(tablePrimaries);
+                if (key != null && compositePrimaries.put(key.signatures, key) != null)
+                    ambiguousComposites.add(key.signatures);
             }
         }
 
@@ -82,26 +96,265 @@ public class DbAnalyzer {
         if (duplicatePrimaries > allPrimaries.size()) // bizarre logic, but it does approximately what we need
             return new ArrayList<ImpliedForeignKeyConstraint>();
 
-        sortColumnsByTable(columnsWithoutParents);
+        // a composite key that several tables have doesn't imply anything about which one is the parent.
+        // the rest are indexed by their first column so a table only checks the keys that it might match
+        compositePrimaries.keySet().removeAll(ambiguousComposites);
+        Map<ColumnSignature, List<CompositeKey>> compositesByFirstColumn = new HashMap<ColumnSignature, List<CompositeKey>>();
+        for (CompositeKey key : compositePrimaries.values()) {
+            List<CompositeKey> keys = compositesByFirstColumn.get(key.signatures.get(0));
+            if (keys == null) {
+                keys = new ArrayList<CompositeKey>();
+                compositesByFirstColumn.put(key.signatures.get(0), keys);
+            }
+            keys.add(key);
+        }
+
+        List<Table> sortedTables = new ArrayList<Table>(tables);
+        Collections.sort(sortedTables);
+
+        ImpliedKeyMatcher matcher = new ImpliedKeyMatcher(allPrimaries, compositesByFirstColumn);
+        List<List<ImpliedKeyMatch>> matches;
+        if (sortedTables.size() < PARALLEL_THRESHOLD)
+            matches = matcher.getMatches(sortedTables);
+        else
+            matches = getMatchesInParallel(matcher, sortedTables);
 
+        // the constraints "glue" the columns together, so they're created one at a time
         List<ImpliedForeignKeyConstraint> impliedConstraints = new ArrayList<ImpliedForeignKeyConstraint>();
-        for (TableColumn childColumn : columnsWithoutParents) {
-            Table primaryTable = allPrimaries.get(childColumn);
-            if (primaryTable != null && primaryTable != childColumn.getTable()) {
-                TableColumn parentColumn = primaryTable.getColumn(childColumn.getName());
-                // make sure the potential child->parent relationships isn't already a
-                // parent->child relationship
-                if (parentColumn.getParentConstraint(childColumn) == null) {
-                    // ok, we've found a potential relationship with a column matches a primary
-                    // key column in another table and isn't already related to that column
-                    impliedConstraints.add(new ImpliedForeignKeyConstraint(parentColumn, childColumn));
-                }
+        for (List<ImpliedKeyMatch> tableMatches : matches) {
+            for (ImpliedKeyMatch match : tableMatches) {
+                ImpliedForeignKeyConstraint constraint = match.createConstraint();
+                if (constraint != null)
+                    impliedConstraints.add(constraint);
             }
         }
 
         return impliedConstraints;
     }
 
+    /**
+     * Match the tables in chunks, one chunk per processor.
+     * Matching only reads the tables, so the chunks are independent of each other.
+     */
+    private static List<List<ImpliedKeyMatch>> getMatchesInParallel(final ImpliedKeyMatcher matcher, List<Table> tables) {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = (tables.size() + numThreads - 1) / numThreads;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            List<Future<List<List<ImpliedKeyMatch>>>> chunks = new ArrayList<Future<List<List<ImpliedKeyMatch>>>>();
+            for (int i = 0; i < tables.size(); i += chunkSize) {
+                final List<Table> chunk = tables.subList(i, Math.min(i + chunkSize, tables.size()));
+                chunks.add(executor.submit(new Callable<List<List<ImpliedKeyMatch>>>() {
+                    public List<List<ImpliedKeyMatch>> call() {
+                        return matcher.getMatches(chunk);
+                    }
+                }));
+            }
+
+            List<List<ImpliedKeyMatch>> matches = new ArrayList<List<ImpliedKeyMatch>>(tables.size());
+            for (Future<List<List<ImpliedKeyMatch>>> chunk : chunks)
+                matches.addAll(chunk.get());
+            return matches;
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exc);
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Finds the primary keys that the columns of a table imply that it's a child of.
+     * Doesn't modify anything, so it can be used by several threads at once.
+     */
+    private static class ImpliedKeyMatcher {
+        private final Map<ColumnSignature, TableColumn> primaries;
+        private final Map<ColumnSignature, List<CompositeKey>> compositesByFirstColumn;
+
+        ImpliedKeyMatcher(Map<ColumnSignature, TableColumn> primaries, Map<ColumnSignature, List<CompositeKey>> compositesByFirstColumn) {
+            this.primaries = primaries;
+            this.compositesByFirstColumn = compositesByFirstColumn;
+        }
+
+        /**
+         * Returns the matches of each of the tables, in the same order as the tables
+         */
+        List<List<ImpliedKeyMatch>> getMatches(List<Table> tables) {
+            List<List<ImpliedKeyMatch>> matches = new ArrayList<List<ImpliedKeyMatch>>(tables.size());
+            for (Table table : tables)
+                matches.add(getMatches(table));
+            return matches;
+        }
+
+        private List<ImpliedKeyMatch> getMatches(Table table) {
+            List<TableColumn> columnsWithoutParents = new ArrayList<TableColumn>();
+            for (TableColumn column : table.getColumns()) {
+                if (!column.isForeignKey() && column.allowsImpliedParents())
+                    columnsWithoutParents.add(column);
+            }
+            sortColumnsByTable(columnsWithoutParents);
+
+            List<ImpliedKeyMatch> matches = new ArrayList<ImpliedKeyMatch>();
+            Map<ColumnSignature, TableColumn> signatures = new HashMap<ColumnSignature, TableColumn>();
+            List<CompositeKey> candidates = new ArrayList<CompositeKey>();
+
+            for (TableColumn childColumn : columnsWithoutParents) {
+                ColumnSignature signature = new ColumnSignature(childColumn);
+                signatures.put(signature, childColumn);
+
+                TableColumn parentColumn = primaries.get(signature);
+                if (parentColumn != null && parentColumn.getTable() != table)
+                    matches.add(new ImpliedKeyMatch(parentColumn, childColumn));
+
+                List<CompositeKey> keys = compositesByFirstColumn.get(signature);
+                if (keys != null)
+                    candidates.addAll(keys);
+            }
+
+            for (CompositeKey key : candidates) {
+                if (key.table == table)
+                    continue;
+
+                List<TableColumn> childColumns = new ArrayList<TableColumn>(key.signatures.size());
+                for (ColumnSignature signature : key.signatures) {
+                    TableColumn childColumn = signatures.get(signature);
+                    if (childColumn == null)
+                        break;
+                    childColumns.add(childColumn);
+                }
+
+                if (childColumns.size() == key.signatures.size())
+                    matches.add(new ImpliedKeyMatch(key.columns, childColumns));
+            }
+
+            return matches;
+        }
+    }
+
+    /**
+     * Child columns that are implied to reference the corresponding parent columns
+     */
+    private static class ImpliedKeyMatch {
+        private final List<TableColumn> parentColumns;
+        private final List<TableColumn> childColumns;
+
+        ImpliedKeyMatch(TableColumn parentColumn, TableColumn childColumn) {
+            this(Collections.singletonList(parentColumn), Collections.singletonList(childColumn));
+        }
+
+        ImpliedKeyMatch(List<TableColumn> parentColumns, List<TableColumn> childColumns) {
+            this.parentColumns = parentColumns;
+            this.childColumns = childColumns;
+        }
+
+        /**
+         * Returns the new constraint or <code>null</code> if the columns are
+         * already related the other way around
+         */
+        ImpliedForeignKeyConstraint createConstraint() {
+            // make sure the potential child->parent relationships isn't already a
+            // parent->child relationship
+            for (int i = 0; i < parentColumns.size(); ++i) {
+                if (parentColumns.get(i).getParentConstraint(childColumns.get(i)) != null)
+                    return null;
+            }
+
+            // ok, we've found a potential relationship with columns that match a primary
+            // key in another table and aren't already related to it
+            if (parentColumns.size() == 1)
+                return new ImpliedForeignKeyConstraint(parentColumns.get(0), childColumns.get(0));
+            return new ImpliedForeignKeyConstraint(parentColumns, childColumns);
+        }
+    }
+
+    /**
+     * A composite primary key with its columns ordered by their signatures
+     */
+    private static class CompositeKey {
+        private final Table table;
+        private final List<TableColumn> columns;
+        private final List<ColumnSignature> signatures;
+
+        private CompositeKey(Table table, List<TableColumn> columns, List<ColumnSignature> signatures) {
+            this.table = table;
+            this.columns = columns;
+            this.signatures = signatures;
+        }
+
+        /**
+         * Returns <code>null</code> if any of the columns can't have implied children
+         */
+        static CompositeKey create(List<TableColumn> primaries) {
+            Map<ColumnSignature, TableColumn> sorted = new TreeMap<ColumnSignature, TableColumn>();
+            for (TableColumn primary : primaries) {
+                if (!primary.allowsImpliedChildren())
+                    return null;
+                sorted.put(new ColumnSignature(primary), primary);
+            }
+
+            return new CompositeKey(primaries.get(0).getTable(),
+                                    new ArrayList<TableColumn>(sorted.values()),
+                                    new ArrayList<ColumnSignature>(sorted.keySet()));
+        }
+    }
+
+    /**
+     * The case-insensitive name, type and length of a column, normalized once
+     * so that it can be hashed.  Columns with equal signatures compare the same
+     * way that {@link String#compareToIgnoreCase(String)} would compare them.
+     */
+    private static class ColumnSignature implements Comparable<ColumnSignature> {
+        private final String name;
+        private final String type;
+        private final int length;
+        private final int hashCode;
+
+        ColumnSignature(TableColumn column) {
+            name = normalize(column.getName());
+            type = normalize(column.getType());
+            length = column.getLength();
+            hashCode = (name.hashCode() * 31 + type.hashCode()) * 31 + length;
+        }
+
+        private static String normalize(String value) {
+            char[] chars = value.toCharArray();
+            for (int i = 0; i < chars.length; ++i)
+                chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+            return new String(chars);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ColumnSignature))
+                return false;
+            ColumnSignature signature = (ColumnSignature)other;
+            return hashCode == signature.hashCode && length == signature.length &&
+                   name.equals(signature.name) && type.equals(signature.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public int compareTo(ColumnSignature other) {
+            int rc = name.compareTo(other.name);
+            if (rc == 0)
+                rc = type.compareTo(other.type);
+            if (rc == 0)
+                rc = length - other.length;
+            return rc;
+        }
+    }
+
     /**
      * Ruby on Rails-based databases typically have no real referential integrity
      * constraints.  Instead they have a somewhat unusual way of associating
@@ -20,22 +20,27 @@ package net.sourceforge.schemaspy;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
-import java.io.Reader;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import net.sourceforge.schemaspy.model.InvalidConfigurationException;
 import net.sourceforge.schemaspy.model.ProcessExecutionException;
+import net.sourceforge.schemaspy.util.DivertingOutputStream;
 import net.sourceforge.schemaspy.util.LineWriter;
 import net.sourceforge.schemaspy.view.HtmlMultipleSchemasIndexPage;
 
@@ -44,6 +49,7 @@ import net.sourceforge.schemaspy.view.HtmlMultipleSchemasIndexPage;
  */
 public final class MultipleSchemaAnalyzer {
     private static MultipleSchemaAnalyzer instance = new MultipleSchemaAnalyzer();
+    private static final long QUEUE_POLL_MILLIS = 5000;
     private final Logger logger = Logger.getLogger(getClass().getName());
     private final boolean fineEnabled = logger.isLoggable(Level.FINE);
 
@@ -54,42 +60,46 @@ public final class MultipleSchemaAnalyzer {
         return instance;
     }
 
+    /**
+     * Analyze each of the schemas with <code>analyzer</code>, in this JVM, so they share
+     * its loaded drivers, database properties and connections (see
+     * {@link SchemaAnalyzer#analyze(Config)}).<p/>
+     *
+     * Up to {@link Config#getMaxSchemaThreads()} schemas are analyzed at once.
+     * When more than one is, each schema's console output is held back until
+     * the schema's done so the output of the schemas doesn't get jumbled together.<p/>
+     *
+     * A schema that fails to be analyzed doesn't keep the rest of them from being
+     * analyzed.  The failures are reported once all of them have been attempted
+     * and the index of the schemas only lists the ones that were analyzed.
+     * How each schema went is recorded in a {@link RunManifest manifest} so that
+     * a {@link Config#isResumeEnabled() resumed} run only redoes the ones that didn't complete.<p/>
+     *
+     * A {@link Config#isCoordinatorEnabled() coordinator} puts the schemas in a {@link WorkQueue}
+     * in the output directory instead, works on them along with any
+     * {@link Config#isWorkerEnabled() workers} that are pointed at the same output directory
+     * and then writes the index once they're all done.
+     */
     public void analyze(String dbName, DatabaseMetaData meta, String schemaSpec, List<String> schemas,
-            List<String> args, Config config) throws SQLException, IOException {
+            List<String> args, Config config, SchemaAnalyzer analyzer) throws SQLException, IOException {
         long start = System.currentTimeMillis();
-        String loadedFrom = Config.getLoadedFromJar();
         File outputDir = config.getOutputDir();
 
-        List<String> genericCommand = new ArrayList<String>();
-        genericCommand.add("java");
-        genericCommand.add("-Doneofmultipleschemas=true");
-        if (new File(loadedFrom).isDirectory()) {
-            genericCommand.add("-cp");
-            genericCommand.add(loadedFrom);
-            genericCommand.add(Main.class.getName());
-        } else {
-            genericCommand.add("-jar");
-            genericCommand.add(loadedFrom);
-        }
-
         args = new ArrayList<String>(args); // rude to modify caller's params, so make a copy
 
         args.remove("-all");
+        args.remove("-coordinator");
+        args.remove("-worker");
         SchemaAnalyzer.yankParam(args, "-o");
         SchemaAnalyzer.yankParam(args, "-s");
 
-        // these are passed through environment variables
+        // handed over directly rather than exposing it in the list of options
         SchemaAnalyzer.yankParam(args, "-p");
-        SchemaAnalyzer.yankParam(args, "-i");
-        SchemaAnalyzer.yankParam(args, "-I");
-        SchemaAnalyzer.yankParam(args, "-x");
-        SchemaAnalyzer.yankParam(args, "-X");
-
-        for (String next : args) {
-            if (next.startsWith("-"))
-                genericCommand.add(next);
-            else
-                genericCommand.add("\"" + next + "\"");
+
+        if (config.isWorkerEnabled()) {
+            // the coordinator decides what gets analyzed and writes the index
+            work(dbName, args, config, analyzer);
+            return;
         }
 
         List<String> populatedSchemas;
@@ -110,67 +120,190 @@ public final class MultipleSchemaAnalyzer {
             System.out.print(" " + populatedSchema);
         System.out.println();
 
-        writeIndexPage(dbName, populatedSchemas, meta, outputDir, config.getCharset());
+        RunManifest manifest = new RunManifest(outputDir, config.isResumeEnabled());
+        WorkQueue queue = config.isCoordinatorEnabled() ? new WorkQueue(outputDir) : null;
+        if (queue != null && config.isResumeEnabled())
+            queue.reportTo(manifest);   // whatever was finished before the coordinator went away
 
-        Map<String, String> env = System.getenv();
-        List<String> childEnv = new ArrayList<String>();
-        for (Entry<String, String> entry : env.entrySet()) {
-            childEnv.add(entry.getKey() + '=' + entry.getValue());
+        List<String> toAnalyze = new ArrayList<String>();
+        for (String schema : populatedSchemas) {
+            if (config.isResumeEnabled() && manifest.isCompleted(schema))
+                System.out.println("Skipping " + schema + ", which was analyzed by a previous run");
+            else
+                toAnalyze.add(schema);
         }
 
-        // safer to pass password in environment so it can't be directly seen in cmd line
-        childEnv.add("schemaspy.pw=" + config.getPassword());
+        int numThreads = Math.min(config.getMaxSchemaThreads(), toAnalyze.size());
+        String wasOneOfMultipleSchemas = System.getProperty("oneofmultipleschemas");
+        System.setProperty("oneofmultipleschemas", "true");
+        DivertedConsole console = numThreads > 1 ? new DivertedConsole() : null;
 
-        // some shells expand these regular expressions, so attempt to preserve them
-        // by passing in the environment
-        childEnv.add("schemaspy.tableInclusions=" + config.getTableInclusions());
-        childEnv.add("schemaspy.tableExclusions=" + config.getTableExclusions());
-        childEnv.add("schemaspy.columnExclusions=" + config.getColumnExclusions());
-        childEnv.add("schemaspy.indirectColumnExclusions=" + config.getIndirectColumnExclusions());
+        try {
+            if (queue != null) {
+                queue.create(toAnalyze);
+                System.out.println("Queued " + toAnalyze.size() + " schemas for workers (-worker) to analyze");
 
-        for (String schema : populatedSchemas) {
-            List<String> command = new ArrayList<String>(genericCommand);
-            // if no database was specified then we're dealing with a database
-            // that treats a schema as the database
-            if (dbName == null)
-                command.add("-db");
-            else
-                command.add("-s");
-            command.add(schema);
-            command.add("-o");
-            command.add(new File(outputDir, schema).toString());
-            System.out.println("Analyzing " + schema);
-            System.out.flush();
-            logger.fine("Analyzing schema with: " + command);
-            Process java = Runtime.getRuntime().exec(command.toArray(new String[]{}), childEnv.toArray(new String[]{}));
-            new ProcessOutputReader(java.getInputStream(), System.out).start();
-            new ProcessOutputReader(java.getErrorStream(), System.err).start();
+                List<QueueWorker> workers = new ArrayList<QueueWorker>();
+                for (int i = 0; i < numThreads; ++i)
+                    workers.add(new QueueWorker(queue, dbName, args, config.getPassword(), outputDir, analyzer, console));
+                run(workers, workers.size());
 
-            try {
-                int rc = java.waitFor();
-                if (rc != 0) {
-                    StringBuilder err = new StringBuilder("Failed to execute this process (rc " + rc + "):");
-                    for (String chunk : command) {
-                        err.append(" ");
-                        err.append(chunk);
-                    }
-                    throw new ProcessExecutionException(err.toString());
+                // wait for the other workers, picking up the schemas of any that die along the way
+                boolean waiting = false;
+                while (queue.hasClaims()) {
+                    if (!waiting)
+                        System.out.println("Waiting for the other workers to finish");
+                    waiting = true;
+                    sleep(QUEUE_POLL_MILLIS);
+                    run(workers, workers.size());
+                }
+
+                queue.reportTo(manifest);
+            } else {
+                List<SchemaAnalysis> analyses = new ArrayList<SchemaAnalysis>();
+                for (String schema : toAnalyze)
+                    analyses.add(new SchemaAnalysis(schema, getSchemaArgs(dbName, schema, args, outputDir), config.getPassword(), analyzer, manifest, console));
+                if (numThreads <= 1) {
+                    for (SchemaAnalysis analysis : analyses)
+                        analysis.call();
+                } else {
+                    run(analyses, numThreads);
                 }
-            } catch (InterruptedException exc) {
             }
+        } finally {
+            if (console != null)
+                console.close();
+            if (queue != null)
+                queue.close();
+            if (wasOneOfMultipleSchemas == null)
+                System.getProperties().remove("oneofmultipleschemas");
+            else
+                System.setProperty("oneofmultipleschemas", wasOneOfMultipleSchemas);
+            Config.setInstance(config);
+        }
+
+        // only now do we know which of the schemas there's something to link to
+        List<String> analyzedSchemas = new ArrayList<String>();
+        List<String> failures = new ArrayList<String>();
+        for (String schema : populatedSchemas) {
+            if (manifest.isCompleted(schema))
+                analyzedSchemas.add(schema);
+            else
+                failures.add(schema);
+        }
+        writeIndexPage(dbName, analyzedSchemas, meta, outputDir, config.getCharset());
+
+        long end = System.currentTimeMillis();
+        System.out.println();
+        System.out.println("Wrote relationship details of " + analyzedSchemas.size() + " schema" + (analyzedSchemas.size() == 1 ? "" : "s") + " in " + (end - start) / 1000 + " seconds.");
+        if (!analyzedSchemas.isEmpty())
+            System.out.println("Start with " + new File(outputDir, "index.html"));
+
+        if (!failures.isEmpty())
+            throw new ProcessExecutionException("Failed to analyze " + failures.size() + " of " + populatedSchemas.size() + " schemas: " + failures +
+                                                "\nUse -resume to only retry those schemas");
+    }
+
+    public void analyze(String dbName, List<String> schemas, List<String> args, Config config, SchemaAnalyzer analyzer) throws SQLException, IOException {
+        analyze(dbName, null, null, schemas, args, config, analyzer);
+    }
+
+    /**
+     * Work on the schemas that a coordinator queued up in the output directory
+     * until there aren't any left to claim.
+     */
+    private void work(String dbName, List<String> args, Config config, SchemaAnalyzer analyzer) throws IOException {
+        long start = System.currentTimeMillis();
+        File outputDir = config.getOutputDir();
+        WorkQueue queue = new WorkQueue(outputDir);
+        if (!queue.exists())
+            throw new InvalidConfigurationException("There's no queue of schemas to analyze in " + outputDir + ".  Start a coordinator (-coordinator) first.");
+
+        System.out.println("Analyzing the schemas queued in " + outputDir);
+
+        int numThreads = config.getMaxSchemaThreads();
+        String wasOneOfMultipleSchemas = System.getProperty("oneofmultipleschemas");
+        System.setProperty("oneofmultipleschemas", "true");
+        DivertedConsole console = numThreads > 1 ? new DivertedConsole() : null;
+
+        try {
+            List<QueueWorker> workers = new ArrayList<QueueWorker>();
+            for (int i = 0; i < numThreads; ++i)
+                workers.add(new QueueWorker(queue, dbName, args, config.getPassword(), outputDir, analyzer, console));
+            run(workers, workers.size());
+        } finally {
+            if (console != null)
+                console.close();
+            queue.close();
+            if (wasOneOfMultipleSchemas == null)
+                System.getProperties().remove("oneofmultipleschemas");
+            else
+                System.setProperty("oneofmultipleschemas", wasOneOfMultipleSchemas);
+            Config.setInstance(config);
         }
 
         long end = System.currentTimeMillis();
         System.out.println();
-        System.out.println("Wrote relationship details of " + populatedSchemas.size() + " schema" + (populatedSchemas.size() == 1 ? "" : "s") + " in " + (end - start) / 1000 + " seconds.");
-        System.out.println("Start with " + new File(outputDir, "index.html"));
+        System.out.println("Nothing left in the queue to analyze after " + (end - start) / 1000 + " seconds.");
+    }
+
+    /**
+     * Returns the options to analyze the specified schema with
+     */
+    private static List<String> getSchemaArgs(String dbName, String schema, List<String> args, File outputDir) {
+        List<String> schemaArgs = new ArrayList<String>(args);
+        // if no database was specified then we're dealing with a database
+        // that treats a schema as the database
+        if (dbName == null)
+            schemaArgs.add("-db");
+        else
+            schemaArgs.add("-s");
+        schemaArgs.add(schema);
+        schemaArgs.add("-o");
+        schemaArgs.add(new File(outputDir, schema).toString());
+        return schemaArgs;
     }
 
-    public void analyze(String dbName, List<String> schemas, List<String> args, Config config) throws SQLException, IOException {
-        analyze(dbName, null, null, schemas, args, config);
+    /**
+     * Run the tasks with up to <code>numThreads</code> threads and wait for all of them to finish
+     */
+    private static <T> void run(List<? extends Callable<T>> tasks, int numThreads) throws IOException {
+        if (tasks.isEmpty())
+            return;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+        try {
+            for (Future<T> result : executor.invokeAll(tasks))
+                result.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while analyzing schemas");
+            interrupted.initCause(exc);
+            throw interrupted;
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw (Error)cause;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for workers");
+            interrupted.initCause(exc);
+            throw interrupted;
+        }
     }
 
-   private void writeIndexPage(String dbName, List<String> populatedSchemas, DatabaseMetaData meta, File outputDir, String charset) throws IOException {
+    private void writeIndexPage(String dbName, List<String> populatedSchemas, DatabaseMetaData meta, File outputDir, String charset) throws IOException {
         if (populatedSchemas.size() > 0) {
             LineWriter index = new LineWriter(new File(outputDir, "index.html"), charset);
             HtmlMultipleSchemasIndexPage.getInstance().write(dbName, populatedSchemas, meta, index);
@@ -178,6 +311,178 @@ public final class MultipleSchemaAnalyzer {
         }
     }
 
+    /**
+     * Console whose output can be held back by each of the schemas that are
+     * being analyzed at once, so their output doesn't get jumbled together.
+     * Replaces <code>System.out</code>, <code>System.err</code> and the root logger's
+     * console handlers until it's closed.
+     */
+    private static class DivertedConsole {
+        private final PrintStream stdout = System.out;
+        private final PrintStream stderr = System.err;
+        private final DivertingOutputStream out = new DivertingOutputStream(stdout);
+        private final DivertingOutputStream err = new DivertingOutputStream(stderr);
+        private final Logger rootLogger = Logger.getLogger("");
+        private final List<Handler> originalHandlers = new ArrayList<Handler>();
+        private final List<Handler> divertedHandlers = new ArrayList<Handler>();
+
+        DivertedConsole() {
+            System.setOut(new PrintStream(out, true));
+            System.setErr(new PrintStream(err, true));
+
+            // console handlers hang on to the System.err that they were created with,
+            // so replace them with ones that write to the one we just installed
+            for (Handler handler : rootLogger.getHandlers()) {
+                if (handler instanceof ConsoleHandler) {
+                    Handler diverted = new ConsoleHandler();
+                    diverted.setFormatter(handler.getFormatter());
+                    diverted.setFilter(handler.getFilter());
+                    diverted.setLevel(handler.getLevel());
+
+                    rootLogger.removeHandler(handler);
+                    rootLogger.addHandler(diverted);
+                    originalHandlers.add(handler);
+                    divertedHandlers.add(diverted);
+                }
+            }
+        }
+
+        /**
+         * Hold back what the current thread writes to the console
+         */
+        void divert(String schema) {
+            stdout.println("Started analyzing " + schema);
+            out.divert();
+            err.divert();
+        }
+
+        /**
+         * Write what the current thread held back all at once
+         */
+        void undivert() {
+            byte[] diverted = out.undivert();
+            byte[] divertedErr = err.undivert();
+            synchronized (stdout) {
+                stdout.write(diverted, 0, diverted.length);
+                stdout.flush();
+                stderr.write(divertedErr, 0, divertedErr.length);
+                stderr.flush();
+            }
+        }
+
+        void close() {
+            for (Handler diverted : divertedHandlers) {
+                rootLogger.removeHandler(diverted);
+                diverted.flush();
+            }
+            for (Handler original : originalHandlers)
+                rootLogger.addHandler(original);
+
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /**
+     * Analysis of one of the schemas.  Returns <code>true</code> if the schema was analyzed.
+     */
+    private class SchemaAnalysis implements Callable<Boolean> {
+        private final String schema;
+        private final List<String> args;
+        private final String password;
+        private final SchemaAnalyzer analyzer;
+        private final RunManifest manifest;
+        private final DivertedConsole console;
+
+        /**
+         * @param manifest where to record how it went, <code>null</code> if the caller will
+         * @param console <code>null</code> if the schema's console output doesn't need to be held back
+         */
+        SchemaAnalysis(String schema, List<String> args, String password, SchemaAnalyzer analyzer, RunManifest manifest, DivertedConsole console) {
+            this.schema = schema;
+            this.args = args;
+            this.password = password;
+            this.analyzer = analyzer;
+            this.manifest = manifest;
+            this.console = console;
+        }
+
+        public Boolean call() {
+            if (console != null)
+                console.divert(schema);
+
+            try {
+                System.out.println("Analyzing " + schema);
+                System.out.flush();
+                logger.fine("Analyzing schema with: " + args);
+
+                // this thread (and the ones it starts) sees this schema's configuration
+                // even if several of them are being analyzed at the same time
+                Config schemaConfig = new Config(args.toArray(new String[args.size()]));
+                schemaConfig.setPassword(password);
+                Config.setThreadInstance(schemaConfig);
+
+                if (manifest != null)
+                    manifest.started(schema);
+                long start = System.currentTimeMillis();
+                boolean analyzed = false;
+                try {
+                    analyzed = analyzer.analyze(schemaConfig) != null;
+                } catch (Exception exc) {
+                    // keep going with the rest of the schemas
+                    System.err.println("Failed to analyze " + schema + ": " + exc);
+                    logger.log(Level.FINE, "Failed to analyze " + schema, exc);
+                }
+
+                if (manifest != null) {
+                    if (analyzed)
+                        manifest.completed(schema, System.currentTimeMillis() - start);
+                    else
+                        manifest.failed(schema, System.currentTimeMillis() - start);
+                }
+                return analyzed;
+            } finally {
+                Config.setThreadInstance(null);
+
+                if (console != null)
+                    console.undivert();
+            }
+        }
+    }
+
+    /**
+     * Analyzes the schemas that it claims from a {@link WorkQueue} until there aren't any left
+     */
+    private class QueueWorker implements Callable<Void> {
+        private final WorkQueue queue;
+        private final String dbName;
+        private final List<String> args;
+        private final String password;
+        private final File outputDir;
+        private final SchemaAnalyzer analyzer;
+        private final DivertedConsole console;
+
+        QueueWorker(WorkQueue queue, String dbName, List<String> args, String password, File outputDir, SchemaAnalyzer analyzer, DivertedConsole console) {
+            this.queue = queue;
+            this.dbName = dbName;
+            this.args = args;
+            this.password = password;
+            this.outputDir = outputDir;
+            this.analyzer = analyzer;
+            this.console = console;
+        }
+
+        public Void call() throws IOException {
+            String schema;
+            while ((schema = queue.claim()) != null) {
+                long start = System.currentTimeMillis();
+                boolean analyzed = new SchemaAnalysis(schema, getSchemaArgs(dbName, schema, args, outputDir), password, analyzer, null, console).call();
+                queue.finished(schema, analyzed, System.currentTimeMillis() - start);
+            }
+            return null;
+        }
+    }
+
     private List<String> getPopulatedSchemas(DatabaseMetaData meta, String schemaSpec, boolean isCatalog) throws SQLException {
         List<String> populatedSchemas;
 
@@ -208,34 +513,4 @@ public final class MultipleSchemaAnalyzer {
 
         return populatedSchemas;
     }
-
-    private static class ProcessOutputReader extends Thread {
-        private final Reader processReader;
-        private final PrintStream out;
-
-        ProcessOutputReader(InputStream processStream, PrintStream out) {
-            processReader = new InputStreamReader(processStream);
-            this.out = out;
-            setDaemon(true);
-        }
-
-        @Override
-        public void run() {
-            try {
-                int ch;
-                while ((ch = processReader.read()) != -1) {
-                    out.print((char)ch);
-                    out.flush();
-                }
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
-            } finally {
-                try {
-                    processReader.close();
-                } catch (Exception exc) {
-                    exc.printStackTrace(); // shouldn't ever get here...but...
-                }
-            }
-        }
-    }
 }
\ No newline at end of file
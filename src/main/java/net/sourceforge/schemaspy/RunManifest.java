@@ -0,0 +1,199 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Record of how each of the schemas of a multiple schema run went.
+ * It's kept in the output directory and rewritten as each schema finishes
+ * so that a run that failed or was interrupted can be
+ * {@link Config#isResumeEnabled() resumed}.<p/>
+ *
+ * Each schema's entry has its status, how long it took to analyze (in milliseconds)
+ * and a checksum of the output that it wrote: its <code>index.html</code>, or its
+ * XML model(s) if HTML generation is disabled.
+ * A schema only counts as completed if its output still matches
+ * that checksum, so output that's been removed or clobbered since gets redone.
+ */
+final class RunManifest {
+    static final String FILE_NAME = "schemaSpy.manifest";
+    private static final String STARTED = "started";
+    private static final String COMPLETED = "completed";
+    private static final String FAILED = "failed";
+    private final File outputDir;
+    private final File file;
+    private final Properties entries = new Properties();
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    /**
+     * @param outputDir where the schemas' output directories are
+     * @param resume pick up the entries of a previous run instead of starting over
+     * @throws IOException
+     */
+    RunManifest(File outputDir, boolean resume) throws IOException {
+        this.outputDir = outputDir;
+        file = new File(outputDir, FILE_NAME);
+        outputDir.mkdirs();
+
+        if (resume && file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                entries.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the schema was analyzed and its output
+     * is still what was written at the time
+     */
+    synchronized boolean isCompleted(String schema) {
+        if (!COMPLETED.equals(entries.getProperty(schema + ".status")))
+            return false;
+
+        try {
+            return entries.getProperty(schema + ".checksum", "").equals(getChecksum(schema));
+        } catch (IOException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * The schema's being analyzed, so it doesn't count as completed until it's done again
+     */
+    synchronized void started(String schema) {
+        entries.setProperty(schema + ".status", STARTED);
+        entries.remove(schema + ".duration");
+        entries.remove(schema + ".checksum");
+        write();
+    }
+
+    synchronized void completed(String schema, long duration) {
+        entries.setProperty(schema + ".status", COMPLETED);
+        entries.setProperty(schema + ".duration", String.valueOf(duration));
+        try {
+            entries.setProperty(schema + ".checksum", getChecksum(schema));
+        } catch (IOException exc) {
+            // without a checksum it'll get redone next time
+            logger.warning("Failed to checksum the output of " + schema + ": " + exc);
+        }
+        write();
+    }
+
+    synchronized void failed(String schema, long duration) {
+        entries.setProperty(schema + ".status", FAILED);
+        entries.setProperty(schema + ".duration", String.valueOf(duration));
+        entries.remove(schema + ".checksum");
+        write();
+    }
+
+    /**
+     * Write the manifest to a temporary file first so an interrupted
+     * run doesn't leave a partial one behind
+     */
+    private void write() {
+        File temp = new File(outputDir, FILE_NAME + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                entries.store(out, "Status of each schema of a multiple schema run");
+            } finally {
+                out.close();
+            }
+
+            // replace the old one in one step where the platform allows it (not Windows)
+            // so being interrupted never leaves us without a manifest
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file))
+                    throw new IOException("Failed to rename " + temp + " to " + file);
+            }
+        } catch (IOException exc) {
+            // a lost manifest just means that a resumed run redoes more work
+            logger.warning("Failed to write " + file + ": " + exc);
+        }
+    }
+
+    /**
+     * Returns a SHA-1 hash of the schema's <code>index.html</code> or,
+     * if there isn't one, of the XML model(s) that are always written
+     */
+    private String getChecksum(String schema) throws IOException {
+        File schemaDir = new File(outputDir, schema);
+        List<File> files = new ArrayList<File>();
+        File index = new File(schemaDir, "index.html");
+        if (index.isFile()) {
+            files.add(index);
+        } else {
+            File[] models = schemaDir.listFiles(new FileFilter() {
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(".xml");
+                }
+            });
+            if (models != null) {
+                Arrays.sort(models);
+                files.addAll(Arrays.asList(models));
+            }
+        }
+        if (files.isEmpty())
+            throw new FileNotFoundException("No output found in " + schemaDir);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exc) {
+            IOException failure = new IOException(exc.toString());
+            failure.initCause(exc);
+            throw failure;
+        }
+
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            InputStream in = new FileInputStream(file);
+            try {
+                int length;
+                while ((length = in.read(buffer)) != -1)
+                    digest.update(buffer, 0, length);
+            } finally {
+                in.close();
+            }
+        }
+
+        StringBuilder checksum = new StringBuilder(40);
+        for (byte b : digest.digest())
+            checksum.append(String.format("%02x", b));
+        return checksum.toString();
+    }
+}
@@ -21,6 +21,7 @@ package net.sourceforge.schemaspy;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -31,9 +32,18 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -48,14 +58,19 @@ import net.sourceforge.schemaspy.model.ImpliedForeignKeyConstraint;
 import net.sourceforge.schemaspy.model.InvalidConfigurationException;
 import net.sourceforge.schemaspy.model.Table;
 import net.sourceforge.schemaspy.model.TableColumn;
+import net.sourceforge.schemaspy.model.TableRegistry;
 import net.sourceforge.schemaspy.model.xml.SchemaMeta;
+import net.sourceforge.schemaspy.util.ConnectionPool;
 import net.sourceforge.schemaspy.util.ConnectionURLBuilder;
 import net.sourceforge.schemaspy.util.DOMUtil;
 import net.sourceforge.schemaspy.util.DbSpecificOption;
+import net.sourceforge.schemaspy.util.DiagramCache;
 import net.sourceforge.schemaspy.util.Dot;
+import net.sourceforge.schemaspy.util.DotRenderPool;
 import net.sourceforge.schemaspy.util.LineWriter;
 import net.sourceforge.schemaspy.util.LogFormatter;
 import net.sourceforge.schemaspy.util.ResourceWriter;
+import net.sourceforge.schemaspy.view.DotConnectorFinder;
 import net.sourceforge.schemaspy.view.DotFormatter;
 import net.sourceforge.schemaspy.view.HtmlAnomaliesPage;
 import net.sourceforge.schemaspy.view.HtmlColumnsPage;
@@ -79,8 +94,15 @@ import org.w3c.dom.Element;
 public class SchemaAnalyzer {
     private final Logger logger = Logger.getLogger(getClass().getName());
     private boolean fineEnabled;
+    private final Map<String, Driver> drivers = new HashMap<String, Driver>(); // key: driverClass:driverPath
+    private final Map<String, Properties> dbProperties = new HashMap<String, Properties>(); // key: dbType
+    private Map<String, List<Connection>> sharedConnections;  // idle ones keyed by connectionURL, only while analyzing multiple schemas
+    private TableRegistry tableRegistry;                        // only while analyzing multiple schemas
 
     public Database analyze(Config config) throws Exception {
+        String sharedConnectionURL = null;
+        Connection sharedConnection = null;
+
         try {
             if (config.isHelpRequired()) {
                 config.dumpUsage(null, false);
@@ -127,103 +149,136 @@ public class SchemaAnalyzer {
 
                 String dbName = config.getDb();
 
-                MultipleSchemaAnalyzer.getInstance().analyze(dbName, schemas, args, config);
+                analyzeMultipleSchemas(dbName, null, null, schemas, args, config, null, null);
                 return null;
             }
 
-            Properties properties = config.determineDbProperties(config.getDbType());
-
-            ConnectionURLBuilder urlBuilder = new ConnectionURLBuilder(config, properties);
-            if (config.getDb() == null)
-                config.setDb(urlBuilder.getConnectionURL());
-
-            if (config.getRemainingParameters().size() != 0) {
-                StringBuilder msg = new StringBuilder("Unrecognized option(s):");
-                for (String remnant : config.getRemainingParameters())
-                    msg.append(" " + remnant);
-                logger.warning(msg.toString());
+            if (config.isHtmlGenerationEnabled()) {
+                new File(outputDir, "tables").mkdirs();
+                new File(outputDir, "diagrams/summary").mkdirs();
             }
 
-            String driverClass = properties.getProperty("driver");
-            String driverPath = properties.getProperty("driverPath");
-            if (driverPath == null)
-                driverPath = "";
-            if (config.getDriverPath() != null)
-                driverPath = config.getDriverPath() + File.pathSeparator + driverPath;
-
-            Connection connection = getConnection(config, urlBuilder.getConnectionURL(), driverClass, driverPath);
+            Database db;
+            String dbName;
+            String schema;
+            DatabaseMetaData meta = null;
+
+            if (config.getOfflineXml() != null) {
+                //
+                // recreate our representation of the database from the XML of a previous run
+                //
+                logger.info("Gathering schema details from " + config.getOfflineXml());
+                if (config.isHtmlGenerationEnabled() && !fineEnabled)
+                    System.out.print("Gathering schema details...");
 
-            DatabaseMetaData meta = connection.getMetaData();
-            String dbName = config.getDb();
-            String schema = config.getSchema();
+                db = new Database(config, config.getOfflineXml());
+                dbName = db.getName();
+                schema = db.getSchema();
+            } else {
+                Properties properties = getDbProperties(config);
+
+                ConnectionURLBuilder urlBuilder = new ConnectionURLBuilder(config, properties);
+                if (config.getDb() == null)
+                    config.setDb(urlBuilder.getConnectionURL());
+
+                if (config.getRemainingParameters().size() != 0) {
+                    StringBuilder msg = new StringBuilder("Unrecognized option(s):");
+                    for (String remnant : config.getRemainingParameters())
+                        msg.append(" " + remnant);
+                    logger.warning(msg.toString());
+                }
 
-            if (config.isEvaluateAllEnabled()) {
-                List<String> args = config.asList();
-                for (DbSpecificOption option : urlBuilder.getOptions()) {
-                    if (!args.contains("-" + option.getName())) {
-                        args.add("-" + option.getName());
-                        args.add(option.getValue().toString());
+                String driverClass = properties.getProperty("driver");
+                String driverPath = properties.getProperty("driverPath");
+                if (driverPath == null)
+                    driverPath = "";
+                if (config.getDriverPath() != null)
+                    driverPath = config.getDriverPath() + File.pathSeparator + driverPath;
+
+                Connection connection = borrowSharedConnection(urlBuilder.getConnectionURL());
+                if (connection == null)
+                    connection = getConnection(config, urlBuilder.getConnectionURL(), driverClass, driverPath);
+                if (sharedConnections != null) {
+                    sharedConnectionURL = urlBuilder.getConnectionURL();
+                    sharedConnection = connection;
+                }
+                ConnectionPool connectionPool = null;
+                if (config.isConnectionPoolEnabled() && config.getMaxDbThreads() > 1)
+                    connectionPool = createConnectionPool(config, urlBuilder.getConnectionURL(), driverClass, driverPath);
+
+                meta = connection.getMetaData();
+                dbName = config.getDb();
+                schema = config.getSchema();
+
+                if (config.isEvaluateAllEnabled()) {
+                    List<String> args = config.asList();
+                    for (DbSpecificOption option : urlBuilder.getOptions()) {
+                        if (!args.contains("-" + option.getName())) {
+                            args.add("-" + option.getName());
+                            args.add(option.getValue().toString());
+                        }
                     }
+
+                    String schemaSpec = config.getSchemaSpec();
+                    if (schemaSpec == null)
+                        schemaSpec = properties.getProperty("schemaSpec", ".*");
+                    analyzeMultipleSchemas(dbName, meta, schemaSpec, null, args, config, connection, urlBuilder.getConnectionURL());
+                    return null;    // no database to return
                 }
 
-                String schemaSpec = config.getSchemaSpec();
-                if (schemaSpec == null)
-                    schemaSpec = properties.getProperty("schemaSpec", ".*");
-                MultipleSchemaAnalyzer.getInstance().analyze(dbName, meta, schemaSpec, null, args, config);
-                return null;    // no database to return
-            }
+                String catalog = config.getCatalog();
 
-            String catalog = config.getCatalog();
+                logger.fine("supportsSchemasInTableDefinitions: " + meta.supportsSchemasInTableDefinitions());
+                logger.fine("supportsCatalogsInTableDefinitions: " + meta.supportsCatalogsInTableDefinitions());
 
-            logger.fine("supportsSchemasInTableDefinitions: " + meta.supportsSchemasInTableDefinitions());
-            logger.fine("supportsCatalogsInTableDefinitions: " + meta.supportsCatalogsInTableDefinitions());
+                if (schema == null && meta.supportsSchemasInTableDefinitions() &&
+                        !config.isSchemaDisabled()) {
+                    schema = config.getUser();
+                    logger.fine("schema not specified for a database that requires one.  using user: '" + schema + "'");
+                    if (schema == null)
+                        throw new InvalidConfigurationException("Either a schema ('-s') or a user ('-u') must be specified");
+                    config.setSchema(schema);
+                }
 
-            if (schema == null && meta.supportsSchemasInTableDefinitions() &&
-                    !config.isSchemaDisabled()) {
-                schema = config.getUser();
-                logger.fine("schema not specified for a database that requires one.  using user: '" + schema + "'");
-                if (schema == null)
-                    throw new InvalidConfigurationException("Either a schema ('-s') or a user ('-u') must be specified");
-                config.setSchema(schema);
-            }
+                if (catalog == null && schema == null &&
+                        meta.supportsCatalogsInTableDefinitions()) {
+                    catalog = dbName;
+                    logger.fine("catalog not specified for a database that requires one.  using dbName: '" + catalog + "'");
+                    config.setCatalog(catalog);
+                }
 
-            if (catalog == null && schema == null &&
-                    meta.supportsCatalogsInTableDefinitions()) {
-                catalog = dbName;
-                logger.fine("catalog not specified for a database that requires one.  using dbName: '" + catalog + "'");
-                config.setCatalog(catalog);
-            }
+                SchemaMeta schemaMeta = config.getMeta() == null ? null : new SchemaMeta(config.getMeta(), dbName, schema);
+                if (config.isHtmlGenerationEnabled()) {
+                    logger.info("Connected to " + meta.getDatabaseProductName() + " - " + meta.getDatabaseProductVersion());
 
-            SchemaMeta schemaMeta = config.getMeta() == null ? null : new SchemaMeta(config.getMeta(), dbName, schema);
-            if (config.isHtmlGenerationEnabled()) {
-                new File(outputDir, "tables").mkdirs();
-                new File(outputDir, "diagrams/summary").mkdirs();
+                    if (schemaMeta != null && schemaMeta.getFile() != null) {
+                        logger.info("Using additional metadata from " + schemaMeta.getFile());
+                    }
 
-                logger.info("Connected to " + meta.getDatabaseProductName() + " - " + meta.getDatabaseProductVersion());
+                    logger.info("Gathering schema details");
 
-                if (schemaMeta != null && schemaMeta.getFile() != null) {
-                    logger.info("Using additional metadata from " + schemaMeta.getFile());
+                    if (!fineEnabled)
+                        System.out.print("Gathering schema details...");
                 }
 
-                logger.info("Gathering schema details");
-
-                if (!fineEnabled)
-                    System.out.print("Gathering schema details...");
+                //
+                // create our representation of the database
+                //
+                try {
+                    db = new Database(config, connection, meta, dbName, catalog, schema, schemaMeta, connectionPool, tableRegistry);
+                } finally {
+                    if (connectionPool != null)
+                        connectionPool.close();
+                }
             }
 
-            //
-            // create our representation of the database
-            //
-            Database db = new Database(config, connection, meta, dbName, catalog, schema, schemaMeta);
-
-            schemaMeta = null; // done with it so let GC reclaim it
-
             LineWriter out;
             Collection<Table> tables = new ArrayList<Table>(db.getTables());
             tables.addAll(db.getViews());
 
             if (tables.isEmpty()) {
-                dumpNoTablesMessage(schema, config.getUser(), meta, config.getTableInclusions() != null);
+                if (meta != null)
+                    dumpNoTablesMessage(schema, config.getUser(), meta, config.getTableInclusions() != null);
                 if (!config.isOneOfMultipleSchemas()) // don't bail if we're doing the whole enchilada
                     throw new EmptySchemaException();
             }
@@ -238,6 +293,10 @@ public class SchemaAnalyzer {
                 DOMUtil.appendAttribute(rootNode, "schema", schema);
             DOMUtil.appendAttribute(rootNode, "type", db.getDatabaseProduct());
 
+            // populated with the constraints that had to be ignored to sort the tables by RI
+            List<ForeignKeyConstraint> recursiveConstraints = new ArrayList<ForeignKeyConstraint>();
+            FutureTask<List<Table>> orderedByRI = null;
+
             if (config.isHtmlGenerationEnabled()) {
                 startSummarizing = System.currentTimeMillis();
                 if (!fineEnabled) {
@@ -258,6 +317,13 @@ public class SchemaAnalyzer {
                 if (!fineEnabled)
                     System.out.print(".");
 
+                // reuse the diagrams of a previous run that haven't changed since
+                DiagramCache diagramCache = null;
+                if (config.isDiagramCacheEnabled())
+                    diagramCache = new DiagramCache(new File(outputDir, "diagrams/cache"));
+                if (diagramCache != null)
+                    Dot.getInstance().addCache(diagramCache);
+
                 boolean showDetailedTables = tables.size() <= config.getMaxDetailedTables();
                 final boolean includeImpliedConstraints = config.isImpliedConstraintsEnabled();
 
@@ -278,7 +344,10 @@ public class SchemaAnalyzer {
                 boolean hasRealRelationships = stats.getNumTablesWritten() > 0 || stats.getNumViewsWritten() > 0;
                 out.close();
 
-                if (hasRealRelationships) {
+                // too many related tables for a single diagram, so split them into clusters of related tables
+                List<Set<Table>> clusters = writeClusters(db, tables, summaryDir, dotBaseFilespec, stats.getNumTablesWritten() + stats.getNumViewsWritten(), stats);
+
+                if (hasRealRelationships && clusters.isEmpty()) {
                     // real relationships exist so generate the 'big' form of the relationships .dot file
                     if (!fineEnabled)
                         System.out.print(".");
@@ -287,6 +356,16 @@ public class SchemaAnalyzer {
                     out.close();
                 }
 
+                // cheaper version to fall back to if the others can't be rendered in time
+                File noColumnsDotFile = new File(summaryDir, dotBaseFilespec + ".real.nocolumns.dot");
+                if (hasRealRelationships && clusters.isEmpty() && showDetailedTables && config.getSummaryDiagramTimeout() > 0) {
+                    out = new LineWriter(noColumnsDotFile, Config.DOT_CHARSET);
+                    DotFormatter.getInstance().writeRealRelationships(db, tables, true, false, new WriteStats(stats), out);
+                    out.close();
+                } else {
+                    noColumnsDotFile.delete();
+                }
+
                 // getting implied constraints has a side-effect of associating the parent/child tables, so don't do it
                 // here unless they want that behavior
                 List<ImpliedForeignKeyConstraint> impliedConstraints = null;
@@ -295,103 +374,105 @@ public class SchemaAnalyzer {
                 else
                     impliedConstraints = new ArrayList<ImpliedForeignKeyConstraint>();
 
-                List<Table> orphans = DbAnalyzer.getOrphans(tables);
-                config.setHasOrphans(!orphans.isEmpty() && Dot.getInstance().isValid());
-                config.setHasRoutines(!db.getRoutines().isEmpty());
+                // relationships are complete now, so index them for the diagrams that follow
+                List<Table> indexedTables = new ArrayList<Table>(tables);
+                indexedTables.addAll(db.getRemoteTables());
+                DotConnectorFinder.getInstance().index(indexedTables);
+                try {
+                    // ...and sort the tables by them while we write everything else
+                    orderedByRI = startOrderingByRI(db.getTables(), recursiveConstraints);
 
-                if (!fineEnabled)
-                    System.out.print(".");
+                    List<Table> orphans = DbAnalyzer.getOrphans(tables);
+                    config.setHasOrphans(!orphans.isEmpty() && Dot.getInstance().isValid());
+                    config.setHasRoutines(!db.getRoutines().isEmpty());
 
-                File impliedDotFile = new File(summaryDir, dotBaseFilespec + ".implied.compact.dot");
-                out = new LineWriter(impliedDotFile, Config.DOT_CHARSET);
-                boolean hasImplied = DotFormatter.getInstance().writeAllRelationships(db, tables, true, showDetailedTables, stats, out);
+                    if (!fineEnabled)
+                        System.out.print(".");
 
-                Set<TableColumn> excludedColumns = stats.getExcludedColumns();
-                out.close();
-                if (hasImplied) {
-                    impliedDotFile = new File(summaryDir, dotBaseFilespec + ".implied.large.dot");
+                    File impliedDotFile = new File(summaryDir, dotBaseFilespec + ".implied.compact.dot");
                     out = new LineWriter(impliedDotFile, Config.DOT_CHARSET);
-                    DotFormatter.getInstance().writeAllRelationships(db, tables, false, showDetailedTables, stats, out);
-                    out.close();
-                } else {
-                    impliedDotFile.delete();
-                }
-
-                out = new LineWriter(new File(outputDir, dotBaseFilespec + ".html"), config.getCharset());
-                HtmlRelationshipsPage.getInstance().write(db, summaryDir, dotBaseFilespec, hasRealRelationships, hasImplied, excludedColumns, out);
-                out.close();
-
-                if (!fineEnabled)
-                    System.out.print(".");
+                    boolean hasImplied = DotFormatter.getInstance().writeAllRelationships(db, tables, true, showDetailedTables, stats, out);
 
-                dotBaseFilespec = "utilities";
-                File orphansDir = new File(outputDir, "diagrams/orphans");
-                orphansDir.mkdirs();
-                out = new LineWriter(new File(outputDir, dotBaseFilespec + ".html"), config.getCharset());
-                HtmlOrphansPage.getInstance().write(db, orphans, orphansDir, out);
-                orphans = null;
-                out.close();
-
-                if (!fineEnabled)
-                    System.out.print(".");
-
-                out = new LineWriter(new File(outputDir, "index.html"), 64 * 1024, config.getCharset());
-                HtmlMainIndexPage.getInstance().write(db, tables, db.getRemoteTables(), out);
-                out.close();
-
-                if (!fineEnabled)
-                    System.out.print(".");
-
-                List<ForeignKeyConstraint> constraints = DbAnalyzer.getForeignKeyConstraints(tables);
-                out = new LineWriter(new File(outputDir, "constraints.html"), 256 * 1024, config.getCharset());
-                HtmlConstraintsPage constraintIndexFormatter = HtmlConstraintsPage.getInstance();
-                constraintIndexFormatter.write(db, constraints, tables, out);
-                out.close();
+                    Set<TableColumn> excludedColumns = stats.getExcludedColumns();
+                    out.close();
+                    if (hasImplied) {
+                        impliedDotFile = new File(summaryDir, dotBaseFilespec + ".implied.large.dot");
+                        out = new LineWriter(impliedDotFile, Config.DOT_CHARSET);
+                        DotFormatter.getInstance().writeAllRelationships(db, tables, false, showDetailedTables, stats, out);
+                        out.close();
+                    } else {
+                        impliedDotFile.delete();
+                    }
 
-                if (!fineEnabled)
-                    System.out.print(".");
+                    noColumnsDotFile = new File(summaryDir, dotBaseFilespec + ".implied.nocolumns.dot");
+                    if (hasImplied && showDetailedTables && config.getSummaryDiagramTimeout() > 0) {
+                        out = new LineWriter(noColumnsDotFile, Config.DOT_CHARSET);
+                        DotFormatter.getInstance().writeAllRelationships(db, tables, true, false, new WriteStats(stats), out);
+                        out.close();
+                    } else {
+                        noColumnsDotFile.delete();
+                    }
 
-                out = new LineWriter(new File(outputDir, "anomalies.html"), 16 * 1024, config.getCharset());
-                HtmlAnomaliesPage.getInstance().write(db, tables, impliedConstraints, out);
-                out.close();
+                    out = new LineWriter(new File(outputDir, dotBaseFilespec + ".html"), config.getCharset());
+                    HtmlRelationshipsPage.getInstance().write(db, summaryDir, dotBaseFilespec, hasRealRelationships, hasImplied, clusters, excludedColumns, out);
+                    out.close();
 
-                if (!fineEnabled)
-                    System.out.print(".");
+                    if (!fineEnabled)
+                        System.out.print(".");
 
-                for (HtmlColumnsPage.ColumnInfo columnInfo : HtmlColumnsPage.getInstance().getColumnInfos().values()) {
-                    out = new LineWriter(new File(outputDir, columnInfo.getLocation()), 16 * 1024, config.getCharset());
-                    HtmlColumnsPage.getInstance().write(db, tables, columnInfo, out);
+                    dotBaseFilespec = "utilities";
+                    File orphansDir = new File(outputDir, "diagrams/orphans");
+                    orphansDir.mkdirs();
+                    out = new LineWriter(new File(outputDir, dotBaseFilespec + ".html"), config.getCharset());
+                    HtmlOrphansPage.getInstance().write(db, orphans, orphansDir, out);
+                    orphans = null;
                     out.close();
-                }
 
-                if (!fineEnabled)
-                    System.out.print(".");
+                    if (!fineEnabled)
+                        System.out.print(".");
 
-                out = new LineWriter(new File(outputDir, "routines.html"), 16 * 1024, config.getCharset());
-                HtmlRoutinesPage.getInstance().write(db, out);
-                out.close();
+                    out = new LineWriter(new File(outputDir, "index.html"), 64 * 1024, config.getCharset());
+                    HtmlMainIndexPage.getInstance().write(db, tables, db.getRemoteTables(), out);
+                    out.close();
 
-                // create detailed diagrams
+                    if (!fineEnabled)
+                        System.out.print(".");
 
-                startDiagrammingDetails = System.currentTimeMillis();
-                if (!fineEnabled)
-                    System.out.println("(" + (startDiagrammingDetails - startSummarizing) / 1000 + "sec)");
-                logger.info("Completed summary in " + (startDiagrammingDetails - startSummarizing) / 1000 + " seconds");
-                logger.info("Writing/diagramming details");
-                if (!fineEnabled) {
-                    System.out.print("Writing/diagramming details");
+                    // pages are written concurrently, so read the options that only they use up front
+                    // rather than having several threads lazily read them at once
+                    config.getSqlFormatter();
+                    config.getColumnDetails();
+
+                    ExecutorService pageWriters = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                    DotRenderPool renderPool = null;
+                    try {
+                        writeSummaryPages(pageWriters, db, tables, impliedConstraints, outputDir, config.getCharset());
+
+                        // create detailed diagrams
+
+                        startDiagrammingDetails = System.currentTimeMillis();
+                        if (!fineEnabled)
+                            System.out.println("(" + (startDiagrammingDetails - startSummarizing) / 1000 + "sec)");
+                        logger.info("Completed summary in " + (startDiagrammingDetails - startSummarizing) / 1000 + " seconds");
+                        logger.info("Writing/diagramming details");
+                        if (!fineEnabled) {
+                            System.out.print("Writing/diagramming details");
+                        }
+
+                        renderPool = new DotRenderPool(Dot.getInstance(), config.getMaxDotThreads());
+                        writeTablePages(pageWriters, renderPool, db, tables, stats, outputDir, config.getCharset());
+                    } finally {
+                        pageWriters.shutdownNow();
+                        if (renderPool != null)
+                            renderPool.shutdown();
+                    }
+                } finally {
+                    DotConnectorFinder.getInstance().clearIndex(indexedTables);
                 }
 
-                HtmlTablePage tableFormatter = HtmlTablePage.getInstance();
-                for (Table table : tables) {
-                    if (!fineEnabled)
-                        System.out.print('.');
-                    else
-                        logger.fine("Writing details of " + table.getName());
-
-                    out = new LineWriter(new File(outputDir, "tables/" + table.getName() + ".html"), 24 * 1024, config.getCharset());
-                    tableFormatter.write(db, table, outputDir, stats, out);
-                    out.close();
+                if (diagramCache != null) {
+                    Dot.getInstance().removeCache(diagramCache);
+                    diagramCache.prune();
                 }
 
                 out = new LineWriter(new File(outputDir, "schemaSpy.css"), config.getCharset());
@@ -419,25 +500,20 @@ public class SchemaAnalyzer {
             DOMUtil.printDOM(document, out);
             out.close();
 
-            // 'try' to make some memory available for the sorting process
-            // (some people have run out of memory while RI sorting tables)
-            builder = null;
-            connection = null;
-            document = null;
-            factory = null;
-            meta = null;
-            properties = null;
-            rootNode = null;
-            urlBuilder = null;
-
-            List<ForeignKeyConstraint> recursiveConstraints = new ArrayList<ForeignKeyConstraint>();
-
-            // create an orderer to be able to determine insertion and deletion ordering of tables
-            TableOrderer orderer = new TableOrderer();
-
-            // side effect is that the RI relationships get trashed
-            // also populates the recursiveConstraints collection
-            List<Table> orderedTables = orderer.getTablesOrderedByRI(db.getTables(), recursiveConstraints);
+            // determine insertion and deletion ordering of tables
+            List<Table> orderedTables;
+            if (orderedByRI == null) {
+                orderedTables = new TableOrderer().getTablesOrderedByRI(db.getTables(), recursiveConstraints);
+            } else {
+                try {
+                    orderedTables = orderedByRI.get();
+                } catch (ExecutionException exc) {
+                    Throwable cause = exc.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    throw (Error)cause;
+                }
+            }
 
             out = new LineWriter(new File(outputDir, "insertionOrder.txt"), 16 * 1024, Config.DOT_CHARSET);
             TextFormatter.getInstance().write(orderedTables, false, out);
@@ -487,9 +563,316 @@ public class SchemaAnalyzer {
         } catch (Config.MissingRequiredParameterException missingParam) {
             config.dumpUsage(missingParam.getMessage(), missingParam.isDbTypeSpecific());
             return null;
+        } finally {
+            if (sharedConnection != null)
+                returnSharedConnection(sharedConnectionURL, sharedConnection);
+        }
+    }
+
+    /**
+     * Analyze several schemas in this JVM with {@link MultipleSchemaAnalyzer}.
+     * The schemas that have the same connection URL share connections
+     * (one for each schema that's being analyzed at the same time),
+     * which are closed once all of the schemas have been analyzed.
+     * They also share a {@link TableRegistry} so tables that reference other schemas
+     * are resolved from what's already been loaded.
+     *
+     * @param connection connection that's already been established, if any
+     * @param connectionURL the URL of <code>connection</code>
+     */
+    private void analyzeMultipleSchemas(String dbName, DatabaseMetaData meta, String schemaSpec, List<String> schemas,
+                                        List<String> args, Config config, Connection connection, String connectionURL) throws SQLException, IOException {
+        sharedConnections = new HashMap<String, List<Connection>>();
+        tableRegistry = new TableRegistry();
+        if (connection != null)
+            returnSharedConnection(connectionURL, connection);
+
+        try {
+            MultipleSchemaAnalyzer.getInstance().analyze(dbName, meta, schemaSpec, schemas, args, config, this);
+        } finally {
+            synchronized (sharedConnections) {
+                for (List<Connection> idle : sharedConnections.values()) {
+                    for (Connection shared : idle) {
+                        try {
+                            shared.close();
+                        } catch (SQLException ignore) {}
+                    }
+                }
+            }
+            sharedConnections = null;
+            tableRegistry = null;
+        }
+    }
+
+    /**
+     * Returns an idle shared connection to the specified URL,
+     * <code>null</code> if there aren't any (or we're not sharing connections)
+     */
+    private Connection borrowSharedConnection(String connectionURL) {
+        if (sharedConnections == null)
+            return null;
+
+        synchronized (sharedConnections) {
+            List<Connection> idle = sharedConnections.get(connectionURL);
+            return idle == null || idle.isEmpty() ? null : idle.remove(idle.size() - 1);
+        }
+    }
+
+    /**
+     * Make a connection available to the next schema that uses the same URL
+     */
+    private void returnSharedConnection(String connectionURL, Connection connection) {
+        synchronized (sharedConnections) {
+            List<Connection> idle = sharedConnections.get(connectionURL);
+            if (idle == null) {
+                idle = new ArrayList<Connection>();
+                sharedConnections.put(connectionURL, idle);
+            }
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * Returns the properties of the database type, only reading them
+     * once when we're analyzing several schemas
+     */
+    private synchronized Properties getDbProperties(Config config) throws IOException {
+        Properties properties = dbProperties.get(config.getDbType());
+        if (properties == null) {
+            properties = config.determineDbProperties(config.getDbType());
+            dbProperties.put(config.getDbType(), properties);
+        }
+
+        // the caller is free to change them
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    /**
+     * Sort the tables by their RI constraints in the background.
+     * The tables' relationships must not change while they're being sorted.
+     *
+     * @param tables
+     * @param recursiveConstraints populated with the constraints that had to be ignored
+     * @return
+     */
+    private static FutureTask<List<Table>> startOrderingByRI(Collection<Table> tables, final List<ForeignKeyConstraint> recursiveConstraints) {
+        final List<Table> toOrder = new ArrayList<Table>(tables);
+        FutureTask<List<Table>> ordering = new FutureTask<List<Table>>(new Callable<List<Table>>() {
+            public List<Table> call() {
+                return new TableOrderer().getTablesOrderedByRI(toOrder, recursiveConstraints);
+            }
+        });
+
+        Thread thread = new Thread(ordering, "RI ordering");
+        thread.setDaemon(true);
+        thread.start();
+        return ordering;
+    }
+
+    /**
+     * Write the constraints, anomalies, columns and routines pages.
+     * They don't depend on each other so they're written concurrently by <code>pageWriters</code>.
+     */
+    private void writeSummaryPages(ExecutorService pageWriters, final Database db, final Collection<Table> tables,
+                                    final List<ImpliedForeignKeyConstraint> impliedConstraints,
+                                    File outputDir, String charset) throws IOException {
+        final List<ForeignKeyConstraint> constraints = DbAnalyzer.getForeignKeyConstraints(tables);
+        Future<?> constraintsPage = pageWriters.submit(new PageWriter(new File(outputDir, "constraints.html"), 256 * 1024, charset) {
+            @Override
+            protected void write(LineWriter out) throws IOException {
+                HtmlConstraintsPage.getInstance().write(db, constraints, tables, out);
+            }
+        });
+
+        Future<?> anomaliesPage = pageWriters.submit(new PageWriter(new File(outputDir, "anomalies.html"), 16 * 1024, charset) {
+            @Override
+            protected void write(LineWriter out) throws IOException {
+                HtmlAnomaliesPage.getInstance().write(db, tables, impliedConstraints, out);
+            }
+        });
+
+        // previous versions wrote a columns page for each way that they could be sorted
+        File[] previous = outputDir.listFiles();
+        if (previous != null) {
+            for (File file : previous) {
+                if (file.getName().startsWith("columns.by") && file.getName().endsWith(".html"))
+                    file.delete();
+            }
+        }
+
+        final File columnSorts = new File(outputDir, "columns.js");
+        Future<?> columnsPage = pageWriters.submit(new PageWriter(new File(outputDir, "columns.html"), 256 * 1024, charset) {
+            @Override
+            protected void write(LineWriter out) throws IOException {
+                HtmlColumnsPage.getInstance().write(db, tables, columnSorts, out);
+            }
+        });
+
+        Future<?> routinesPage = pageWriters.submit(new PageWriter(new File(outputDir, "routines.html"), 16 * 1024, charset) {
+            @Override
+            protected void write(LineWriter out) throws IOException {
+                HtmlRoutinesPage.getInstance().write(db, out);
+            }
+        });
+
+        // report progress in the same order as we always have
+        waitFor(constraintsPage);
+        if (!fineEnabled)
+            System.out.print(".");
+
+        waitFor(anomaliesPage);
+        if (!fineEnabled)
+            System.out.print(".");
+
+        waitFor(columnsPage);
+        if (!fineEnabled)
+            System.out.print(".");
+
+        waitFor(routinesPage);
+    }
+
+    /**
+     * Write the details page of each of the tables with <code>pageWriters</code>.<p/>
+     *
+     * The .dot files of all of the tables are written first so <code>renderPool</code>
+     * can render their diagrams in the background while the pages are being written.
+     * Progress is reported in the order of the tables regardless of the order that
+     * their pages are finished in.
+     */
+    private void writeTablePages(ExecutorService pageWriters, final DotRenderPool renderPool, final Database db,
+                                    Collection<Table> tables, final WriteStats stats,
+                                    final File outputDir, String charset) throws IOException {
+        final HtmlTablePage tableFormatter = HtmlTablePage.getInstance();
+
+        // get the diagrams of all of the tables rendering in the background...
+        List<Future<?>> prepared = new ArrayList<Future<?>>(tables.size());
+        for (final Table table : tables) {
+            prepared.add(pageWriters.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    tableFormatter.prepare(table, outputDir, stats, renderPool);
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> preparing : prepared)
+            waitFor(preparing);
+
+        // ...while we write the pages that display them
+        List<Future<?>> pages = new ArrayList<Future<?>>(tables.size());
+        for (final Table table : tables) {
+            pages.add(pageWriters.submit(new PageWriter(new File(outputDir, "tables/" + table.getName() + ".html"), 24 * 1024, charset) {
+                @Override
+                protected void write(LineWriter out) throws IOException {
+                    tableFormatter.write(db, table, outputDir, stats, renderPool, out);
+                }
+            }));
+        }
+
+        Iterator<Table> iter = tables.iterator();
+        for (Future<?> page : pages) {
+            waitFor(page);
+
+            if (!fineEnabled)
+                System.out.print('.');
+            else
+                logger.fine("Wrote details of " + iter.next().getName());
         }
     }
 
+    /**
+     * Writes a page to a file when it's run
+     */
+    private static abstract class PageWriter implements Callable<Void> {
+        private final File file;
+        private final int bufferSize;
+        private final String charset;
+
+        PageWriter(File file, int bufferSize, String charset) {
+            this.file = file;
+            this.bufferSize = bufferSize;
+            this.charset = charset;
+        }
+
+        public Void call() throws IOException {
+            LineWriter out = new LineWriter(file, bufferSize, charset);
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+            return null;
+        }
+
+        protected abstract void write(LineWriter out) throws IOException;
+    }
+
+    /**
+     * Wait for a page to be written, rethrowing whatever kept it from being written
+     */
+    private static void waitFor(Future<?> page) throws IOException {
+        try {
+            page.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while writing pages");
+            interrupted.initCause(exc);
+            throw interrupted;
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw (Error)cause;
+        }
+    }
+
+    /**
+     * If there are more related tables than {@link Config#getMaxClusterSize()} then
+     * split them into clusters of related tables and write the .dot files of
+     * each cluster along with an overview of the clusters.
+     *
+     * @return the clusters, which is empty if the tables weren't split up
+     */
+    private List<Set<Table>> writeClusters(Database db, Collection<Table> tables, File summaryDir, String dotBaseFilespec, int numRelatedTables, WriteStats stats) throws IOException {
+        // get rid of the clusters of previous runs since there might have been more of them
+        File[] previous = summaryDir.listFiles();
+        if (previous != null) {
+            for (File file : previous) {
+                if (file.getName().startsWith(dotBaseFilespec + ".cluster"))
+                    file.delete();
+            }
+        }
+
+        int maxClusterSize = Config.getInstance().getMaxClusterSize();
+        if (maxClusterSize == 0 || numRelatedTables <= maxClusterSize)
+            return Collections.emptyList();
+
+        List<Table> related = new ArrayList<Table>();
+        for (Table table : tables) {
+            if (!table.isOrphan(false))
+                related.add(table);
+        }
+        related.addAll(db.getRemoteTables());
+
+        List<Set<Table>> clusters = new TableClusterer().getClusters(related, false, maxClusterSize);
+        logger.info("Split " + related.size() + " related tables into " + clusters.size() + " clusters");
+
+        LineWriter out = new LineWriter(new File(summaryDir, dotBaseFilespec + ".clusters.dot"), Config.DOT_CHARSET);
+        DotFormatter.getInstance().writeClusterOverview(clusters, out);
+        out.close();
+
+        for (int i = 1; i <= clusters.size(); ++i) {
+            out = new LineWriter(new File(summaryDir, dotBaseFilespec + ".cluster" + i + ".dot"), Config.DOT_CHARSET);
+            DotFormatter.getInstance().writeCluster(i, clusters.get(i - 1), new WriteStats(stats), out);
+            out.close();
+        }
+
+        return clusters;
+    }
+
     /**
      * dumpNoDataMessage
      *
@@ -565,6 +948,51 @@ public class SchemaAnalyzer {
 
         Driver driver = getDriver(driverClass, driverPath);
 
+        return connect(config, driver, connectionURL, driverClass, driverPath);
+    }
+
+    /**
+     * Returns a {@link ConnectionPool} whose connections are established
+     * with the same driver, URL and credentials as the primary connection,
+     * which itself isn't part of the pool.
+     * The size of the pool is the maximum number of database threads.
+     *
+     * @param config
+     * @param connectionURL
+     * @param driverClass
+     * @param driverPath
+     * @return
+     * @throws MalformedURLException
+     */
+    protected ConnectionPool createConnectionPool(final Config config, final String connectionURL,
+                                                final String driverClass, final String driverPath) throws MalformedURLException {
+        final Driver driver = getDriver(driverClass, driverPath);
+
+        return new ConnectionPool(config.getMaxDbThreads(), new ConnectionPool.ConnectionFactory() {
+            public Connection connect() throws SQLException {
+                try {
+                    return SchemaAnalyzer.this.connect(config, driver, connectionURL, driverClass, driverPath);
+                } catch (IOException exc) {
+                    throw new SQLException(exc.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * Connect to the database with an already loaded {@link Driver}
+     *
+     * @param config
+     * @param driver
+     * @param connectionURL
+     * @param driverClass
+     * @param driverPath
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    private Connection connect(Config config, Driver driver, String connectionURL,
+                                String driverClass, String driverPath) throws FileNotFoundException, IOException {
         Properties connectionProperties = config.getConnectionProperties();
         if (config.getUser() != null) {
             connectionProperties.put("user", config.getUser());
@@ -616,10 +1044,14 @@ public class SchemaAnalyzer {
      * @return
      * @throws MalformedURLException
      */
-    protected Driver getDriver(String driverClass, String driverPath) throws MalformedURLException {
+    protected synchronized Driver getDriver(String driverClass, String driverPath) throws MalformedURLException {
+        String key = driverClass + File.pathSeparator + driverPath;
+        Driver driver = drivers.get(key);
+        if (driver != null)
+            return driver;
+
         List<URL> classpath = getExistingUrls(driverPath);
         ClassLoader loader = getDriverClassLoader(classpath);
-        Driver driver = null;
 
         try {
             driver = (Driver)Class.forName(driverClass, true, loader).newInstance();
@@ -650,6 +1082,7 @@ public class SchemaAnalyzer {
             throw new ConnectionFailure(exc);
         }
 
+        drivers.put(key, driver);
         return driver;
     }
 
@@ -0,0 +1,295 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.sourceforge.schemaspy.model.Table;
+import net.sourceforge.schemaspy.model.TableColumn;
+
+/**
+ * Splits {@link Table}s into clusters of closely related tables so that
+ * each cluster can be diagrammed on its own.<p/>
+ *
+ * Tables are first split into groups that are connected by relationships.
+ * Groups that are still too big are split into communities of densely related
+ * tables with the local moving phase of the Louvain method, not letting any
+ * community grow beyond the maximum size.
+ * Groups that are small are then packed together so the number of clusters stays reasonable.
+ */
+public class TableClusterer {
+    private static final int MAX_ITERATIONS = 20;  // typically settles in a handful
+
+    /**
+     * Returns the clusters of <code>tables</code>, largest first.
+     * Relationships to tables that aren't in <code>tables</code> are ignored.
+     *
+     * @param tables
+     * @param includeImplied consider implied relationships as well as real ones
+     * @param maxClusterSize the most tables to put in a cluster
+     * @return
+     */
+    public List<Set<Table>> getClusters(Collection<Table> tables, boolean includeImplied, int maxClusterSize) {
+        Map<Table, Map<Table, Integer>> weights = getWeights(tables, includeImplied);
+        List<Set<Table>> clusters = new ArrayList<Set<Table>>();
+
+        for (Set<Table> component : getConnectedComponents(weights)) {
+            if (component.size() <= maxClusterSize)
+                clusters.add(component);
+            else
+                clusters.addAll(getCommunities(component, weights, maxClusterSize));
+        }
+
+        return pack(clusters, weights, maxClusterSize);
+    }
+
+    /**
+     * Returns the number of relationships between each table and each of its related tables
+     */
+    private Map<Table, Map<Table, Integer>> getWeights(Collection<Table> tables, boolean includeImplied) {
+        Map<Table, Map<Table, Integer>> weights = new TreeMap<Table, Map<Table, Integer>>();
+        for (Table table : tables)
+            weights.put(table, new TreeMap<Table, Integer>());
+
+        for (Table table : tables) {
+            for (TableColumn column : table.getColumns()) {
+                for (TableColumn parentColumn : column.getParents()) {
+                    if (includeImplied || !column.getParentConstraint(parentColumn).isImplied())
+                        addWeight(weights, table, parentColumn.getTable());
+                }
+            }
+        }
+
+        return weights;
+    }
+
+    private void addWeight(Map<Table, Map<Table, Integer>> weights, Table child, Table parent) {
+        if (child == parent || !weights.containsKey(parent))
+            return;
+
+        increment(weights.get(child), parent);
+        increment(weights.get(parent), child);
+    }
+
+    private static <T> void increment(Map<T, Integer> counts, T key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private List<Set<Table>> getConnectedComponents(Map<Table, Map<Table, Integer>> weights) {
+        List<Set<Table>> components = new ArrayList<Set<Table>>();
+        Set<Table> visited = new TreeSet<Table>();
+
+        for (Table table : weights.keySet()) {
+            if (!visited.add(table))
+                continue;
+
+            Set<Table> component = new TreeSet<Table>();
+            LinkedList<Table> toVisit = new LinkedList<Table>();
+            toVisit.add(table);
+            while (!toVisit.isEmpty()) {
+                Table current = toVisit.removeFirst();
+                component.add(current);
+                for (Table related : weights.get(current).keySet()) {
+                    if (visited.add(related))
+                        toVisit.add(related);
+                }
+            }
+            components.add(component);
+        }
+
+        return components;
+    }
+
+    /**
+     * Split a connected group of tables into communities of at most
+     * <code>maxClusterSize</code> tables.<p/>
+     *
+     * This is the local moving phase of the Louvain method: each table repeatedly moves
+     * to the neighboring community that improves modularity the most.
+     * Unlike plain label propagation this penalizes joining communities that already
+     * have lots of relationships, so one community doesn't swallow everything
+     * connected to it.
+     */
+    private List<Set<Table>> getCommunities(Set<Table> component, Map<Table, Map<Table, Integer>> weights, int maxClusterSize) {
+        Map<Table, Table> labels = new HashMap<Table, Table>();
+        Map<Table, Integer> sizes = new HashMap<Table, Integer>();
+        Map<Table, Integer> degrees = new HashMap<Table, Integer>();
+        Map<Table, Integer> totals = new HashMap<Table, Integer>();  // sum of the degrees of each community
+        double twiceTotalWeight = 0;
+        for (Table table : component) {
+            int degree = 0;
+            for (int weight : weights.get(table).values())
+                degree += weight;
+            labels.put(table, table);
+            sizes.put(table, 1);
+            degrees.put(table, degree);
+            totals.put(table, degree);
+            twiceTotalWeight += degree;
+        }
+
+        // visit the most connected tables first so the communities form around them
+        List<Table> order = new ArrayList<Table>(component);
+        Collections.sort(order, new ByNumRelationships(weights));
+
+        boolean changed = true;
+        for (int i = 0; changed && i < MAX_ITERATIONS; ++i) {
+            changed = false;
+
+            for (Table table : order) {
+                Table label = labels.get(table);
+                int degree = degrees.get(table);
+
+                // weight of the relationships from this table to each neighboring community
+                Map<Table, Integer> links = new TreeMap<Table, Integer>();
+                for (Map.Entry<Table, Integer> related : weights.get(table).entrySet()) {
+                    Table relatedLabel = labels.get(related.getKey());
+                    Integer link = links.get(relatedLabel);
+                    links.put(relatedLabel, (link == null ? 0 : link) + related.getValue());
+                }
+
+                // take the table out of its community and put it back wherever it gains the most
+                totals.put(label, totals.get(label) - degree);
+                sizes.put(label, sizes.get(label) - 1);
+
+                Table best = label;
+                double bestGain = gain(links.get(label), degree, totals.get(label), twiceTotalWeight);
+                for (Map.Entry<Table, Integer> link : links.entrySet()) {
+                    Table candidate = link.getKey();
+                    if (candidate == label || sizes.get(candidate) >= maxClusterSize)
+                        continue;
+
+                    double gain = gain(link.getValue(), degree, totals.get(candidate), twiceTotalWeight);
+                    if (gain > bestGain) {
+                        best = candidate;
+                        bestGain = gain;
+                    }
+                }
+
+                totals.put(best, totals.get(best) + degree);
+                sizes.put(best, sizes.get(best) + 1);
+                if (best != label) {
+                    labels.put(table, best);
+                    changed = true;
+                }
+            }
+        }
+
+        Map<Table, Set<Table>> communities = new TreeMap<Table, Set<Table>>();
+        for (Table table : component) {
+            Table label = labels.get(table);
+            Set<Table> community = communities.get(label);
+            if (community == null) {
+                community = new TreeSet<Table>();
+                communities.put(label, community);
+            }
+            community.add(table);
+        }
+
+        return new ArrayList<Set<Table>>(communities.values());
+    }
+
+    /**
+     * Returns the (scaled) change in modularity of adding a table to a community
+     *
+     * @param links weight of the table's relationships with the community
+     * @param degree weight of all of the table's relationships
+     * @param total weight of all of the relationships of the community's tables
+     * @param twiceTotalWeight
+     */
+    private static double gain(Integer links, int degree, int total, double twiceTotalWeight) {
+        return (links == null ? 0 : links.intValue()) - degree * total / twiceTotalWeight;
+    }
+
+    /**
+     * Combine small clusters so we don't end up with lots of diagrams with just
+     * a couple of tables in them.  Clusters (largest first) are combined with
+     * the cluster that they have the most relationships with that has room for them,
+     * otherwise with the first one that has room for them.
+     */
+    private List<Set<Table>> pack(List<Set<Table>> clusters, Map<Table, Map<Table, Integer>> weights, int maxClusterSize) {
+        Collections.sort(clusters, new BySize());
+
+        List<Set<Table>> packed = new ArrayList<Set<Table>>();
+        for (Set<Table> cluster : clusters) {
+            Set<Table> bin = null;
+            int binLinks = 0;
+            for (Set<Table> candidate : packed) {
+                if (candidate.size() + cluster.size() > maxClusterSize)
+                    continue;
+
+                int links = 0;
+                for (Table table : cluster) {
+                    for (Map.Entry<Table, Integer> related : weights.get(table).entrySet()) {
+                        if (candidate.contains(related.getKey()))
+                            links += related.getValue();
+                    }
+                }
+
+                if (bin == null || links > binLinks) {
+                    bin = candidate;
+                    binLinks = links;
+                }
+            }
+
+            if (bin == null)
+                packed.add(new TreeSet<Table>(cluster));
+            else
+                bin.addAll(cluster);
+        }
+
+        Collections.sort(packed, new BySize());
+        return packed;
+    }
+
+    private static class ByNumRelationships implements Comparator<Table> {
+        private final Map<Table, Map<Table, Integer>> weights;
+
+        ByNumRelationships(Map<Table, Map<Table, Integer>> weights) {
+            this.weights = weights;
+        }
+
+        public int compare(Table table1, Table table2) {
+            int rc = weights.get(table2).size() - weights.get(table1).size();
+            if (rc == 0)
+                rc = table1.compareTo(table2);
+            return rc;
+        }
+    }
+
+    /**
+     * Largest first, then by the name of their first table
+     */
+    private static class BySize implements Comparator<Set<Table>> {
+        public int compare(Set<Table> cluster1, Set<Table> cluster2) {
+            int rc = cluster2.size() - cluster1.size();
+            if (rc == 0)
+                rc = cluster1.iterator().next().compareTo(cluster2.iterator().next());
+            return rc;
+        }
+    }
+}
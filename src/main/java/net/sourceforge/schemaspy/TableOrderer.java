@@ -19,19 +19,34 @@
 package net.sourceforge.schemaspy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import net.sourceforge.schemaspy.model.ForeignKeyConstraint;
 import net.sourceforge.schemaspy.model.Table;
+import net.sourceforge.schemaspy.model.TableColumn;
 
 /**
  * Sorts {@link Table}s by their referential integrity constraints.
  * The intent is to have a list of tables in an order that can be used
- * to insert or delete them from a database.
+ * to insert or delete them from a database.<p/>
+ *
+ * The tables themselves aren't modified, so this can run while other things
+ * are looking at them.  The relationships between the tables are copied
+ * into arrays of parent to child edges and the sorting is done on those:
+ * <ol>
+ *  <li>Tarjan's algorithm finds the groups of tables that reference each other in a cycle
+ *  <li>cycles are broken by ignoring implied relationships within them and then, if needed,
+ *      the real relationships that a depth first search finds leading back into the cycle.
+ *      Any of those that can be put back without forming a cycle are put back.
+ *  <li>Kahn's algorithm then orders the tables level by level, parents first
+ * </ol>
  *
  * @author John Currier
  */
@@ -41,183 +56,348 @@ public class TableOrderer {
      * and child tables are listed last.
      *
      * <code>recursiveConstraints</code> gets populated with <code>TableConstraint</code>s
-     * that had to be removed to resolve the returned list.
+     * that had to be ignored to resolve the returned list.
      * @param recursiveConstraints
      * @return
      */
     public List<Table> getTablesOrderedByRI(Collection<Table> tables, Collection<ForeignKeyConstraint> recursiveConstraints) {
-        List<Table> heads = new ArrayList<Table>();
-        List<Table> tails = new ArrayList<Table>();
-        List<Table> remainingTables = new ArrayList<Table>(tables);
-        List<Table> unattached = new ArrayList<Table>();
-
-        // first pass to gather the 'low hanging fruit'
-        for (Iterator<Table> iter = remainingTables.iterator(); iter.hasNext(); ) {
-            Table table = iter.next();
-            if (table.isRemote()) {
+        return new Graph(tables).getOrdered(recursiveConstraints);
+    }
+
+    /**
+     * Immutable snapshot of the relationships between the tables being sorted.
+     * Tables are numbered in the order that they'd ideally be listed in within
+     * a level (see {@link TrimComparator}).
+     */
+    private static class Graph {
+        private final Table[] tables;
+        private final boolean[] attached;       // has any relationships (including with itself)
+        private final Set<ForeignKeyConstraint> selfReferences = new LinkedHashSet<ForeignKeyConstraint>();
+
+        // edge e goes from parent from[e] to child to[e]
+        private final int[] from;
+        private final int[] to;
+        private final ForeignKeyConstraint[] constraints;
+
+        // edges leaving table t are outEdges[outOffsets[t]] up to outEdges[outOffsets[t + 1]]
+        private final int[] outOffsets;
+        private final int[] outEdges;
+
+        Graph(Collection<Table> tableCollection) {
+            List<Table> sorted = new ArrayList<Table>(tableCollection);
+            for (int i = sorted.size() - 1; i >= 0; --i) {
                 // ignore remote tables since there's no way to deal with them
-                table.unlinkParents();
-                table.unlinkChildren();
-                iter.remove();
-            } else if (table.isLeaf() && table.isRoot()) {
-                // floater, so add it to 'unattached'
-                unattached.add(table);
-                iter.remove();
+                if (sorted.get(i).isRemote())
+                    sorted.remove(i);
             }
-        }
+            Collections.sort(sorted, new TrimComparator());
+            tables = sorted.toArray(new Table[sorted.size()]);
+            attached = new boolean[tables.length];
 
-        unattached = sortTrimmedLevel(unattached);
-        boolean prunedNonReals = false;
-
-        while (!remainingTables.isEmpty()) {
-            int tablesLeft = remainingTables.size();
-            tails.addAll(0, trimLeaves(remainingTables));
-            heads.addAll(trimRoots(remainingTables));
-
-            // if we could't trim anything then there's recursion....
-            // resolve it by removing a constraint, one by one, 'till the tables are all trimmed
-            if (tablesLeft == remainingTables.size()) {
-                if (!prunedNonReals) {
-                    // get ride of everything that isn't explicitly specified by the database
-                    for (Table table : remainingTables) {
-                        table.removeNonRealForeignKeys();
-                    }
+            Map<Table, Integer> ids = new HashMap<Table, Integer>();
+            for (int i = 0; i < tables.length; ++i)
+                ids.put(tables[i], i);
 
-                    prunedNonReals = true;
-                    continue;
-                }
+            // a constraint spans all of its columns, so only count it once
+            Set<ForeignKeyConstraint> seen = new LinkedHashSet<ForeignKeyConstraint>();
+            List<ForeignKeyConstraint> edges = new ArrayList<ForeignKeyConstraint>();
+            List<Integer> parents = new ArrayList<Integer>();
+            List<Integer> children = new ArrayList<Integer>();
+            for (int child = 0; child < tables.length; ++child) {
+                for (TableColumn column : tables[child].getColumns()) {
+                    for (TableColumn parentColumn : column.getParents()) {
+                        Integer parent = ids.get(parentColumn.getTable());
+                        ForeignKeyConstraint constraint = column.getParentConstraint(parentColumn);
+                        if (parent == null || constraint == null || !seen.add(constraint))
+                            continue;
 
-                boolean foundSimpleRecursion = false;
-                for (Table potentialRecursiveTable : remainingTables) {
-                    ForeignKeyConstraint recursiveConstraint = potentialRecursiveTable.removeSelfReferencingConstraint();
-                    if (recursiveConstraint != null) {
-                        recursiveConstraints.add(recursiveConstraint);
-                        foundSimpleRecursion = true;
+                        attached[child] = true;
+                        attached[parent] = true;
+                        if (parent == child) {
+                            selfReferences.add(constraint);
+                        } else {
+                            edges.add(constraint);
+                            parents.add(parent);
+                            children.add(child);
+                        }
                     }
                 }
+            }
 
-                if (!foundSimpleRecursion) {
-                    // expensive comparison, but we're down to the end of the tables so it shouldn't really matter
-                    Set<Table> byParentChildDelta = new TreeSet<Table>(new Comparator<Table>() {
-                        // sort on the delta between number of parents and kids so we can
-                        // target the tables with the biggest delta and therefore the most impact
-                        // on reducing the smaller of the two
-                        public int compare(Table table1, Table table2) {
-                            int rc = Math.abs(table2.getNumChildren() - table2.getNumParents()) - Math.abs(table1.getNumChildren() - table1.getNumParents());
-                            if (rc == 0)
-                                rc = table1.compareTo(table2);
-                            return rc;
-                        }
-                    });
-                    byParentChildDelta.addAll(remainingTables);
-                    Table recursiveTable = byParentChildDelta.iterator().next(); // this one has the largest delta
-                    ForeignKeyConstraint removedConstraint = recursiveTable.removeAForeignKeyConstraint();
-                    recursiveConstraints.add(removedConstraint);
-                }
+            int numEdges = edges.size();
+            from = new int[numEdges];
+            to = new int[numEdges];
+            constraints = edges.toArray(new ForeignKeyConstraint[numEdges]);
+            outOffsets = new int[tables.length + 1];
+            for (int e = 0; e < numEdges; ++e) {
+                from[e] = parents.get(e);
+                to[e] = children.get(e);
+                ++outOffsets[from[e] + 1];
             }
+            for (int t = 0; t < tables.length; ++t)
+                outOffsets[t + 1] += outOffsets[t];
+
+            outEdges = new int[numEdges];
+            int[] next = new int[tables.length];
+            System.arraycopy(outOffsets, 0, next, 0, tables.length);
+            for (int e = 0; e < numEdges; ++e)
+                outEdges[next[from[e]]++] = e;
         }
 
-        // we've gathered all the heads and tails, so combine them here moving 'unattached' tables to the end
-        List<Table> ordered = new ArrayList<Table>(heads.size() + tails.size());
+        List<Table> getOrdered(Collection<ForeignKeyConstraint> recursiveConstraints) {
+            recursiveConstraints.addAll(selfReferences);
 
-        ordered.addAll(heads);
-        heads = null; // allow gc ASAP
+            boolean[] ignored = breakCycles(recursiveConstraints);
 
-        ordered.addAll(tails);
-        tails = null; // allow gc ASAP
+            int[] numParents = new int[tables.length];
+            for (int e = 0; e < from.length; ++e) {
+                if (!ignored[e])
+                    ++numParents[to[e]];
+            }
 
-        ordered.addAll(unattached);
+            // Kahn's algorithm, one level at a time
+            List<Table> ordered = new ArrayList<Table>(tables.length);
+            int[] level = new int[tables.length];
+            int levelSize = 0;
+            for (int t = 0; t < tables.length; ++t) {
+                if (attached[t] && numParents[t] == 0)
+                    level[levelSize++] = t;
+            }
 
-        return ordered;
-    }
+            int[] nextLevel = new int[tables.length];
+            while (levelSize > 0) {
+                int nextLevelSize = 0;
+                for (int i = 0; i < levelSize; ++i) {
+                    int t = level[i];
+                    ordered.add(tables[t]);
+                    for (int j = outOffsets[t]; j < outOffsets[t + 1]; ++j) {
+                        int e = outEdges[j];
+                        if (!ignored[e] && --numParents[to[e]] == 0)
+                            nextLevel[nextLevelSize++] = to[e];
+                    }
+                }
 
-    /**
-     * Remove the root nodes (tables w/o parents)
-     *
-     * @param tables
-     * @return tables removed
-     */
-    private static List<Table> trimRoots(List<Table> tables) {
-        List<Table> roots = new ArrayList<Table>();
-
-        Iterator<Table> iter = tables.iterator();
-        while (iter.hasNext()) {
-            Table root = iter.next();
-            if (root.isRoot()) {
-                roots.add(root);
-                iter.remove();
+                // tables are numbered in the order that they should be listed in
+                Arrays.sort(nextLevel, 0, nextLevelSize);
+                int[] swap = level;
+                level = nextLevel;
+                nextLevel = swap;
+                levelSize = nextLevelSize;
+            }
+
+            // tables without any relationships go last
+            for (int t = 0; t < tables.length; ++t) {
+                if (!attached[t])
+                    ordered.add(tables[t]);
             }
-        }
 
-        // now sort them so the ones with large numbers of children show up first (not required, but cool)
-        roots = sortTrimmedLevel(roots);
-        iter = roots.iterator();
-        while (iter.hasNext()) {
-            // do this after the previous loop to prevent getting roots before they're ready
-            // and so we can sort them correctly
-            iter.next().unlinkChildren();
+            return ordered;
         }
 
-        return roots;
-    }
+        /**
+         * Returns the edges that have to be ignored to get rid of all of the cycles.
+         * The real constraints behind them are added to <code>recursiveConstraints</code>.
+         */
+        private boolean[] breakCycles(Collection<ForeignKeyConstraint> recursiveConstraints) {
+            boolean[] ignored = new boolean[from.length];
 
-    /**
-     * Remove the leaf nodes (tables w/o children)
-     *
-     * @param tables
-     * @return tables removed
-     */
-    private static List<Table> trimLeaves(List<Table> tables) {
-        List<Table> leaves = new ArrayList<Table>();
-
-        Iterator<Table> iter = tables.iterator();
-        while (iter.hasNext()) {
-            Table leaf = iter.next();
-            if (leaf.isLeaf()) {
-                leaves.add(leaf);
-                iter.remove();
+            // get rid of everything that isn't explicitly specified by the database
+            // if it's part of a cycle
+            int[] components = getComponents(ignored);
+            List<Integer> candidates = new ArrayList<Integer>();
+            for (int e = 0; e < from.length; ++e) {
+                if (components[from[e]] == components[to[e]] && !constraints[e].isReal()) {
+                    ignored[e] = true;
+                    candidates.add(e);
+                }
+            }
+
+            // then get rid of the edges that lead back into what's left of the cycles
+            List<Integer> backEdges = getBackEdges(getComponents(ignored), ignored);
+            for (int e : backEdges)
+                ignored[e] = true;
+
+            // put back whatever doesn't form a cycle, real constraints first.
+            // a cycle can't leave the component that the edge was originally in,
+            // so that's as far as we have to look for one
+            backEdges.addAll(candidates);
+            int[] visited = new int[tables.length];
+            int[] toVisit = new int[tables.length];
+            int visit = 0;
+            for (int e : backEdges) {
+                if (!isReachable(to[e], from[e], components, ignored, visited, ++visit, toVisit))
+                    ignored[e] = false;
+            }
+
+            for (int e = 0; e < from.length; ++e) {
+                if (ignored[e] && constraints[e].isReal())
+                    recursiveConstraints.add(constraints[e]);
             }
+
+            return ignored;
         }
 
-        // now sort them so the ones with large numbers of children show up first (not required, but cool)
-        leaves = sortTrimmedLevel(leaves);
-        iter = leaves.iterator();
-        while (iter.hasNext()) {
-            // do this after the previous loop to prevent getting leaves before they're ready
-            // and so we can sort them correctly
-            iter.next().unlinkParents();
+        /**
+         * Tarjan's strongly connected components algorithm (iterative so deep chains
+         * of tables don't blow the stack).
+         *
+         * @return the number of the component of each table
+         */
+        private int[] getComponents(boolean[] ignored) {
+            int numTables = tables.length;
+            int[] index = new int[numTables];
+            int[] lowLink = new int[numTables];
+            int[] components = new int[numTables];
+            boolean[] onStack = new boolean[numTables];
+            int[] stack = new int[numTables];
+            int[] callStack = new int[numTables];
+            int[] nextEdge = new int[numTables];
+            Arrays.fill(index, -1);
+            int stackSize = 0;
+            int counter = 0;
+            int numComponents = 0;
+
+            for (int start = 0; start < numTables; ++start) {
+                if (index[start] != -1)
+                    continue;
+
+                int depth = 0;
+                callStack[depth++] = start;
+                index[start] = lowLink[start] = counter++;
+                stack[stackSize++] = start;
+                onStack[start] = true;
+                nextEdge[start] = outOffsets[start];
+
+                while (depth > 0) {
+                    int t = callStack[depth - 1];
+                    if (nextEdge[t] < outOffsets[t + 1]) {
+                        int e = outEdges[nextEdge[t]++];
+                        if (ignored[e])
+                            continue;
+                        int child = to[e];
+                        if (index[child] == -1) {
+                            index[child] = lowLink[child] = counter++;
+                            stack[stackSize++] = child;
+                            onStack[child] = true;
+                            nextEdge[child] = outOffsets[child];
+                            callStack[depth++] = child;
+                        } else if (onStack[child]) {
+                            lowLink[t] = Math.min(lowLink[t], index[child]);
+                        }
+                    } else {
+                        --depth;
+                        if (depth > 0) {
+                            int parent = callStack[depth - 1];
+                            lowLink[parent] = Math.min(lowLink[parent], lowLink[t]);
+                        }
+
+                        if (lowLink[t] == index[t]) {
+                            int member;
+                            do {
+                                member = stack[--stackSize];
+                                onStack[member] = false;
+                                components[member] = numComponents;
+                            } while (member != t);
+                            ++numComponents;
+                        }
+                    }
+                }
+            }
+
+            return components;
         }
 
-        return leaves;
-    }
+        /**
+         * Depth first search within each component for edges that lead back to
+         * a table that's still being searched.  Ignoring those edges leaves no cycles.
+         */
+        private List<Integer> getBackEdges(int[] components, boolean[] ignored) {
+            List<Integer> backEdges = new ArrayList<Integer>();
+            final int unvisited = 0, inProgress = 1, done = 2;
+            int[] state = new int[tables.length];
+            int[] callStack = new int[tables.length];
+            int[] nextEdge = new int[tables.length];
+
+            for (int start = 0; start < tables.length; ++start) {
+                if (state[start] != unvisited)
+                    continue;
+
+                int depth = 0;
+                callStack[depth++] = start;
+                state[start] = inProgress;
+                nextEdge[start] = outOffsets[start];
+
+                while (depth > 0) {
+                    int t = callStack[depth - 1];
+                    if (nextEdge[t] < outOffsets[t + 1]) {
+                        int e = outEdges[nextEdge[t]++];
+                        int child = to[e];
+                        if (ignored[e] || components[child] != components[t])
+                            continue;
+                        if (state[child] == inProgress) {
+                            backEdges.add(e);
+                        } else if (state[child] == unvisited) {
+                            state[child] = inProgress;
+                            nextEdge[child] = outOffsets[child];
+                            callStack[depth++] = child;
+                        }
+                    } else {
+                        state[t] = done;
+                        --depth;
+                    }
+                }
+            }
+
+            return backEdges;
+        }
 
-    /**
-     * this doesn't change the logical output of the program because all of these (leaves or roots) are at the same logical level
-     */
-    private static List<Table> sortTrimmedLevel(List<Table> tables) {
         /**
-         * order by
-         * <ul>
-         *  <li>number of kids (descending)
-         *  <li>number of parents (ascending)
-         *  <li>alpha name (ascending)
-         * </ul>
+         * Returns <code>true</code> if <code>target</code> can be reached from
+         * <code>source</code> without leaving their component.
          */
-        final class TrimComparator implements Comparator<Table> {
-            public int compare(Table table1, Table table2) {
-                // have to keep track of and use the 'max' versions because
-                // by the time we get here we'll (probably?) have no parents or children
-                int rc = table2.getMaxChildren() - table1.getMaxChildren();
-                if (rc == 0)
-                    rc = table1.getMaxParents() - table2.getMaxParents();
-                if (rc == 0)
-                    rc = table1.compareTo(table2);
-                return rc;
+        private boolean isReachable(int source, int target, int[] components, boolean[] ignored, int[] visited, int visit, int[] toVisit) {
+            int numToVisit = 0;
+            toVisit[numToVisit++] = source;
+            visited[source] = visit;
+
+            while (numToVisit > 0) {
+                int t = toVisit[--numToVisit];
+                if (t == target)
+                    return true;
+
+                for (int j = outOffsets[t]; j < outOffsets[t + 1]; ++j) {
+                    int e = outEdges[j];
+                    int child = to[e];
+                    if (!ignored[e] && visited[child] != visit && components[child] == components[source]) {
+                        visited[child] = visit;
+                        toVisit[numToVisit++] = child;
+                    }
+                }
             }
+
+            return false;
         }
+    }
 
-        Set<Table> sorter = new TreeSet<Table>(new TrimComparator());
-        sorter.addAll(tables);
-        return new ArrayList<Table>(sorter);
+    /**
+     * this doesn't change the logical output of the program because all of the tables
+     * listed together are at the same logical level
+     *
+     * order by
+     * <ul>
+     *  <li>number of kids (descending)
+     *  <li>number of parents (ascending)
+     *  <li>alpha name (ascending)
+     * </ul>
+     */
+    private static class TrimComparator implements Comparator<Table> {
+        public int compare(Table table1, Table table2) {
+            int rc = table2.getMaxChildren() - table1.getMaxChildren();
+            if (rc == 0)
+                rc = table1.getMaxParents() - table2.getMaxParents();
+            if (rc == 0)
+                rc = table1.compareTo(table2);
+            return rc;
+        }
     }
-}
\ No newline at end of file
+}
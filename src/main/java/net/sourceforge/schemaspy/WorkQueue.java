@@ -0,0 +1,330 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Queue of schemas to analyze that's kept in the file system so that any number
+ * of processes (on this or other machines that share the output directory)
+ * can work their way through it.<p/>
+ *
+ * Each schema gets a numbered file in <code>queue/pending</code>.
+ * A worker claims a schema by moving its file to <code>queue/claimed</code>
+ * (suffixed with the worker's id), which only one of them can do,
+ * and keeps touching the file while it analyzes the schema.
+ * Claims that haven't been touched for a while are assumed to belong to
+ * workers that died, so they're put back in the queue.
+ * The outcome of each schema is left in <code>queue/done</code> for the
+ * coordinator to {@link #reportTo(RunManifest) report}.
+ */
+final class WorkQueue {
+    static final long LEASE_MILLIS = 10 * 60 * 1000;
+    private final File queueDir;
+    private final File pendingDir;
+    private final File claimedDir;
+    private final File doneDir;
+    private final long leaseMillis;
+    private final String worker = ManagementFactory.getRuntimeMXBean().getName();
+    private final String claimSuffix;   // unique to this instance so we never touch someone else's claim
+    private static final AtomicInteger instances = new AtomicInteger();
+    private final Map<String, File> claims = new HashMap<String, File>();   // ours, keyed by schema
+    private Timer leaseRenewer;
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    /**
+     * @param outputDir where the schemas' output directories are
+     */
+    WorkQueue(File outputDir) {
+        this(outputDir, LEASE_MILLIS);
+    }
+
+    /**
+     * @param outputDir
+     * @param leaseMillis how long a claim is good for without being renewed
+     */
+    WorkQueue(File outputDir, long leaseMillis) {
+        queueDir = new File(outputDir, "queue");
+        pendingDir = new File(queueDir, "pending");
+        claimedDir = new File(queueDir, "claimed");
+        doneDir = new File(queueDir, "done");
+        this.leaseMillis = leaseMillis;
+        claimSuffix = '.' + worker.replaceAll("[^A-Za-z0-9@_-]", "_") + '-' + instances.incrementAndGet();
+    }
+
+    /**
+     * Returns <code>true</code> if a coordinator has {@link #create(List) created} the queue
+     */
+    boolean exists() {
+        return pendingDir.isDirectory();
+    }
+
+    /**
+     * Replace whatever was in the queue with the specified schemas
+     *
+     * @param schemas
+     * @throws IOException
+     */
+    void create(List<String> schemas) throws IOException {
+        for (File dir : new File[] {pendingDir, claimedDir, doneDir}) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files)
+                    file.delete();
+            }
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Failed to create directory '" + dir + "'");
+        }
+
+        int id = 0;
+        for (String schema : schemas) {
+            // numbered so the schemas are claimed in order and their names don't have to be valid file names
+            File file = new File(pendingDir, String.format("%06d", ++id));
+
+            // written elsewhere first so a worker never claims an empty one
+            File temp = File.createTempFile("pending", null, queueDir);
+            FileWriter out = new FileWriter(temp);
+            try {
+                out.write(schema);
+            } finally {
+                out.close();
+            }
+
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Failed to rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Claim the next schema to analyze.
+     *
+     * @return <code>null</code> if there's nothing left to claim
+     * @throws IOException if what we claimed couldn't be read
+     */
+    String claim() throws IOException {
+        String schema = claimPending();
+        if (schema == null && reclaimExpired())
+            schema = claimPending();
+        return schema;
+    }
+
+    private String claimPending() throws IOException {
+        String[] ids = pendingDir.list();
+        if (ids == null)
+            return null;
+
+        Arrays.sort(ids);
+        for (String id : ids) {
+            File claimed = new File(claimedDir, id + claimSuffix);
+            if (new File(pendingDir, id).renameTo(claimed)) {
+                claimed.setLastModified(System.currentTimeMillis());
+                String schema = read(claimed);
+                if (schema == null) {
+                    // it'll be put back in the queue once the claim expires
+                    throw new IOException("Claimed " + claimed + " but it doesn't name a schema");
+                }
+                synchronized (claims) {
+                    claims.put(schema, claimed);
+                    if (leaseRenewer == null) {
+                        leaseRenewer = new Timer("queue lease renewer", true);
+                        leaseRenewer.schedule(new LeaseRenewal(), leaseMillis / 4, leaseMillis / 4);
+                    }
+                }
+                return schema;
+            }
+
+            // someone else beat us to it
+        }
+
+        return null;
+    }
+
+    /**
+     * Put the schemas whose claims haven't been renewed back in the queue
+     *
+     * @return <code>true</code> if any were
+     */
+    private boolean reclaimExpired() {
+        File[] claimed = claimedDir.listFiles();
+        if (claimed == null)
+            return false;
+
+        boolean reclaimed = false;
+        long expired = System.currentTimeMillis() - leaseMillis;
+        for (File claim : claimed) {
+            synchronized (claims) {
+                if (claims.containsValue(claim))
+                    continue;
+            }
+
+            long lastRenewed = claim.lastModified();
+            if (lastRenewed != 0 && lastRenewed < expired && claim.renameTo(new File(pendingDir, getId(claim)))) {
+                logger.warning("Claim on " + claim + " expired, so putting it back in the queue");
+                reclaimed = true;
+            }
+        }
+
+        return reclaimed;
+    }
+
+    /**
+     * Record the outcome of a schema that was {@link #claim() claimed}
+     *
+     * @param schema
+     * @param analyzed <code>true</code> if it was analyzed
+     * @param duration how long it took in milliseconds
+     * @throws IOException
+     */
+    void finished(String schema, boolean analyzed, long duration) throws IOException {
+        File claimed;
+        synchronized (claims) {
+            claimed = claims.remove(schema);
+        }
+        if (claimed == null)
+            throw new IllegalArgumentException(schema + " wasn't claimed");
+
+        // if our claim expired then whoever reclaimed it gets to report the outcome
+        if (!claimed.exists()) {
+            logger.warning("Our claim on " + schema + " expired while we were analyzing it, so leaving it to whoever reclaimed it");
+            return;
+        }
+
+        Properties outcome = new Properties();
+        outcome.setProperty("schema", schema);
+        outcome.setProperty("status", analyzed ? "completed" : "failed");
+        outcome.setProperty("duration", String.valueOf(duration));
+        outcome.setProperty("worker", worker);
+
+        // written elsewhere first so the coordinator never sees a partial one
+        File temp = File.createTempFile("done", null, queueDir);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            outcome.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        File done = new File(doneDir, getId(claimed));
+        done.delete();
+        if (!temp.renameTo(done)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + done);
+        }
+        claimed.delete();
+    }
+
+    /**
+     * Returns <code>true</code> if any schemas are claimed by anyone (including us)
+     */
+    boolean hasClaims() {
+        String[] claimed = claimedDir.list();
+        return claimed != null && claimed.length > 0;
+    }
+
+    /**
+     * Record the outcomes of the schemas that are done in the specified manifest
+     *
+     * @param manifest
+     * @throws IOException
+     */
+    void reportTo(RunManifest manifest) throws IOException {
+        File[] done = doneDir.listFiles();
+        if (done == null)
+            return;
+
+        for (File file : done) {
+            Properties outcome = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                outcome.load(in);
+            } finally {
+                in.close();
+            }
+
+            String schema = outcome.getProperty("schema");
+            long duration = Long.parseLong(outcome.getProperty("duration", "0"));
+            if ("completed".equals(outcome.getProperty("status")))
+                manifest.completed(schema, duration);
+            else
+                manifest.failed(schema, duration);
+        }
+    }
+
+    /**
+     * Stop renewing our claims
+     */
+    void close() {
+        synchronized (claims) {
+            if (leaseRenewer != null)
+                leaseRenewer.cancel();
+            leaseRenewer = null;
+        }
+    }
+
+    /**
+     * Returns the id of the schema that the specified claim is for
+     */
+    private static String getId(File claim) {
+        String name = claim.getName();
+        int suffix = name.indexOf('.');
+        return suffix == -1 ? name : name.substring(0, suffix);
+    }
+
+    private static String read(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            return in.readLine();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Touch our claims so other workers know that we're still working on them
+     */
+    private class LeaseRenewal extends TimerTask {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            synchronized (claims) {
+                for (File claimed : claims.values())
+                    claimed.setLastModified(now);
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package net.sourceforge.schemaspy.model;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -27,6 +29,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +39,11 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -44,6 +52,10 @@ import net.sourceforge.schemaspy.Config;
 import net.sourceforge.schemaspy.model.xml.SchemaMeta;
 import net.sourceforge.schemaspy.model.xml.TableMeta;
 import net.sourceforge.schemaspy.util.CaseInsensitiveMap;
+import net.sourceforge.schemaspy.util.ConnectionPool;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 public class Database {
     private final Config config;
@@ -55,8 +67,19 @@ public class Database {
     private final Map<String, Table> remoteTables = new CaseInsensitiveMap<Table>(); // key: schema.tableName
     private final Map<String, Table> locals = new CombinedMap(tables, views);
     private final Map<String, Routine> routines = new CaseInsensitiveMap<Routine>();
+    private final Map<String, Table> harvestedTables = new CaseInsensitiveMap<Table>(); // columns already populated
+    private Map<String, List<IndexRow>> harvestedIndexes;       // null if not harvested in bulk
+    private Map<String, List<PrimaryKeyRow>> harvestedPrimaryKeys; // null if not harvested in bulk
+    private Map<String, String> changeTokens;   // null unless we're maintaining a MetadataSnapshot
     private final DatabaseMetaData meta;
     private final Connection connection;
+    private final Object metaDataLock = new Object();
+    private final boolean threadSafeMetaData;
+    private final ConnectionPool connectionPool;
+    private final TableRegistry tableRegistry;  // null unless shared with the other schemas being analyzed
+    private final String databaseProduct;       // only used when there's no metadata to ask
+    private final ThreadLocal<Connection> workerConnection = new ThreadLocal<Connection>();
+    private final ThreadLocal<DatabaseMetaData> workerMeta = new ThreadLocal<DatabaseMetaData>();
     private final String connectTime = new SimpleDateFormat("EEE MMM dd HH:mm z yyyy").format(new Date());
     private Set<String> sqlKeywords;
     private Pattern invalidIdentifierPattern;
@@ -64,12 +87,35 @@ public class Database {
     private final boolean fineEnabled = logger.isLoggable(Level.FINE);
 
     public Database(Config config, Connection connection, DatabaseMetaData meta, String name, String catalog, String schema, SchemaMeta schemaMeta) throws SQLException, MissingResourceException {
+        this(config, connection, meta, name, catalog, schema, schemaMeta, null);
+    }
+
+    /**
+     * @param connectionPool optional pool of connections that metadata worker
+     *          threads borrow from so they don't all contend for <code>connection</code>
+     */
+    public Database(Config config, Connection connection, DatabaseMetaData meta, String name, String catalog, String schema, SchemaMeta schemaMeta, ConnectionPool connectionPool) throws SQLException, MissingResourceException {
+        this(config, connection, meta, name, catalog, schema, schemaMeta, connectionPool, null);
+    }
+
+    /**
+     * @param connectionPool optional pool of connections that metadata worker
+     *          threads borrow from so they don't all contend for <code>connection</code>
+     * @param tableRegistry optional registry of the tables of the other schemas that are
+     *          being analyzed. Remote tables are resolved from it when possible and our
+     *          tables are added to it.
+     */
+    public Database(Config config, Connection connection, DatabaseMetaData meta, String name, String catalog, String schema, SchemaMeta schemaMeta, ConnectionPool connectionPool, TableRegistry tableRegistry) throws SQLException, MissingResourceException {
         this.config = config;
         this.connection = connection;
+        this.connectionPool = connectionPool;
+        this.tableRegistry = tableRegistry;
         this.meta = meta;
         this.databaseName = name;
         this.catalog = catalog;
         this.schema = schema;
+        this.databaseProduct = null;
+        threadSafeMetaData = Boolean.valueOf(config.getDbProperties().getProperty("threadSafeMetadata", "false")).booleanValue();
 
         initTables(meta);
         if (config.isViewsEnabled())
@@ -86,7 +132,53 @@ public class Database {
         initRoutines();
 
         connectTables();
+        initRowCounts();
+        writeSnapshot();
+        registerTables();
+        updateFromXmlMetadata(schemaMeta);
+    }
+
+    /**
+     * Recreate a previously analyzed database from the XML that was written
+     * for it (<code>[db].[schema].xml</code>) without connecting to the database.<p/>
+     *
+     * Routines aren't part of that XML so they won't be included.
+     *
+     * @param config
+     * @param xmlFile
+     * @throws SQLException
+     * @throws IOException if the XML couldn't be read
+     */
+    public Database(Config config, File xmlFile) throws SQLException, IOException {
+        this.config = config;
+        this.connection = null;
+        this.connectionPool = null;
+        this.tableRegistry = null;
+        this.meta = null;
+        threadSafeMetaData = true;
+
+        Element databaseNode = MetadataSnapshot.parse(xmlFile).getDocumentElement();
+        NodeList tableNodes = databaseNode.getElementsByTagName("table");
+        Element firstTableNode = tableNodes.getLength() == 0 ? null : (Element)tableNodes.item(0);
+
+        this.databaseName = databaseNode.getAttribute("name");
+        this.schema = getOptionalAttribute(databaseNode, "schema");
+        this.catalog = firstTableNode == null ? null : getOptionalAttribute(firstTableNode, "catalog");
+        this.databaseProduct = databaseNode.getAttribute("type");
+
+        for (int i = 0; i < tableNodes.getLength(); ++i)
+            initOfflineTable((Element)tableNodes.item(i));
+
+        for (int i = 0; i < tableNodes.getLength(); ++i)
+            connectOfflineTable((Element)tableNodes.item(i));
+
+        SchemaMeta schemaMeta = config.getMeta() == null ? null : new SchemaMeta(config.getMeta(), databaseName, schema);
         updateFromXmlMetadata(schemaMeta);
+
+        for (Table remoteTable : remoteTables.values()) {
+            if (!remoteTable.isNumRowsKnown())
+                remoteTable.setNumRows(-1);
+        }
     }
 
     public String getName() {
@@ -135,12 +227,93 @@ public class Database {
         return routines.values();
     }
 
+    /**
+     * Returns the connection to use for the current thread.
+     * Metadata worker threads get the connection that they borrowed from
+     * the connection pool, everyone else gets the primary connection.
+     *
+     * @return
+     */
     public Connection getConnection() {
-        return connection;
+        Connection borrowed = workerConnection.get();
+        return borrowed != null ? borrowed : connection;
     }
 
+    /**
+     * @see #getConnection()
+     * @return
+     */
     public DatabaseMetaData getMetaData() {
-        return meta;
+        DatabaseMetaData borrowed = workerMeta.get();
+        return borrowed != null ? borrowed : meta;
+    }
+
+    /**
+     * Returns the object to synchronize on while making (and consuming the results of)
+     * {@link DatabaseMetaData#getColumns(String, String, String, String)} calls,
+     * which some drivers can't interleave across threads that share a connection.<p/>
+     *
+     * Threads that share the primary connection get a single shared lock so
+     * those calls are serialized, unless the driver declares that its metadata
+     * services can be interleaved across threads (<code>threadSafeMetadata=true</code>
+     * in its .properties).
+     * Threads that are using their own pooled connection don't need a lock.
+     *
+     * @return the lock or <code>null</code> if there's no need to synchronize
+     */
+    public Object getMetaDataLock() {
+        boolean ownConnection = workerConnection.get() != null;
+        return ownConnection || threadSafeMetaData ? null : metaDataLock;
+    }
+
+    /**
+     * Borrow a connection from the pool (if we have one) and bind it to
+     * the current thread so {@link #getConnection()} and {@link #getMetaData()}
+     * will use it.
+     *
+     * @return the borrowed connection, or <code>null</code> if there's no pool
+     *          (or it couldn't give us one), in which case the primary connection is shared
+     * @throws SQLException
+     * @see #releaseWorkerConnection(Connection)
+     */
+    private Connection borrowWorkerConnection() throws SQLException {
+        if (connectionPool == null)
+            return null;
+
+        Connection borrowed = connectionPool.borrow();
+        if (borrowed == null)
+            return null;
+
+        try {
+            workerMeta.set(borrowed.getMetaData());
+        } catch (SQLException exc) {
+            connectionPool.release(borrowed);
+            throw exc;
+        }
+        workerConnection.set(borrowed);
+        return borrowed;
+    }
+
+    /**
+     * @param borrowed
+     * @see #borrowWorkerConnection()
+     */
+    private void releaseWorkerConnection(Connection borrowed) {
+        if (borrowed != null) {
+            workerConnection.remove();
+            workerMeta.remove();
+            connectionPool.release(borrowed);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this database was recreated from previously
+     * exported XML rather than from a live connection.
+     *
+     * @return
+     */
+    public boolean isOffline() {
+        return connection == null;
     }
 
     public String getConnectTime() {
@@ -148,6 +321,9 @@ public class Database {
     }
 
     public String getDatabaseProduct() {
+        if (meta == null)
+            return databaseProduct;
+
         try {
             return meta.getDatabaseProductName() + " - " + meta.getDatabaseProductVersion();
         } catch (SQLException exc) {
@@ -239,7 +415,18 @@ public class Database {
 
         String[] types = getTypes("tableTypes", "TABLE");
         NameValidator validator = new NameValidator("table", include, exclude, types);
-        List<BasicTableMeta> entries = getBasicTableMeta(metadata, true, types);
+        List<BasicTableMeta> entries = new ArrayList<BasicTableMeta>();
+        for (BasicTableMeta entry : getBasicTableMeta(metadata, true, types)) {
+            if (validator.isValid(entry.name, entry.type))
+                entries.add(entry);
+        }
+
+        changeTokens = getChangeTokens();
+        initTablesFromSnapshot(entries);
+
+        initColumnsInBulk(metadata, entries);
+        harvestedIndexes = getIndexesInBulk();
+        harvestedPrimaryKeys = getPrimaryKeysInBulk();
 
         TableCreator creator;
         if (maxThreads == 1) {
@@ -249,29 +436,485 @@ public class Database {
             // so attempt to speed it up by doing several in parallel.
             // note that it's actually DatabaseMetaData.getIndexInfo() that's expensive
 
-            creator = new ThreadedTableCreator(maxThreads);
+            ThreadedTableCreator threaded = new ThreadedTableCreator(maxThreads);
 
             // "prime the pump" so if there's a database problem we'll probably see it now
             // and not in a secondary thread
-            while (!entries.isEmpty()) {
-                BasicTableMeta entry = entries.remove(0);
+            if (!entries.isEmpty())
+                threaded.createInline(entries.remove(0));
 
-                if (validator.isValid(entry.name, entry.type)) {
-                    new TableCreator().create(entry);
-                    break;
-                }
-            }
+            creator = threaded;
         }
 
         // kick off the secondary threads to do the creation in parallel
         for (BasicTableMeta entry : entries) {
-            if (validator.isValid(entry.name, entry.type)) {
-                creator.create(entry);
-            }
+            creator.create(entry);
         }
 
         // wait for everyone to finish
         creator.join();
+
+        harvestedTables.clear();
+        harvestedIndexes = null;
+        harvestedPrimaryKeys = null;
+    }
+
+    /**
+     * Returns the 'change tokens' of the tables in the schema as returned by
+     * <code>selectTableChangesSql</code>.
+     * A table's token changes whenever its structure does (or at least has a
+     * good chance of changing...it's database-specific).
+     *
+     * @return change tokens keyed by table name or <code>null</code> if snapshots aren't enabled/available
+     * @throws SQLException
+     */
+    private Map<String, String> getChangeTokens() throws SQLException {
+        if (!config.isSnapshotEnabled())
+            return null;
+
+        String sql = config.getDbProperties().getProperty("selectTableChangesSql");
+        if (sql == null) {
+            logger.warning("Snapshots require selectTableChangesSql to be specified for " + config.getDbType());
+            return null;
+        }
+
+        Map<String, String> tokens = new CaseInsensitiveMap<String>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            stmt = prepareStatement(sql, null);
+            rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                String tableSchema = getOptionalString(rs, "table_schem");
+                if (tableSchema == null || schema == null || tableSchema.equals(schema))
+                    tokens.put(rs.getString("table_name"), rs.getString("change_token"));
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve table change tokens, not using snapshot: " + sqlException, sql);
+            return null;
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Restore the details of any tables that haven't changed since the last
+     * {@link MetadataSnapshot} was written.
+     * Restored tables are removed from <code>entries</code>.
+     *
+     * @param entries
+     * @throws SQLException
+     */
+    private void initTablesFromSnapshot(List<BasicTableMeta> entries) throws SQLException {
+        if (changeTokens == null)
+            return;
+
+        File snapshotFile = new File(config.getOutputDir(), MetadataSnapshot.FILENAME);
+        if (!snapshotFile.exists())
+            return;
+
+        MetadataSnapshot snapshot;
+        try {
+            snapshot = new MetadataSnapshot(snapshotFile);
+        } catch (IOException exc) {
+            logger.warning("Ignoring unusable snapshot: " + exc);
+            return;
+        }
+
+        int numRestored = 0;
+        Iterator<BasicTableMeta> iter = entries.iterator();
+        while (iter.hasNext()) {
+            BasicTableMeta entry = iter.next();
+            String changeToken = changeTokens.get(entry.name);
+            if (changeToken == null || !changeToken.equals(snapshot.getChangeToken(entry.name)))
+                continue;
+
+            Table table = new Table(this, entry.catalog, entry.schema, entry.name, entry.remarks, true);
+            try {
+                if (!snapshot.restore(table))
+                    continue;
+            } catch (RuntimeException exc) {
+                logger.warning("Failed to restore " + entry.name + " from snapshot: " + exc);
+                continue;
+            }
+
+            if (entry.numRows != -1)
+                table.setNumRows(entry.numRows);
+            tables.put(table.getName(), table);
+            iter.remove();
+            ++numRestored;
+        }
+
+        logger.info("Restored details of " + numRestored + " unchanged tables from " + snapshotFile);
+    }
+
+    /**
+     * Write a {@link MetadataSnapshot} of our tables for the next run to use
+     */
+    private void writeSnapshot() {
+        if (changeTokens == null)
+            return;
+
+        File snapshotFile = new File(config.getOutputDir(), MetadataSnapshot.FILENAME);
+        try {
+            MetadataSnapshot.write(snapshotFile, tables.values(), changeTokens);
+        } catch (IOException exc) {
+            // don't die just because this failed
+            logger.warning("Failed to write snapshot: " + exc);
+        }
+    }
+
+    /**
+     * Make our tables available to the other schemas that are being analyzed
+     * so they don't have to query the ones that they reference.
+     * Done before applying any XML metadata since that's specific to our schema.
+     */
+    private void registerTables() {
+        if (tableRegistry == null)
+            return;
+
+        for (Table table : tables.values())
+            tableRegistry.register(table);
+    }
+
+    /**
+     * Harvest the columns of all of the specified tables with a single query
+     * rather than with one query per table.<p/>
+     *
+     * Uses <code>selectColumnsSql</code> if it's specified in the .properties,
+     * otherwise uses {@link DatabaseMetaData#getColumns(String, String, String, String)}
+     * for all tables in the schema if bulk metadata is enabled.
+     * The tables whose columns were harvested are placed in <code>harvestedTables</code>.
+     * Tables that the query didn't return any columns for (e.g. the driver ignored the
+     * pattern or disagreed with us about the case of their names) are left to the
+     * per-table approach, as is everything if anything goes wrong.
+     *
+     * @param metadata
+     * @param entries
+     * @throws SQLException
+     */
+    private void initColumnsInBulk(DatabaseMetaData metadata, List<BasicTableMeta> entries) throws SQLException {
+        String sql = config.getDbProperties().getProperty("selectColumnsSql");
+        if (sql == null && !config.isBulkMetadataEnabled())
+            return;
+
+        Map<String, Table> deferred = new CaseInsensitiveMap<Table>();
+        for (BasicTableMeta entry : entries) {
+            deferred.put(entry.name, new Table(this, entry.catalog, entry.schema, entry.name, entry.remarks, true));
+        }
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        // no worker threads have been started yet so there's nobody to contend with
+        try {
+            if (sql != null) {
+                stmt = prepareStatement(sql, null);
+                rs = stmt.executeQuery();
+            } else {
+                rs = metadata.getColumns(catalog, schema, "%", "%");
+            }
+
+            while (rs.next()) {
+                Table table = deferred.get(rs.getString("table_name"));
+                if (table != null) {
+                    // ignore identically named tables in other schemas
+                    String tableSchema = getOptionalString(rs, "table_schem");
+                    if (tableSchema == null || table.getSchema() == null || tableSchema.equals(table.getSchema()))
+                        table.addColumn(rs);
+                }
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve column details in bulk, reverting to per-table queries: " + sqlException, sql);
+            return;
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        for (Table table : deferred.values()) {
+            if (!table.getColumns().isEmpty())
+                harvestedTables.put(table.getName(), table);
+        }
+    }
+
+    /**
+     * Harvest the indexes of all of the tables in the schema with
+     * <code>selectAllIndexesSql</code> (if it's specified in the .properties)
+     * rather than with one query per table.
+     *
+     * @return index details keyed by table name or <code>null</code> if they weren't harvested
+     * @throws SQLException
+     */
+    private Map<String, List<IndexRow>> getIndexesInBulk() throws SQLException {
+        String sql = config.getDbProperties().getProperty("selectAllIndexesSql");
+        if (sql == null)
+            return null;
+
+        Map<String, List<IndexRow>> indexes = new CaseInsensitiveMap<List<IndexRow>>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            stmt = prepareStatement(sql, null);
+            rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                if (rs.getShort("type") == DatabaseMetaData.tableIndexStatistic)
+                    continue;
+
+                String tableName = rs.getString("table_name");
+                List<IndexRow> rows = indexes.get(tableName);
+                if (rows == null) {
+                    rows = new ArrayList<IndexRow>();
+                    indexes.put(tableName, rows);
+                }
+                rows.add(new IndexRow(rs));
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve index details in bulk, reverting to per-table queries: " + sqlException, sql);
+            return null;
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Harvest the primary keys of all of the tables in the schema with
+     * <code>selectAllPrimaryKeysSql</code> (if it's specified in the .properties)
+     * rather than with one query per table.
+     *
+     * @return primary key details keyed by table name or <code>null</code> if they weren't harvested
+     * @throws SQLException
+     */
+    private Map<String, List<PrimaryKeyRow>> getPrimaryKeysInBulk() throws SQLException {
+        String sql = config.getDbProperties().getProperty("selectAllPrimaryKeysSql");
+        if (sql == null)
+            return null;
+
+        Map<String, List<PrimaryKeyRow>> primaryKeys = new CaseInsensitiveMap<List<PrimaryKeyRow>>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            stmt = prepareStatement(sql, null);
+            rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                String tableName = rs.getString("table_name");
+                List<PrimaryKeyRow> rows = primaryKeys.get(tableName);
+                if (rows == null) {
+                    rows = new ArrayList<PrimaryKeyRow>();
+                    primaryKeys.put(tableName, rows);
+                }
+                rows.add(new PrimaryKeyRow(rs));
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve primary key details in bulk, reverting to per-table queries: " + sqlException, sql);
+            return null;
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        return primaryKeys;
+    }
+
+    /**
+     * Populate the specified table's indexes with the ones harvested by
+     * {@link #getIndexesInBulk()}.
+     *
+     * @param table
+     * @return <code>false</code> if indexes weren't harvested and the table has to query its own
+     */
+    boolean initIndexesFromBulk(Table table) {
+        Map<String, List<IndexRow>> harvested = harvestedIndexes;
+        if (harvested == null)
+            return false;
+
+        List<IndexRow> rows = harvested.get(table.getName());
+        if (rows != null) {
+            for (IndexRow row : rows) {
+                if (row.tableSchema == null || table.getSchema() == null || row.tableSchema.equals(table.getSchema()))
+                    table.addIndex(row.indexName, row.isUnique, row.columnName, row.ascOrDesc);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Populate the specified table's primary keys with the ones harvested by
+     * {@link #getPrimaryKeysInBulk()}.
+     *
+     * @param table
+     * @return <code>false</code> if primary keys weren't harvested and the table has to query its own
+     */
+    boolean initPrimaryKeysFromBulk(Table table) {
+        Map<String, List<PrimaryKeyRow>> harvested = harvestedPrimaryKeys;
+        if (harvested == null)
+            return false;
+
+        List<PrimaryKeyRow> rows = harvested.get(table.getName());
+        if (rows != null) {
+            for (PrimaryKeyRow row : rows) {
+                if (row.tableSchema == null || table.getSchema() == null || row.tableSchema.equals(table.getSchema()))
+                    table.setPrimaryColumn(row.pkName, row.columnName);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Determine the number of rows in each of the tables up front
+     * rather than lazily while we're generating output.<p/>
+     *
+     * Estimates from <code>selectRowEstimatesSql</code> are used for tables that
+     * the database thinks are larger than {@link Config#getExactRowCountLimit()}.
+     * All others are counted, in parallel if we're allowed multiple threads.
+     *
+     * @throws SQLException
+     */
+    private void initRowCounts() throws SQLException {
+        if (!config.isNumRowsEnabled())
+            return;
+
+        Map<String, Long> estimates = getRowCountEstimates();
+        long exactLimit = config.getExactRowCountLimit();
+        List<Table> toCount = new ArrayList<Table>();
+
+        for (Table table : tables.values()) {
+            if (table.isNumRowsKnown())    // e.g. from selectTablesSql
+                continue;
+
+            Long estimate = estimates.get(table.getName());
+            if (estimate != null && estimate.longValue() >= 0) {
+                table.setEstimatedNumRows(estimate.longValue());
+                if (estimate.longValue() > exactLimit)
+                    continue;
+            }
+
+            toCount.add(table);
+        }
+
+        // counting in parallel on the primary connection would just contend for it
+        int maxThreads = connectionPool == null ? 1 : Math.min(config.getMaxDbThreads(), toCount.size());
+        if (maxThreads <= 1) {
+            for (Table table : toCount)
+                countRows(table);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+        for (final Table table : toCount) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    Connection borrowed = null;
+
+                    try {
+                        borrowed = borrowWorkerConnection();
+                        if (borrowed != null) {
+                            countRows(table);
+                        } else {
+                            // the pool couldn't give us our own connection, so share the primary one
+                            synchronized (metaDataLock) {
+                                countRows(table);
+                            }
+                        }
+                    } catch (Exception exc) {
+                        // don't die just because this failed
+                        logger.warning("Unable to extract the number of rows for table " + table.getName() + ": " + exc);
+                    } finally {
+                        releaseWorkerConnection(borrowed);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                ;
+        } catch (InterruptedException interrupted) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while counting rows");
+        }
+    }
+
+    /**
+     * Count the rows in the specified table, keeping any estimate that
+     * it already has if the count fails.
+     *
+     * @param table
+     */
+    private void countRows(Table table) {
+        long numRows = table.fetchNumRows();
+        if (numRows != -1 || !table.isNumRowsKnown())
+            table.setNumRows(numRows);
+    }
+
+    /**
+     * Returns the database's estimates of the number of rows in each table
+     * as returned by <code>selectRowEstimatesSql</code>, if it's specified in the .properties.
+     *
+     * @return estimated number of rows keyed by table name
+     * @throws SQLException
+     */
+    private Map<String, Long> getRowCountEstimates() throws SQLException {
+        Map<String, Long> estimates = new CaseInsensitiveMap<Long>();
+        String sql = config.getDbProperties().getProperty("selectRowEstimatesSql");
+        if (sql == null)
+            return estimates;
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            stmt = prepareStatement(sql, null);
+            rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                String tableSchema = getOptionalString(rs, "table_schem");
+                long rowCount = rs.getLong("row_count");
+                if (rs.wasNull())   // e.g. table hasn't been analyzed
+                    continue;
+                if (tableSchema == null || schema == null || tableSchema.equals(schema))
+                    estimates.put(rs.getString("table_name"), new Long(rowCount));
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve estimated row counts: " + sqlException, sql);
+            estimates.clear();
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        return estimates;
     }
 
     /**
@@ -336,6 +979,79 @@ public class Database {
         }
     }
 
+    /**
+     * Details of one column of an index as returned by <code>selectAllIndexesSql</code>
+     */
+    private class IndexRow
+    {
+        final String tableSchema;
+        final String indexName;
+        final boolean isUnique;
+        final String columnName;
+        final String ascOrDesc;
+
+        IndexRow(ResultSet rs) throws SQLException
+        {
+            tableSchema = getOptionalString(rs, "table_schem");
+            indexName = rs.getString("index_name");
+            isUnique = !rs.getBoolean("non_unique");
+            columnName = rs.getString("column_name");
+            ascOrDesc = rs.getString("asc_or_desc");
+        }
+    }
+
+    /**
+     * Details of one column of a primary key as returned by <code>selectAllPrimaryKeysSql</code>
+     */
+    private class PrimaryKeyRow
+    {
+        final String tableSchema;
+        final String pkName;
+        final String columnName;
+
+        PrimaryKeyRow(ResultSet rs) throws SQLException
+        {
+            tableSchema = getOptionalString(rs, "table_schem");
+            pkName = rs.getString("pk_name");
+            columnName = rs.getString("column_name");
+        }
+    }
+
+    /**
+     * Details of one column of a foreign key as returned by
+     * {@link DatabaseMetaData#getImportedKeys(String, String, String)}
+     * or <code>selectForeignKeysSql</code>
+     */
+    private class ForeignKeyRow
+    {
+        final String fkName;
+        final String fkCatalog;
+        final String fkSchema;
+        final String fkTableName;
+        final String fkColumnName;
+        final String pkCatalog;
+        final String pkSchema;
+        final String pkTableName;
+        final String pkColumnName;
+        final int updateRule;
+        final int deleteRule;
+
+        ForeignKeyRow(ResultSet rs) throws SQLException
+        {
+            fkName = rs.getString("fk_name");
+            fkCatalog = getOptionalString(rs, "fktable_cat");
+            fkSchema = getOptionalString(rs, "fktable_schem");
+            fkTableName = rs.getString("fktable_name");
+            fkColumnName = rs.getString("fkcolumn_name");
+            pkCatalog = getOptionalString(rs, "pktable_cat");
+            pkSchema = getOptionalString(rs, "pktable_schem");
+            pkTableName = rs.getString("pktable_name");
+            pkColumnName = rs.getString("pkcolumn_name");
+            updateRule = rs.getInt("update_rule");
+            deleteRule = rs.getInt("delete_rule");
+        }
+    }
+
     /**
      * Return a list of basic details of the tables in the schema.
      *
@@ -854,8 +1570,14 @@ public class Database {
             if (fineEnabled)
                 logger.fine("Creating remote table " + fullName);
 
+            TableRegistry.RegisteredTable registered = null;
+            if (!logical && tableRegistry != null)
+                registered = tableRegistry.get(fullName);
+
             if (logical)
                 remoteTable = new LogicalRemoteTable(this, remoteCatalog, remoteSchema, remoteTableName, baseContainer);
+            else if (registered != null)
+                remoteTable = new RemoteTable(this, remoteCatalog, remoteSchema, remoteTableName, baseContainer, registered);
             else
                 remoteTable = new RemoteTable(this, remoteCatalog, remoteSchema, remoteTableName, baseContainer);
 
@@ -863,7 +1585,16 @@ public class Database {
                 logger.fine("Adding remote table " + fullName);
 
             remoteTables.put(fullName, remoteTable);
-            remoteTable.connectForeignKeys(locals);
+            if (!isOffline()) {
+                remoteTable.connectForeignKeys(locals);
+
+                // let the other schemas use what we had to query
+                if (!logical && registered == null && tableRegistry != null) {
+                    List<TableRegistry.ImportedKey> importedKeys = ((RemoteTable)remoteTable).getImportedKeys();
+                    if (importedKeys != null)
+                        tableRegistry.register((RemoteTable)remoteTable, importedKeys);
+                }
+            }
         }
 
         return remoteTable;
@@ -1043,6 +1774,156 @@ public class Database {
         return sqlParams;
     }
 
+    /**
+     * Create the table or view described by the specified node of
+     * previously exported XML
+     *
+     * @param tableNode
+     * @throws SQLException
+     */
+    private void initOfflineTable(Element tableNode) throws SQLException {
+        String name = tableNode.getAttribute("name");
+        String tableCatalog = getOptionalAttribute(tableNode, "catalog");
+        String tableSchema = getOptionalAttribute(tableNode, "schema");
+        String remarks = getOptionalAttribute(tableNode, "remarks");
+        Table table;
+
+        if ("VIEW".equals(tableNode.getAttribute("type"))) {
+            View view = new View(this, tableCatalog, tableSchema, name, remarks, tableNode.getAttribute("viewSql"));
+            views.put(view.getName(), view);
+            table = view;
+        } else {
+            table = new Table(this, tableCatalog, tableSchema, name, remarks);
+            tables.put(table.getName(), table);
+        }
+
+        String id = getOptionalAttribute(tableNode, "id");
+        if (id != null)
+            table.setId(id);
+
+        MetadataSnapshot.restore(table, tableNode);
+
+        String numRows = getOptionalAttribute(tableNode, "numRows");
+        if (numRows != null && Boolean.valueOf(tableNode.getAttribute("numRowsEstimated")).booleanValue())
+            table.setEstimatedNumRows(Long.parseLong(numRows));
+        else
+            table.setNumRows(numRows == null ? -1 : Long.parseLong(numRows));
+
+        NodeList constraints = tableNode.getElementsByTagName("checkConstraint");
+        for (int i = 0; i < constraints.getLength(); ++i) {
+            Element constraint = (Element)constraints.item(i);
+            table.addCheckConstraint(constraint.getAttribute("name"), constraint.getAttribute("constraint"));
+        }
+    }
+
+    /**
+     * Connect the foreign keys described by the specified node of previously
+     * exported XML.<p/>
+     *
+     * Each local table's node describes its own foreign keys (<code>parent</code>s)
+     * so only the <code>child</code>ren that live in remote tables need to be
+     * connected from this side.
+     *
+     * @param tableNode
+     * @throws SQLException
+     */
+    private void connectOfflineTable(Element tableNode) throws SQLException {
+        Table table = locals.get(tableNode.getAttribute("name"));
+
+        for (Node node = tableNode.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!(node instanceof Element) || !((Element)node).getTagName().equals("column"))
+                continue;
+
+            Element columnNode = (Element)node;
+            String columnName = columnNode.getAttribute("name");
+            NodeList parents = columnNode.getElementsByTagName("parent");
+            for (int i = 0; i < parents.getLength(); ++i) {
+                Element parent = (Element)parents.item(i);
+                if (Boolean.valueOf(parent.getAttribute("implied")).booleanValue())
+                    continue;
+
+                addOfflineRemoteColumn(parent);
+                table.addForeignKey(parent.getAttribute("foreignKey"), columnName,
+                        getOptionalAttribute(parent, "catalog"), getOptionalAttribute(parent, "schema"),
+                        parent.getAttribute("table"), parent.getAttribute("column"),
+                        getRule(parent, "updateRule", false), getRule(parent, "deleteRule", true),
+                        locals);
+            }
+
+            NodeList children = columnNode.getElementsByTagName("child");
+            for (int i = 0; i < children.getLength(); ++i) {
+                Element child = (Element)children.item(i);
+                if (Boolean.valueOf(child.getAttribute("implied")).booleanValue())
+                    continue;
+
+                Table remoteTable = addOfflineRemoteColumn(child);
+                if (remoteTable != null) {
+                    remoteTable.addForeignKey(child.getAttribute("foreignKey"), child.getAttribute("column"),
+                            table.getCatalog(), table.getSchema(),
+                            table.getName(), columnName,
+                            getRule(child, "updateRule", false), getRule(child, "deleteRule", true),
+                            locals);
+                }
+            }
+        }
+    }
+
+    /**
+     * The exported XML only describes the columns of remote tables that
+     * are involved in relationships, so create them (and their tables) as
+     * they're referenced.
+     *
+     * @param referenceNode <code>parent</code> or <code>child</code> node
+     * @return the remote table or <code>null</code> if the node references a local table
+     * @throws SQLException
+     */
+    private Table addOfflineRemoteColumn(Element referenceNode) throws SQLException {
+        String refCatalog = getOptionalAttribute(referenceNode, "catalog");
+        String refSchema = getOptionalAttribute(referenceNode, "schema");
+        String refTableName = referenceNode.getAttribute("table");
+        String refContainer = refSchema != null ? refSchema : refCatalog != null ? refCatalog : getName();
+        String baseContainer = schema != null ? schema : catalog != null ? catalog : getName();
+
+        if (locals.containsKey(refTableName) && baseContainer.equals(refContainer))
+            return null;
+
+        Table remoteTable = addRemoteTable(refCatalog, refSchema, refTableName, baseContainer, false);
+        String columnName = referenceNode.getAttribute("column");
+        if (remoteTable.getColumn(columnName) == null)
+            remoteTable.addColumn(new TableColumn(remoteTable, columnName, null, "unknown", 0, 0, true, false, null, null));
+        return remoteTable;
+    }
+
+    /**
+     * Returns the update/delete rule of a foreign key from exported XML.
+     * XML exported before the rules were recorded only tells us whether
+     * deletes cascade.
+     *
+     * @param referenceNode
+     * @param attribute
+     * @param isDelete
+     * @return
+     */
+    private static int getRule(Element referenceNode, String attribute, boolean isDelete) {
+        String rule = getOptionalAttribute(referenceNode, attribute);
+        if (rule != null)
+            return Integer.parseInt(rule);
+
+        if (isDelete && Boolean.valueOf(referenceNode.getAttribute("onDeleteCascade")).booleanValue())
+            return DatabaseMetaData.importedKeyCascade;
+        return DatabaseMetaData.importedKeyNoAction;
+    }
+
+    /**
+     * @param node
+     * @param attribute
+     * @return <code>null</code> if the attribute wasn't specified or is empty
+     */
+    private static String getOptionalAttribute(Element node, String attribute) {
+        String value = node.getAttribute(attribute);
+        return value.length() == 0 ? null : value;
+    }
+
     /**
      * Take the supplied XML-based metadata and update our model of the schema with it
      *
@@ -1094,6 +1975,12 @@ public class Database {
     }
 
     private void connectTables() throws SQLException {
+        List<ForeignKeyRow> foreignKeys = getForeignKeysInBulk();
+        if (foreignKeys != null) {
+            connectTables(foreignKeys);
+            return;
+        }
+
         for (Table table : tables.values()) {
             table.connectForeignKeys(locals);
         }
@@ -1102,6 +1989,103 @@ public class Database {
         }
     }
 
+    /**
+     * Connect our tables to each other (and to any remote tables that
+     * reference them) based on the specified foreign key details.
+     *
+     * @param foreignKeys
+     * @throws SQLException
+     */
+    private void connectTables(List<ForeignKeyRow> foreignKeys) throws SQLException {
+        for (ForeignKeyRow fk : foreignKeys) {
+            if (isLocal(fk.fkCatalog, fk.fkSchema)) {
+                Table table = locals.get(fk.fkTableName);
+                if (table != null) {
+                    table.addForeignKey(fk.fkName, fk.fkColumnName,
+                                        fk.pkCatalog, fk.pkSchema, fk.pkTableName, fk.pkColumnName,
+                                        fk.updateRule, fk.deleteRule, locals);
+                }
+            } else if (isLocal(fk.pkCatalog, fk.pkSchema) && locals.containsKey(fk.pkTableName)) {
+                // a 'remote' table in another schema that points to one of our primary keys
+                addRemoteTable(fk.fkCatalog, fk.fkSchema, fk.fkTableName, getSchema(), false);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the specified catalog and schema
+     * (either of which might not be known) are the ones that we're evaluating.
+     *
+     * @param cat
+     * @param sch
+     * @return
+     */
+    private boolean isLocal(String cat, String sch) {
+        return (sch == null || sch.equals(schema)) &&
+                (cat == null || catalog == null || cat.equals(catalog));
+    }
+
+    /**
+     * Harvest the foreign keys of the entire schema in one go rather than
+     * with two queries per table.<p/>
+     *
+     * Uses <code>selectForeignKeysSql</code> if it's specified in the .properties,
+     * otherwise uses {@link DatabaseMetaData#getImportedKeys(String, String, String)} and
+     * {@link DatabaseMetaData#getExportedKeys(String, String, String)} without a table name
+     * if bulk metadata is enabled (not all drivers support that).
+     *
+     * @return the foreign keys, or <code>null</code> if they have to be retrieved one table at a time
+     * @throws SQLException
+     */
+    private List<ForeignKeyRow> getForeignKeysInBulk() throws SQLException {
+        String sql = config.getDbProperties().getProperty("selectForeignKeysSql");
+        if (sql == null && !config.isBulkMetadataEnabled())
+            return null;
+
+        List<ForeignKeyRow> foreignKeys = new ArrayList<ForeignKeyRow>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            if (sql != null) {
+                stmt = prepareStatement(sql, null);
+                rs = stmt.executeQuery();
+                while (rs.next())
+                    foreignKeys.add(new ForeignKeyRow(rs));
+            } else {
+                rs = getMetaData().getImportedKeys(catalog, schema, null);
+                while (rs.next())
+                    foreignKeys.add(new ForeignKeyRow(rs));
+
+                // some drivers quietly return nothing instead of complaining about the missing table name
+                if (foreignKeys.isEmpty() && !tables.isEmpty())
+                    return null;
+
+                if (schema != null || catalog != null) {
+                    rs.close();
+                    rs = null;
+                    rs = getMetaData().getExportedKeys(catalog, schema, null);
+                    while (rs.next()) {
+                        ForeignKeyRow fk = new ForeignKeyRow(rs);
+                        if (!isLocal(fk.fkCatalog, fk.fkSchema))
+                            foreignKeys.add(fk);
+                    }
+                }
+            }
+        } catch (SQLException sqlException) {
+            // don't die just because this failed
+            warning("Failed to retrieve foreign keys in bulk, reverting to per-table queries: " + sqlException, sql);
+            return null;
+        } finally {
+            if (rs != null)
+                rs.close();
+            if (stmt != null)
+                stmt.close();
+        }
+
+        return foreignKeys;
+    }
+
     /**
      * Returns a 'key' that's used to identify a remote table
      * in the remoteTables map.
@@ -1116,18 +2100,35 @@ public class Database {
     }
 
     /**
-     * Single-threaded implementation of a class that creates tables
+     * Single-threaded implementation of a class that creates tables.<p/>
+     *
+     * The first table that fails aborts the creation unless we've been
+     * told to skip failed tables ({@link Config#isSkipFailedTables()}),
+     * in which case they're left out of the model and listed by {@link #join()}.
      */
     private class TableCreator {
+        protected final boolean skipFailures = config.isSkipFailedTables();
+        private final List<String> skipped = new ArrayList<String>();
+
         /**
          * Create a table and put it into <code>tables</code>
          */
         void create(BasicTableMeta tableMeta) throws SQLException {
-            createImpl(tableMeta);
+            try {
+                createImpl(tableMeta);
+            } catch (SQLException exc) {
+                if (!skipFailures)
+                    throw exc;
+                skip(tableMeta, exc);
+            }
         }
 
         protected void createImpl(BasicTableMeta tableMeta) throws SQLException {
-            Table table = new Table(Database.this, tableMeta.catalog, tableMeta.schema, tableMeta.name, tableMeta.remarks);
+            Table table = harvestedTables.get(tableMeta.name);
+            if (table != null)
+                table.initDetails();
+            else
+                table = new Table(Database.this, tableMeta.catalog, tableMeta.schema, tableMeta.name, tableMeta.remarks);
             if (tableMeta.numRows != -1) {
                 table.setNumRows(tableMeta.numRows);
             }
@@ -1144,76 +2145,170 @@ public class Database {
         }
 
         /**
-         * Wait for all of the tables to be created.
-         * By default this does nothing since this implementation isn't threaded.
+         * Report a table that failed and leave it out of the model
+         *
+         * @param tableMeta
+         * @param failure
          */
-        void join() {
+        protected void skip(BasicTableMeta tableMeta, SQLException failure) {
+            warning("Failed to retrieve details of table " + tableMeta.name + ", leaving it out: " + failure, null);
+
+            synchronized (skipped) {
+                skipped.add(tableMeta.name);
+            }
+        }
+
+        /**
+         * Wait for all of the tables to be created and list any that were skipped.
+         * This implementation isn't threaded so there's nothing to wait for.
+         *
+         * @throws SQLException if any of the tables couldn't be created
+         */
+        void join() throws SQLException {
+            synchronized (skipped) {
+                if (!skipped.isEmpty()) {
+                    Collections.sort(skipped, String.CASE_INSENSITIVE_ORDER);
+                    warning("Left out " + skipped.size() + " table(s) whose details couldn't be retrieved: " + skipped, null);
+                }
+            }
         }
     }
 
     /**
-     * Multi-threaded implementation of a class that creates tables
+     * Multi-threaded implementation of a class that creates tables.<p/>
+     *
+     * Tables are created by a fixed number of worker threads that pull from a
+     * bounded queue of pending tables.
+     * Unless we're skipping failed tables the first failure cancels the
+     * creation of the remaining tables (both queued and in-flight)
+     * and {@link #join()} reports every failure in one <code>SQLException</code>.
      */
     private class ThreadedTableCreator extends TableCreator {
-        private final Set<Thread> threads = new HashSet<Thread>();
-        private final int maxThreads;
+        private final ExecutorService executor;
+        private final Semaphore pending;
+        private final List<SQLException> failures = new ArrayList<SQLException>();
+        private volatile boolean cancelled;
 
         ThreadedTableCreator(int maxThreads) {
-            this.maxThreads = maxThreads;
+            executor = Executors.newFixedThreadPool(maxThreads);
+
+            // don't let the queue of tables waiting to be created grow without bounds
+            pending = new Semaphore(maxThreads * 2);
+        }
+
+        /**
+         * Create a table on the calling thread
+         */
+        void createInline(BasicTableMeta tableMeta) throws SQLException {
+            super.create(tableMeta);
         }
 
         @Override
         void create(final BasicTableMeta tableMeta) throws SQLException {
-            Thread runner = new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        createImpl(tableMeta);
-                    } catch (SQLException exc) {
-                        exc.printStackTrace(); // nobody above us in call stack...dump it here
-                    } finally {
-                        synchronized (threads) {
-                            threads.remove(this);
-                            threads.notify();
+            pending.acquireUninterruptibly();
+
+            if (cancelled) {
+                pending.release();
+                return;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        Connection borrowed = null;
+
+                        try {
+                            if (!cancelled) {
+                                borrowed = borrowWorkerConnection();
+                                createImpl(tableMeta);
+                            }
+                        } catch (SQLException exc) {
+                            failed(tableMeta, exc);
+                        } catch (RuntimeException exc) {
+                            SQLException failure = new SQLException(exc.toString());
+                            failure.initCause(exc);
+                            failed(tableMeta, failure);
+                        } finally {
+                            releaseWorkerConnection(borrowed);
+                            pending.release();
                         }
                     }
-                }
-            };
+                });
+            } catch (RejectedExecutionException cancelledMeanwhile) {
+                pending.release();
+            }
+        }
 
-            synchronized (threads) {
-                // wait for enough 'room'
-                while (threads.size() >= maxThreads) {
-                    try {
-                        threads.wait();
-                    } catch (InterruptedException interrupted) {
-                    }
-                }
+        /**
+         * Skip the table or record the failure and cancel the remaining tables
+         *
+         * @param tableMeta
+         * @param exc
+         */
+        private void failed(BasicTableMeta tableMeta, SQLException exc) {
+            if (skipFailures) {
+                skip(tableMeta, exc);
+                return;
+            }
 
-                threads.add(runner);
+            // tables that we interrupted are collateral damage of an earlier failure
+            if (cancelled && Thread.currentThread().isInterrupted())
+                return;
+
+            warning("Failed to retrieve details of table " + tableMeta.name + ": " + exc, null);
+
+            SQLException failure = new SQLException("Failed to retrieve details of table " + tableMeta.name + ": " + exc.getMessage(),
+                                                    exc.getSQLState(), exc.getErrorCode());
+            failure.initCause(exc);
+            synchronized (failures) {
+                failures.add(failure);
             }
 
-            runner.start();
+            cancel();
+        }
+
+        /**
+         * Stop creating tables: drop the ones that are queued and interrupt the ones in-flight
+         */
+        private void cancel() {
+            cancelled = true;
+
+            // tasks that never ran won't release their permits
+            pending.release(executor.shutdownNow().size());
         }
 
         /**
-         * Wait for all of the started threads to complete
+         * Wait for all of the tables to be created
+         *
+         * @throws SQLException describing every table that couldn't be created
          */
         @Override
-        public void join() {
-            while (true) {
-                Thread thread;
+        void join() throws SQLException {
+            executor.shutdown();
+
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                    ;
+            } catch (InterruptedException interrupted) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while retrieving table details");
+            }
 
-                synchronized (threads) {
-                    Iterator<Thread> iter = threads.iterator();
-                    if (!iter.hasNext())
-                        break;
+            super.join();
 
-                    thread = iter.next();
-                }
+            synchronized (failures) {
+                if (failures.size() == 1)
+                    throw failures.get(0);
 
-                try {
-                    thread.join();
-                } catch (InterruptedException exc) {
+                if (!failures.isEmpty()) {
+                    SQLException first = failures.get(0);
+                    SQLException report = new SQLException("Failed to retrieve details of " + failures.size() +
+                                                            " tables, the first of which failed with: " + first.getMessage());
+                    report.initCause(first);
+                    for (SQLException failure : failures)
+                        report.setNextException(failure);
+                    throw report;
                 }
             }
         }
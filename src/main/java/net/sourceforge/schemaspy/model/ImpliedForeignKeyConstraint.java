@@ -18,6 +18,9 @@
  */
 package net.sourceforge.schemaspy.model;
 
+import static java.sql.DatabaseMetaData.importedKeyNoAction;
+import java.util.List;
+
 public class ImpliedForeignKeyConstraint extends ForeignKeyConstraint {
     /**
      * @param parentColumn
@@ -27,6 +30,26 @@ public class ImpliedForeignKeyConstraint extends ForeignKeyConstraint {
         super(parentColumn, childColumn);
     }
 
+    /**
+     * Implied constraint that spans several columns (a composite primary key).
+     * Ties the columns together like {@link #ImpliedForeignKeyConstraint(TableColumn, TableColumn)} does.
+     *
+     * @param parentColumns
+     * @param childColumns corresponding child columns, in the same order as <code>parentColumns</code>
+     */
+    public ImpliedForeignKeyConstraint(List<TableColumn> parentColumns, List<TableColumn> childColumns) {
+        super(childColumns.get(0).getTable(), null, importedKeyNoAction, importedKeyNoAction);
+
+        for (int i = 0; i < parentColumns.size(); ++i) {
+            TableColumn parentColumn = parentColumns.get(i);
+            TableColumn childColumn = childColumns.get(i);
+            addChildColumn(childColumn);
+            addParentColumn(parentColumn);
+            childColumn.addParent(parentColumn, this);
+            parentColumn.addChild(childColumn, this);
+        }
+    }
+
     /**
      * @return
      */
@@ -0,0 +1,336 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import net.sourceforge.schemaspy.Config;
+import net.sourceforge.schemaspy.util.CaseInsensitiveMap;
+import net.sourceforge.schemaspy.util.DOMUtil;
+import net.sourceforge.schemaspy.util.LineWriter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * A snapshot of the details of a schema's tables (columns, indexes and primary keys)
+ * that's kept with the generated output so subsequent runs only have to query
+ * the details of the tables that have changed since.<p/>
+ *
+ * Each table is recorded along with the 'change token' that
+ * <code>selectTableChangesSql</code> returned for it (e.g. PostgreSQL's
+ * <code>xmin</code> or Oracle's <code>LAST_DDL_TIME</code>).
+ * A table whose token hasn't changed can be {@link #restore(Table) restored}
+ * from the snapshot instead of being queried.<p/>
+ *
+ * The elements and attributes mirror the ones written by
+ * <code>XmlTableFormatter</code>.
+ */
+public class MetadataSnapshot {
+    public static final String FILENAME = "schemaSpy.snapshot.xml";
+
+    private final Map<String, Element> tableNodes = new CaseInsensitiveMap<Element>();
+    private static final Pattern validXmlChars =
+        Pattern.compile("^[ -\uD7FF\uE000-\uFFFD\\p{L}\\p{M}\\p{Z}\\p{S}\\p{N}\\p{P}]*$");
+    private static final Logger logger = Logger.getLogger(MetadataSnapshot.class.getName());
+
+    /**
+     * Load a previously {@link #write(File, Collection, Map) written} snapshot
+     *
+     * @param file
+     * @throws IOException if the snapshot couldn't be read
+     */
+    public MetadataSnapshot(File file) throws IOException {
+        Document doc = parse(file);
+
+        NodeList tables = doc.getElementsByTagName("table");
+        for (int i = 0; i < tables.getLength(); ++i) {
+            Element tableNode = (Element)tables.item(i);
+            tableNodes.put(tableNode.getAttribute("name"), tableNode);
+        }
+
+        logger.fine("Loaded snapshot of " + tableNodes.size() + " tables from " + file);
+    }
+
+    /**
+     * Parse the specified XML file
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file couldn't be read or parsed
+     */
+    static Document parse(File file) throws IOException {
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            return builder.parse(file);
+        } catch (ParserConfigurationException exc) {
+            IOException failure = new IOException("Invalid XML parser configuration: " + exc);
+            failure.initCause(exc);
+            throw failure;
+        } catch (SAXException exc) {
+            IOException failure = new IOException("Failed to parse " + file + ": " + exc);
+            failure.initCause(exc);
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the change token that was recorded for the specified table
+     *
+     * @param tableName
+     * @return <code>null</code> if the table isn't in the snapshot
+     */
+    public String getChangeToken(String tableName) {
+        Element tableNode = tableNodes.get(tableName);
+        return tableNode == null ? null : tableNode.getAttribute("changeToken");
+    }
+
+    /**
+     * Populate the columns, indexes and primary keys of the specified table
+     * with the details recorded in the snapshot
+     *
+     * @param table
+     * @return <code>false</code> if the table isn't in the snapshot
+     */
+    boolean restore(Table table) {
+        Element tableNode = tableNodes.get(table.getName());
+        if (tableNode == null)
+            return false;
+
+        restore(table, tableNode);
+        return true;
+    }
+
+    /**
+     * Populate the columns, indexes and primary keys of the specified table
+     * from its XML node.
+     * Also understands the (slightly different) nodes written by
+     * <code>XmlTableFormatter</code> so previously exported models can be reloaded.
+     *
+     * @param table
+     * @param tableNode
+     */
+    static void restore(Table table, Element tableNode) {
+        boolean primaryKeyIndexesKnown = false;
+
+        NodeList children = tableNode.getChildNodes();
+        for (int i = 0; i < children.getLength(); ++i) {
+            if (!(children.item(i) instanceof Element))
+                continue;
+
+            Element child = (Element)children.item(i);
+            String tag = child.getTagName();
+
+            if (tag.equals("column")) {
+                String defaultValue = child.hasAttribute("defaultValue") ? child.getAttribute("defaultValue") : null;
+                table.addColumn(new TableColumn(table,
+                                child.getAttribute("name"),
+                                parseId(child.getAttribute("id")),
+                                child.getAttribute("type"),
+                                Integer.parseInt(child.getAttribute("size")),
+                                Integer.parseInt(child.getAttribute("digits")),
+                                Boolean.valueOf(child.getAttribute("nullable")).booleanValue(),
+                                Boolean.valueOf(child.getAttribute("autoUpdated")).booleanValue(),
+                                defaultValue,
+                                child.getAttribute("remarks")));
+            } else if (tag.equals("index")) {
+                String indexName = child.getAttribute("name");
+                boolean isUnique = Boolean.valueOf(child.getAttribute("unique")).booleanValue();
+                NodeList columns = child.getElementsByTagName("column");
+                for (int j = 0; j < columns.getLength(); ++j) {
+                    Element column = (Element)columns.item(j);
+                    boolean ascending = Boolean.valueOf(column.getAttribute("ascending")).booleanValue();
+                    table.addIndex(indexName, isUnique, column.getAttribute("name"), ascending ? "A" : "D");
+                }
+                if (child.hasAttribute("primaryKey"))
+                    primaryKeyIndexesKnown = true;
+                if (Boolean.valueOf(child.getAttribute("primaryKey")).booleanValue())
+                    table.getIndex(indexName).setIsPrimaryKey(true);
+            } else if (tag.equals("primaryKey")) {
+                table.setPrimaryColumn(table.getColumn(child.getAttribute("column")));
+            }
+        }
+
+        // older exports didn't say which index backs the primary key
+        if (!primaryKeyIndexesKnown && !table.getPrimaryColumns().isEmpty()) {
+            for (TableIndex index : table.getIndexes()) {
+                if (index.isUnique() && index.getColumns().equals(table.getPrimaryColumns()))
+                    index.setIsPrimaryKey(true);
+            }
+        }
+    }
+
+    /**
+     * Column IDs are usually numeric, but some databases use other types
+     * (or don't have them at all).
+     *
+     * @param id
+     * @return
+     */
+    private static Object parseId(String id) {
+        if (id.length() == 0 || id.equals("null"))
+            return null;
+
+        try {
+            return Integer.valueOf(id);
+        } catch (NumberFormatException notNumeric) {
+            return id;
+        }
+    }
+
+    /**
+     * Write a snapshot of the specified tables.
+     * Tables without a change token, or whose details can't be faithfully
+     * represented, are left out so they'll be queried the next time around.
+     *
+     * @param file
+     * @param tables
+     * @param changeTokens change tokens keyed by table name
+     * @throws IOException
+     */
+    public static void write(File file, Collection<Table> tables, Map<String, String> changeTokens) throws IOException {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException exc) {
+            IOException failure = new IOException("Invalid XML parser configuration: " + exc);
+            failure.initCause(exc);
+            throw failure;
+        }
+
+        Element tablesNode = document.createElement("tables");
+        document.appendChild(tablesNode);
+
+        for (Table table : tables) {
+            String changeToken = changeTokens.get(table.getName());
+            if (changeToken != null && isSnapshotable(table))
+                appendTable(tablesNode, table, changeToken);
+        }
+
+        LineWriter out = new LineWriter(file, Config.DOT_CHARSET);
+        try {
+            DOMUtil.printDOM(document, out);
+        } catch (TransformerException exc) {
+            IOException failure = new IOException("Failed to write " + file + ": " + exc);
+            failure.initCause(exc);
+            throw failure;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Append the details of the table that {@link #restore(Table)} needs to the XML node
+     *
+     * @param tablesNode
+     * @param table
+     * @param changeToken
+     */
+    private static void appendTable(Element tablesNode, Table table, String changeToken) {
+        Document document = tablesNode.getOwnerDocument();
+        Element tableNode = document.createElement("table");
+        tablesNode.appendChild(tableNode);
+        DOMUtil.appendAttribute(tableNode, "name", table.getName());
+        DOMUtil.appendAttribute(tableNode, "changeToken", changeToken);
+
+        for (TableColumn column : table.getColumns()) {
+            Element columnNode = document.createElement("column");
+            tableNode.appendChild(columnNode);
+            DOMUtil.appendAttribute(columnNode, "id", String.valueOf(column.getId()));
+            DOMUtil.appendAttribute(columnNode, "name", column.getName());
+            DOMUtil.appendAttribute(columnNode, "type", column.getType());
+            DOMUtil.appendAttribute(columnNode, "size", String.valueOf(column.getLength()));
+            DOMUtil.appendAttribute(columnNode, "digits", String.valueOf(column.getDecimalDigits()));
+            DOMUtil.appendAttribute(columnNode, "nullable", String.valueOf(column.isNullable()));
+            DOMUtil.appendAttribute(columnNode, "autoUpdated", String.valueOf(column.isAutoUpdated()));
+            if (column.getDefaultValue() != null)
+                DOMUtil.appendAttribute(columnNode, "defaultValue", column.getDefaultValue().toString());
+            DOMUtil.appendAttribute(columnNode, "remarks", column.getComments() == null ? "" : column.getComments());
+        }
+
+        for (TableColumn primaryKeyColumn : table.getPrimaryColumns()) {
+            Element primaryKeyNode = document.createElement("primaryKey");
+            tableNode.appendChild(primaryKeyNode);
+            DOMUtil.appendAttribute(primaryKeyNode, "column", primaryKeyColumn.getName());
+        }
+
+        for (TableIndex index : table.getIndexes()) {
+            Element indexNode = document.createElement("index");
+            tableNode.appendChild(indexNode);
+            DOMUtil.appendAttribute(indexNode, "name", index.getName());
+            DOMUtil.appendAttribute(indexNode, "unique", String.valueOf(index.isUnique()));
+            DOMUtil.appendAttribute(indexNode, "primaryKey", String.valueOf(index.isPrimaryKey()));
+
+            for (TableColumn column : index.getColumns()) {
+                Element columnNode = document.createElement("column");
+                indexNode.appendChild(columnNode);
+                DOMUtil.appendAttribute(columnNode, "name", column.getName());
+                DOMUtil.appendAttribute(columnNode, "ascending", String.valueOf(index.isAscending(column)));
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the table's details can be recorded in
+     * (and restored from) a snapshot.
+     * Things like binary default values and columns without IDs can't be.
+     *
+     * @param table
+     * @return
+     */
+    private static boolean isSnapshotable(Table table) {
+        if (!isValidXml(table.getName()))
+            return false;
+
+        for (TableColumn column : table.getColumns()) {
+            if (!(column.getId() instanceof Integer))
+                return false;
+            if (!isValidXml(column.getName()) || !isValidXml(column.getType()) || !isValidXml(column.getComments()))
+                return false;
+            if (column.getDefaultValue() != null && !isValidXml(column.getDefaultValue().toString()))
+                return false;
+        }
+
+        for (TableIndex index : table.getIndexes()) {
+            if (!isValidXml(index.getName()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the string only contains chars that are valid for XML
+     * per http://www.w3.org/TR/REC-xml/#charsets
+     *
+     * @param str
+     * @return
+     */
+    private static boolean isValidXml(String str) {
+        return str == null || validXmlChars.matcher(str).matches();
+    }
+}
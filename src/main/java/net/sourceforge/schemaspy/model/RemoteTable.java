@@ -20,10 +20,14 @@ package net.sourceforge.schemaspy.model;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.sourceforge.schemaspy.Config;
+import net.sourceforge.schemaspy.model.TableRegistry.ImportedKey;
+import net.sourceforge.schemaspy.model.TableRegistry.RegisteredTable;
 
 /**
  * A table that's outside of the default schema but is referenced
@@ -33,6 +37,7 @@ import net.sourceforge.schemaspy.Config;
  */
 public class RemoteTable extends Table {
     private final String baseContainer;
+    private List<ImportedKey> importedKeys;  // null until they've been successfully resolved
     private final static Logger logger = Logger.getLogger(RemoteTable.class.getName());
     private final static boolean finerEnabled = logger.isLoggable(Level.FINER);
 
@@ -49,6 +54,25 @@ public class RemoteTable extends Table {
         this.baseContainer = baseContainer;
     }
 
+    /**
+     * Create a remote table from the metadata that was already loaded
+     * while analyzing the schema that it lives in.
+     *
+     * @param db
+     * @param catalog
+     * @param schema
+     * @param name
+     * @param baseContainer
+     * @param registered
+     * @throws SQLException
+     */
+    RemoteTable(Database db, String catalog, String schema, String name, String baseContainer, RegisteredTable registered) throws SQLException {
+        super(db, catalog, schema, name, null, true);
+        this.baseContainer = baseContainer;
+        registered.restore(this);
+        importedKeys = registered.getImportedKeys();
+    }
+
     /**
      * Connect to the PK's referenced by this table that live in the original schema
      * @param tables
@@ -63,19 +87,22 @@ public class RemoteTable extends Table {
         ResultSet rs = null;
 
         try {
-            // get remote table's FKs that reference PKs in our schema
-            rs = db.getMetaData().getImportedKeys(getCatalog(), getSchema(), getName());
+            if (importedKeys == null) {
+                List<ImportedKey> fetched = new ArrayList<ImportedKey>();
+                rs = db.getMetaData().getImportedKeys(getCatalog(), getSchema(), getName());
 
-            while (rs.next()) {
-                String otherSchema = rs.getString("PKTABLE_SCHEM");
-                String otherCatalog = rs.getString("PKTABLE_CAT");
+                while (rs.next())
+                    fetched.add(new ImportedKey(rs));
+                importedKeys = fetched;
+            }
 
-                // if it points back to our schema then use it
-                if (baseContainer.equals(otherSchema) || baseContainer.equals(otherCatalog)) {
-                    addForeignKey(rs.getString("FK_NAME"), rs.getString("FKCOLUMN_NAME"),
-                            otherCatalog, otherSchema,
-                            rs.getString("PKTABLE_NAME"), rs.getString("PKCOLUMN_NAME"),
-                            rs.getInt("UPDATE_RULE"), rs.getInt("DELETE_RULE"),
+            // use the remote table's FKs that reference PKs in our schema
+            for (ImportedKey key : importedKeys) {
+                if (baseContainer.equals(key.pkSchema) || baseContainer.equals(key.pkCatalog)) {
+                    addForeignKey(key.fkName, key.fkColumnName,
+                            key.pkCatalog, key.pkSchema,
+                            key.pkTableName, key.pkColumnName,
+                            key.updateRule, key.deleteRule,
                             tables);
                 }
             }
@@ -94,6 +121,16 @@ public class RemoteTable extends Table {
         }
     }
 
+    /**
+     * Returns all of this table's imported keys (not just the ones that
+     * reference our schema), <code>null</code> if they couldn't be resolved.
+     *
+     * @return
+     */
+    List<ImportedKey> getImportedKeys() {
+        return importedKeys;
+    }
+
     @Override
     public boolean isRemote() {
         return true;
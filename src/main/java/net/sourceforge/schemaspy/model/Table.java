@@ -62,6 +62,7 @@ public class Table implements Comparable<Table> {
     private       Object id;
     private final Map<String, String> checkConstraints = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
     private Long numRows;
+    private boolean numRowsEstimated;
     protected final Database db;
     private       String comments;
     private int maxChildren;
@@ -81,6 +82,24 @@ public class Table implements Comparable<Table> {
      * @throws SQLException
      */
     public Table(Database db, String catalog, String schema, String name, String comments) throws SQLException {
+        this(db, catalog, schema, name, comments, false);
+    }
+
+    /**
+     * Construct a table, optionally deferring the retrieval of its metadata.
+     * If deferred then the {@link Database} is responsible for populating the
+     * columns (typically harvested in bulk for the entire schema) and then
+     * calling {@link #initDetails()}.
+     *
+     * @param db
+     * @param catalog
+     * @param schema
+     * @param name
+     * @param comments
+     * @param deferMetadata
+     * @throws SQLException
+     */
+    protected Table(Database db, String catalog, String schema, String name, String comments, boolean deferMetadata) throws SQLException {
         this.db = db;
         this.catalog = catalog;
         this.schema = schema;
@@ -90,7 +109,21 @@ public class Table implements Comparable<Table> {
         if (fineEnabled)
             logger.fine("Creating " + getClass().getSimpleName() + " " + fullName);
         setComments(comments);
-        initColumns();
+        // offline databases have nothing to query, they populate us themselves
+        if (!deferMetadata && !db.isOffline()) {
+            initColumns();
+            initDetails();
+        }
+    }
+
+    /**
+     * Initialize the details that require our columns to have already
+     * been established.
+     *
+     * @throws SQLException
+     */
+    void initDetails() throws SQLException {
+        initColumnAutoUpdate(false);
         initIndexes();
         initPrimaryKeys();
     }
@@ -205,11 +238,10 @@ public class Table implements Comparable<Table> {
         if (childColumn != null) {
             foreignKey.addChildColumn(childColumn);
 
-            Config config = Config.getInstance();
             Table parentTable = tables.get(pkTableName);
 
             String parentContainer = pkSchema != null ? pkSchema : pkCatalog != null ? pkCatalog : db.getName();
-            String baseContainer = config.getSchema() != null ? config.getSchema() : config.getCatalog() != null ? config.getCatalog() : db.getName();
+            String baseContainer = db.getSchema() != null ? db.getSchema() : db.getCatalog() != null ? db.getCatalog() : db.getName();
 
             // if named table doesn't exist in this schema
             // or exists here but really referencing same named table in another schema
@@ -245,6 +277,10 @@ public class Table implements Comparable<Table> {
      * @throws SQLException
      */
     private void initPrimaryKeys() throws SQLException {
+        // Database might have already harvested them along with the rest of the schema's
+        if (db.initPrimaryKeysFromBulk(this))
+            return;
+
         ResultSet rs = null;
 
         try {
@@ -270,7 +306,14 @@ public class Table implements Comparable<Table> {
      * @throws SQLException
      */
     private void setPrimaryColumn(ResultSet rs) throws SQLException {
-        String pkName = rs.getString("PK_NAME");
+        setPrimaryColumn(rs.getString("PK_NAME"), rs.getString("COLUMN_NAME"));
+    }
+
+    /**
+     * @param pkName
+     * @param columnName
+     */
+    void setPrimaryColumn(String pkName, String columnName) {
         if (pkName == null)
             return;
 
@@ -279,8 +322,6 @@ public class Table implements Comparable<Table> {
             index.setIsPrimaryKey(true);
         }
 
-        String columnName = rs.getString("COLUMN_NAME");
-
         setPrimaryColumn(getColumn(columnName));
     }
 
@@ -295,34 +336,44 @@ public class Table implements Comparable<Table> {
      * @throws SQLException
      */
     private void initColumns() throws SQLException {
+        Object lock = db.getMetaDataLock();
+        if (lock == null) {
+            initColumnsImpl();
+        } else {
+            synchronized (lock) {
+                initColumnsImpl();
+            }
+        }
+    }
+
+    /**
+     * @throws SQLException
+     */
+    private void initColumnsImpl() throws SQLException {
         ResultSet rs = null;
 
-        synchronized (Table.class) {
-            try {
-                rs = db.getMetaData().getColumns(getCatalog(), getSchema(), getName(), "%");
+        try {
+            rs = db.getMetaData().getColumns(getCatalog(), getSchema(), getName(), "%");
 
-                while (rs.next())
-                    addColumn(rs);
-            } catch (SQLException exc) {
-                if (!isLogical()) {
-                    class ColumnInitializationFailure extends SQLException {
-                        private static final long serialVersionUID = 1L;
+            while (rs.next())
+                addColumn(rs);
+        } catch (SQLException exc) {
+            if (!isLogical()) {
+                class ColumnInitializationFailure extends SQLException {
+                    private static final long serialVersionUID = 1L;
 
-                        public ColumnInitializationFailure(SQLException failure) {
-                            super("Failed to collect column details for " + (isView() ? "view" : "table") + " '" + getName() + "' in schema '" + getContainer() + "'");
-                            initCause(failure);
-                        }
+                    public ColumnInitializationFailure(SQLException failure) {
+                        super("Failed to collect column details for " + (isView() ? "view" : "table") + " '" + getName() + "' in schema '" + getContainer() + "'");
+                        initCause(failure);
                     }
-
-                    throw new ColumnInitializationFailure(exc);
                 }
-            } finally {
-                if (rs != null)
-                    rs.close();
+
+                throw new ColumnInitializationFailure(exc);
             }
+        } finally {
+            if (rs != null)
+                rs.close();
         }
-
-        initColumnAutoUpdate(false);
     }
 
     /**
@@ -400,6 +451,17 @@ public class Table implements Comparable<Table> {
         }
     }
 
+    /**
+     * Add a column that was created from previously harvested details
+     * (e.g. from a {@link MetadataSnapshot}).
+     *
+     * @param column
+     */
+    void addColumn(TableColumn column) {
+        if (getColumn(column.getName()) == null)
+            columns.put(column.getName(), column);
+    }
+
     /**
      * Add a column that's defined in xml metadata.
      * Assumes that a column named colMeta.getName() doesn't already exist in <code>columns</code>.
@@ -423,9 +485,12 @@ public class Table implements Comparable<Table> {
         if (isView() || isRemote())
             return;
 
-        // first try to initialize using the index query spec'd in the .properties
+        // first try to use the indexes that Database harvested for the whole schema,
+        // then try to initialize using the index query spec'd in the .properties
         // do this first because some DB's (e.g. Oracle) do 'bad' things with getIndexInfo()
         // (they try to do a DDL analyze command that has some bad side-effects)
+        if (db.initIndexesFromBulk(this))
+            return;
         if (initIndexes(Config.getInstance().getDbProperties().getProperty("selectIndexesSql")))
             return;
 
@@ -507,18 +572,31 @@ public class Table implements Comparable<Table> {
     private void addIndex(ResultSet rs) throws SQLException {
         String indexName = rs.getString("INDEX_NAME");
 
+        if (indexName == null)
+            return;
+
+        addIndex(indexName, !rs.getBoolean("NON_UNIQUE"), rs.getString("COLUMN_NAME"), rs.getString("ASC_OR_DESC"));
+    }
+
+    /**
+     * @param indexName
+     * @param isUnique
+     * @param columnName
+     * @param ascOrDesc
+     */
+    void addIndex(String indexName, boolean isUnique, String columnName, String ascOrDesc) {
         if (indexName == null)
             return;
 
         TableIndex index = getIndex(indexName);
 
         if (index == null) {
-            index = new TableIndex(rs);
+            index = new TableIndex(indexName, isUnique);
 
             indexes.put(index.getName(), index);
         }
 
-        index.addColumn(getColumn(rs.getString("COLUMN_NAME")), rs.getString("ASC_OR_DESC"));
+        index.addColumn(getColumn(columnName), ascOrDesc);
     }
 
     /**
@@ -989,6 +1067,38 @@ public class Table implements Comparable<Table> {
      */
     public void setNumRows(long numRows) {
         this.numRows = numRows;
+        numRowsEstimated = false;
+    }
+
+    /**
+     * Set the number of rows in this table to the database's estimate
+     * rather than to an exact count
+     *
+     * @param numRows
+     */
+    public void setEstimatedNumRows(long numRows) {
+        this.numRows = numRows;
+        numRowsEstimated = true;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #getNumRows()} is only the database's
+     * estimate of the number of rows in this table
+     *
+     * @return
+     */
+    public boolean isNumRowsEstimated() {
+        return numRowsEstimated;
+    }
+
+    /**
+     * Returns <code>true</code> if the number of rows has already been
+     * determined (or explicitly set)
+     *
+     * @return
+     */
+    boolean isNumRowsKnown() {
+        return numRows != null;
     }
 
     /**
@@ -1005,6 +1115,7 @@ public class Table implements Comparable<Table> {
             return -1;
 
         SQLException originalFailure = null;
+        long started = System.currentTimeMillis();
 
         String sql = Config.getInstance().getDbProperties().getProperty("selectRowCountSql");
         if (sql != null) {
@@ -1013,6 +1124,7 @@ public class Table implements Comparable<Table> {
 
             try {
                 stmt = db.prepareStatement(sql, getName());
+                setRowCountTimeout(stmt);
                 rs = stmt.executeQuery();
 
                 while (rs.next()) {
@@ -1037,9 +1149,18 @@ public class Table implements Comparable<Table> {
 
         // if we get here then we either didn't have custom SQL or it didn't work
         try {
+            // don't make things worse by trying the other variations if we've run out of time
+            if (originalFailure != null && isRowCountTimedOut(started))
+                throw originalFailure;
+
             // '*' should work best for the majority of cases
             return fetchNumRows("count(*)", false);
         } catch (SQLException try2Exception) {
+            if (isRowCountTimedOut(started)) {
+                logger.warning("Timed out counting the number of rows in table " + getName() + ", using '-1'");
+                return -1;
+            }
+
             try {
                 // except nested tables...try using '1' instead
                 return fetchNumRows("count(1)", false);
@@ -1060,6 +1181,7 @@ public class Table implements Comparable<Table> {
     protected long fetchNumRows(String clause, boolean forceQuotes) throws SQLException {
         PreparedStatement stmt = null;
         ResultSet rs = null;
+        long started = System.currentTimeMillis();
         StringBuilder sql = new StringBuilder("select ");
         sql.append(clause);
         sql.append(" from ");
@@ -1081,13 +1203,14 @@ public class Table implements Comparable<Table> {
             if (finerEnabled)
                 logger.finer(sql.toString());
             stmt = db.getConnection().prepareStatement(sql.toString());
+            setRowCountTimeout(stmt);
             rs = stmt.executeQuery();
             while (rs.next()) {
                 return rs.getLong(1);
             }
             return -1;
         } catch (SQLException exc) {
-            if (forceQuotes) // we tried with and w/o quotes...fail this attempt
+            if (forceQuotes || isRowCountTimedOut(started)) // we tried with and w/o quotes (or ran out of time)...fail this attempt
                 throw exc;
 
             return fetchNumRows(clause, true);
@@ -1099,6 +1222,31 @@ public class Table implements Comparable<Table> {
         }
     }
 
+    /**
+     * Limit how long the specified row counting statement can run
+     * (see {@link Config#getRowCountTimeout()})
+     *
+     * @param stmt
+     * @throws SQLException
+     */
+    private void setRowCountTimeout(PreparedStatement stmt) throws SQLException {
+        int timeout = Config.getInstance().getRowCountTimeout();
+        if (timeout > 0)
+            stmt.setQueryTimeout(timeout);
+    }
+
+    /**
+     * Returns <code>true</code> if an attempt to count rows that began at
+     * <code>started</code> failed because it ran out of time
+     *
+     * @param started
+     * @return
+     */
+    private boolean isRowCountTimedOut(long started) {
+        int timeout = Config.getInstance().getRowCountTimeout();
+        return timeout > 0 && System.currentTimeMillis() - started >= timeout * 1000L;
+    }
+
     /**
      * Update the table with the specified XML-derived metadata
      *
@@ -94,6 +94,54 @@ public class TableColumn {
         setComments(rs.getString("REMARKS"));
         id = new Integer(rs.getInt("ORDINAL_POSITION") - 1);
 
+        initExclusions();
+    }
+
+    /**
+     * Create a column associated with a table from details that were previously
+     * harvested from the database (e.g. by a {@link MetadataSnapshot}).
+     *
+     * @param table
+     * @param name
+     * @param id
+     * @param type
+     * @param length
+     * @param decimalDigits
+     * @param isNullable
+     * @param isAutoUpdated
+     * @param defaultValue
+     * @param comments
+     */
+    TableColumn(Table table, String name, Object id, String type, int length, int decimalDigits,
+                boolean isNullable, boolean isAutoUpdated, Object defaultValue, String comments) {
+        this.table = table;
+        this.name = name == null ? null : name.intern();
+        this.id = id;
+        this.type = type == null ? "unknown" : type.intern();
+        this.length = length;
+        this.decimalDigits = decimalDigits;
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(length);
+        if (decimalDigits > 0) {
+            buf.append(',');
+            buf.append(decimalDigits);
+        }
+        detailedSize = buf.toString();
+
+        this.isNullable = isNullable;
+        this.isAutoUpdated = isAutoUpdated;
+        this.defaultValue = defaultValue;
+        setComments(comments);
+
+        initExclusions();
+    }
+
+    /**
+     * Determine whether this column is excluded from relationship diagrams
+     * based on the <code>-X</code> and <code>-x</code> expressions
+     */
+    private void initExclusions() {
         Pattern excludeIndirectColumns = Config.getInstance().getIndirectColumnExclusions();
         Pattern excludeColumns = Config.getInstance().getColumnExclusions();
 
@@ -37,8 +37,16 @@ public class TableIndex implements Comparable<TableIndex> {
      * @throws java.sql.SQLException
      */
     public TableIndex(ResultSet rs) throws SQLException {
-        name = rs.getString("INDEX_NAME");
-        isUnique = !rs.getBoolean("NON_UNIQUE");
+        this(rs.getString("INDEX_NAME"), !rs.getBoolean("NON_UNIQUE"));
+    }
+
+    /**
+     * @param name
+     * @param isUnique
+     */
+    public TableIndex(String name, boolean isUnique) {
+        this.name = name;
+        this.isUnique = isUnique;
     }
 
     public void setId(Object id) {
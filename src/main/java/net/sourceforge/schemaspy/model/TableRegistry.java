@@ -0,0 +1,229 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metadata of the tables that have been loaded while analyzing several schemas
+ * of the same database, shared between those schemas so that a table that
+ * references (or is referenced by) another schema's table is resolved from
+ * what that schema already loaded instead of being queried again.<p/>
+ *
+ * {@link Table}s themselves can't be shared since their relationships are
+ * specific to the {@link Database} that they're part of, so what's shared is
+ * an immutable copy of their columns, indexes, primary key and imported keys.
+ * Safe to use from several threads at the same time.
+ */
+public class TableRegistry {
+    private final ConcurrentMap<String, RegisteredTable> tables = new ConcurrentHashMap<String, RegisteredTable>(); // key: Table.getFullName()
+    private final Logger logger = Logger.getLogger(getClass().getName());
+    private final boolean fineEnabled = logger.isLoggable(Level.FINE);
+
+    /**
+     * Register a table that was loaded as part of its own schema.
+     * Its imported keys are the (real) foreign keys that it has already connected.
+     *
+     * @param table
+     */
+    void register(Table table) {
+        List<ImportedKey> importedKeys = new ArrayList<ImportedKey>();
+        for (ForeignKeyConstraint foreignKey : table.getForeignKeys()) {
+            if (!foreignKey.isReal())
+                continue;
+
+            List<TableColumn> childColumns = foreignKey.getChildColumns();
+            List<TableColumn> parentColumns = foreignKey.getParentColumns();
+            if (childColumns.size() != parentColumns.size())
+                continue;   // didn't resolve all of it, so don't pretend we know
+
+            Table parent = foreignKey.getParentTable();
+            for (int i = 0; i < childColumns.size(); ++i) {
+                importedKeys.add(new ImportedKey(foreignKey.getName(), childColumns.get(i).getName(),
+                                        parent.getCatalog(), parent.getSchema(), parent.getName(),
+                                        parentColumns.get(i).getName(),
+                                        foreignKey.getUpdateRule(), foreignKey.getDeleteRule()));
+            }
+        }
+
+        tables.put(table.getFullName(), new RegisteredTable(table, importedKeys));
+    }
+
+    /**
+     * Register a remote table that had to be queried because it hadn't been
+     * registered yet. Doesn't replace anything that's already been registered.
+     *
+     * @param table
+     * @param importedKeys all of the table's imported keys, not just the ones
+     *          that reference the schema that queried it
+     */
+    void register(RemoteTable table, List<ImportedKey> importedKeys) {
+        tables.putIfAbsent(table.getFullName(), new RegisteredTable(table, importedKeys));
+    }
+
+    /**
+     * Returns the metadata of the specified table,
+     * <code>null</code> if it hasn't been registered (yet).
+     *
+     * @param fullName see {@link Table#getFullName(String, String, String, String)}
+     * @return
+     */
+    RegisteredTable get(String fullName) {
+        RegisteredTable registered = tables.get(fullName);
+        if (registered != null && fineEnabled)
+            logger.fine("Resolved " + fullName + " from previously loaded metadata");
+        return registered;
+    }
+
+    /**
+     * A foreign key column of a table along with the primary key column
+     * that it references, as returned by
+     * {@link java.sql.DatabaseMetaData#getImportedKeys(String, String, String)}
+     */
+    static final class ImportedKey {
+        final String fkName;
+        final String fkColumnName;
+        final String pkCatalog;
+        final String pkSchema;
+        final String pkTableName;
+        final String pkColumnName;
+        final int updateRule;
+        final int deleteRule;
+
+        ImportedKey(String fkName, String fkColumnName, String pkCatalog, String pkSchema,
+                    String pkTableName, String pkColumnName, int updateRule, int deleteRule) {
+            this.fkName = fkName;
+            this.fkColumnName = fkColumnName;
+            this.pkCatalog = pkCatalog;
+            this.pkSchema = pkSchema;
+            this.pkTableName = pkTableName;
+            this.pkColumnName = pkColumnName;
+            this.updateRule = updateRule;
+            this.deleteRule = deleteRule;
+        }
+
+        ImportedKey(ResultSet rs) throws SQLException {
+            this(rs.getString("FK_NAME"), rs.getString("FKCOLUMN_NAME"),
+                    rs.getString("PKTABLE_CAT"), rs.getString("PKTABLE_SCHEM"),
+                    rs.getString("PKTABLE_NAME"), rs.getString("PKCOLUMN_NAME"),
+                    rs.getInt("UPDATE_RULE"), rs.getInt("DELETE_RULE"));
+        }
+    }
+
+    /**
+     * Immutable copy of the metadata of a registered table
+     */
+    static final class RegisteredTable {
+        private final List<ColumnDetails> columns = new ArrayList<ColumnDetails>();
+        private final List<IndexDetails> indexes = new ArrayList<IndexDetails>();
+        private final List<String> primaryColumns = new ArrayList<String>();
+        private final List<ImportedKey> importedKeys;
+
+        private RegisteredTable(Table table, List<ImportedKey> importedKeys) {
+            for (TableColumn column : table.getColumns())
+                columns.add(new ColumnDetails(column));
+
+            for (TableIndex index : table.getIndexes())
+                indexes.add(new IndexDetails(index));
+
+            for (TableColumn primaryColumn : table.getPrimaryColumns())
+                primaryColumns.add(primaryColumn.getName());
+
+            this.importedKeys = Collections.unmodifiableList(new ArrayList<ImportedKey>(importedKeys));
+        }
+
+        /**
+         * Populate the columns, indexes and primary key of the specified
+         * (deferred) table the same way that {@link MetadataSnapshot} does.
+         *
+         * @param table
+         */
+        void restore(Table table) {
+            for (ColumnDetails column : columns) {
+                table.addColumn(new TableColumn(table, column.name, column.id, column.type,
+                                        column.length, column.decimalDigits,
+                                        column.isNullable, column.isAutoUpdated,
+                                        column.defaultValue, column.comments));
+            }
+
+            for (IndexDetails index : indexes) {
+                for (int i = 0; i < index.columnNames.size(); ++i)
+                    table.addIndex(index.name, index.isUnique, index.columnNames.get(i), index.ascending.get(i).booleanValue() ? "A" : "D");
+                if (index.isPrimaryKey)
+                    table.getIndex(index.name).setIsPrimaryKey(true);
+            }
+
+            for (String primaryColumn : primaryColumns)
+                table.setPrimaryColumn(table.getColumn(primaryColumn));
+        }
+
+        List<ImportedKey> getImportedKeys() {
+            return importedKeys;
+        }
+    }
+
+    private static final class ColumnDetails {
+        private final String name;
+        private final Object id;
+        private final String type;
+        private final int length;
+        private final int decimalDigits;
+        private final boolean isNullable;
+        private final boolean isAutoUpdated;
+        private final Object defaultValue;
+        private final String comments;
+
+        private ColumnDetails(TableColumn column) {
+            name = column.getName();
+            id = column.getId();
+            type = column.getType();
+            length = column.getLength();
+            decimalDigits = column.getDecimalDigits();
+            isNullable = column.isNullable();
+            isAutoUpdated = column.isAutoUpdated();
+            defaultValue = column.getDefaultValue();
+            comments = column.getComments();
+        }
+    }
+
+    private static final class IndexDetails {
+        private final String name;
+        private final boolean isUnique;
+        private final boolean isPrimaryKey;
+        private final List<String> columnNames = new ArrayList<String>();
+        private final List<Boolean> ascending = new ArrayList<Boolean>();
+
+        private IndexDetails(TableIndex index) {
+            name = index.getName();
+            isUnique = index.isUnique();
+            isPrimaryKey = index.isPrimaryKey();
+            for (TableColumn column : index.getColumns()) {
+                columnNames.add(column.getName());
+                ascending.add(Boolean.valueOf(index.isAscending(column)));
+            }
+        }
+    }
+}
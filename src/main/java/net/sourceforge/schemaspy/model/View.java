@@ -43,7 +43,7 @@ public class View extends Table {
                 String name, String remarks, String viewSql) throws SQLException {
         super(db, catalog, schema, name, remarks);
 
-        if (viewSql == null)
+        if (viewSql == null && !db.isOffline())
             viewSql = fetchViewSql();
 
         if (viewSql != null && viewSql.trim().length() > 0)
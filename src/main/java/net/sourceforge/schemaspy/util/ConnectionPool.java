@@ -0,0 +1,166 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A small pool of database connections that lets several threads
+ * query metadata without contending for a single connection.<p/>
+ *
+ * The pool lazily opens up to <code>maxConnections</code> connections with
+ * the supplied {@link ConnectionFactory}.
+ * It never hands out its owner's primary connection, so a thread that
+ * borrowed a connection is the only one using it.
+ */
+public class ConnectionPool {
+    private final int maxConnections;
+    private final ConnectionFactory factory;
+    private final LinkedList<Connection> available = new LinkedList<Connection>();
+    private final List<Connection> opened = new ArrayList<Connection>();
+    private int opening;    // connections that are being opened outside of our lock
+    private boolean factoryFailed;
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    /**
+     * Creates new connections for the pool
+     */
+    public interface ConnectionFactory {
+        Connection connect() throws SQLException;
+    }
+
+    /**
+     * @param maxConnections maximum number of connections that the pool will open
+     * @param factory creates the connections
+     */
+    public ConnectionPool(int maxConnections, ConnectionFactory factory) {
+        this.maxConnections = Math.max(maxConnections, 1);
+        this.factory = factory;
+    }
+
+    /**
+     * Borrow a connection from the pool, opening a new one if none are
+     * available and we haven't reached our limit, otherwise waiting for one
+     * to be {@link #release(Connection) released}.<p/>
+     *
+     * Connections are opened without holding the pool's lock so opening one
+     * doesn't hold up anyone else that's borrowing or releasing.
+     *
+     * @return the borrowed connection, or <code>null</code> if the pool couldn't
+     *          open one and has none to wait for, in which case the caller has to
+     *          make do with its own connection
+     * @throws SQLException
+     */
+    public Connection borrow() throws SQLException {
+        synchronized (available) {
+            while (available.isEmpty()) {
+                if (opened.size() + opening < maxConnections && !factoryFailed) {
+                    ++opening;
+                    break;
+                }
+
+                if (opened.isEmpty() && opening == 0)
+                    return null;
+
+                try {
+                    available.wait();
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection");
+                }
+            }
+
+            if (!available.isEmpty())
+                return available.removeFirst();
+        }
+
+        Connection connection = open();
+
+        synchronized (available) {
+            --opening;
+            if (connection != null)
+                opened.add(connection);
+            else
+                factoryFailed = true;
+
+            // anyone waiting to open one has to reconsider if that failed
+            available.notifyAll();
+        }
+
+        return connection;
+    }
+
+    /**
+     * Return a previously {@link #borrow() borrowed} connection to the pool
+     *
+     * @param connection
+     */
+    public void release(Connection connection) {
+        if (connection != null) {
+            synchronized (available) {
+                available.addLast(connection);
+                available.notify();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections that this pool will hand out
+     *
+     * @return
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Close all of the connections that the pool opened.
+     */
+    public void close() {
+        synchronized (available) {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException ignore) {}
+            }
+
+            opened.clear();
+            available.clear();
+        }
+    }
+
+    /**
+     * Open a new connection.  If that fails (e.g. the database limits the
+     * number of concurrent sessions) then we make do with what we've got.
+     *
+     * @return the new connection or <code>null</code> if it couldn't be opened
+     */
+    private Connection open() {
+        try {
+            return factory.connect();
+        } catch (Exception exc) {
+            logger.warning("Failed to open additional database connection, continuing with those already open: " + exc);
+            return null;
+        }
+    }
+}
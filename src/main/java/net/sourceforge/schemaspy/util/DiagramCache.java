@@ -0,0 +1,197 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the diagrams (and image maps) that dot rendered in previous runs so
+ * they can be reused instead of being rendered again.<p/>
+ *
+ * Diagrams are keyed by a digest of their .dot file's contents along with
+ * the details of the dot that rendered them (version, format and renderer),
+ * so a diagram is only reused if dot would have produced the exact same thing.
+ */
+public class DiagramCache {
+    private final File dir;
+    private final String diagramsDir;   // where the diagrams that this caches get written
+    private final Set<String> used = Collections.synchronizedSet(new HashSet<String>());
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    /**
+     * @param dir directory to keep the cached diagrams in
+     */
+    public DiagramCache(File dir) {
+        this.dir = dir;
+        diagramsDir = dir.getAbsoluteFile().getParent() + File.separator;
+        dir.mkdirs();
+    }
+
+    /**
+     * Returns <code>true</code> if the specified diagram is written alongside
+     * this cache (under the directory that holds its directory)
+     */
+    public boolean isFor(File diagramFile) {
+        return diagramFile.getAbsolutePath().startsWith(diagramsDir);
+    }
+
+    /**
+     * Copy the cached version of the diagram described by <code>dotFile</code>
+     * to <code>diagramFile</code>
+     *
+     * @param dotFile
+     * @param diagramFile
+     * @param renderedBy the details of the dot that would render the diagram
+     * @return the diagram's image map or <code>null</code> if it isn't cached
+     */
+    public String get(File dotFile, File diagramFile, String renderedBy) {
+        try {
+            String key = getKey(dotFile, renderedBy);
+            File cachedDiagram = new File(dir, key + ".diagram");
+            File cachedMap = new File(dir, key + ".map");
+            if (!cachedDiagram.exists() || !cachedMap.exists())
+                return null;
+
+            copy(cachedDiagram, diagramFile);
+            used.add(key);
+            return new String(read(cachedMap), "UTF-8");
+        } catch (IOException exc) {
+            logger.fine("Failed to reuse cached version of " + diagramFile + ": " + exc);
+            diagramFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Cache the specified diagram that was just rendered
+     *
+     * @param dotFile
+     * @param diagramFile
+     * @param renderedBy
+     * @param map
+     */
+    public void put(File dotFile, File diagramFile, String renderedBy, String map) {
+        String key = null;
+
+        try {
+            key = getKey(dotFile, renderedBy);
+
+            // write the map last since that's what indicates that the entry is complete
+            copy(diagramFile, new File(dir, key + ".diagram"));
+            OutputStream out = new FileOutputStream(new File(dir, key + ".map"));
+            try {
+                out.write(map.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            used.add(key);
+        } catch (IOException exc) {
+            logger.fine("Failed to cache " + diagramFile + ": " + exc);
+            if (key != null)
+                new File(dir, key + ".map").delete();
+        }
+    }
+
+    /**
+     * Remove any diagrams that weren't used since this cache was created
+     * so diagrams of things that have since changed don't accumulate.
+     */
+    public void prune() {
+        File[] entries = dir.listFiles();
+        if (entries == null)
+            return;
+
+        for (File entry : entries) {
+            String name = entry.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot == -1 || !used.contains(name.substring(0, dot)))
+                entry.delete();
+        }
+    }
+
+    /**
+     * @param dotFile
+     * @param renderedBy
+     * @return a hex digest of the dot file's contents and the dot that renders it
+     * @throws IOException
+     */
+    private String getKey(File dotFile, String renderedBy) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exc) {
+            IOException failure = new IOException(exc.toString());
+            failure.initCause(exc);
+            throw failure;
+        }
+
+        digest.update(renderedBy.getBytes("UTF-8"));
+        digest.update((byte)0);
+        digest.update(read(dotFile));
+
+        StringBuilder key = new StringBuilder(40);
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int)file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int numRead = in.read(bytes, offset, bytes.length - offset);
+                if (numRead == -1)
+                    throw new IOException("Unexpected end of " + file);
+                offset += numRead;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buf = new byte[8 * 1024];
+                int numRead;
+                while ((numRead = in.read(buf)) != -1)
+                    out.write(buf, 0, numRead);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream that lets a thread divert what it writes into a buffer of its own
+ * so that the output of things that are going on at the same time
+ * (like the console output of several schemas being analyzed at once)
+ * doesn't get jumbled together.<p/>
+ *
+ * Threads that are started by a thread that's been diverted write to its buffer too.
+ */
+public class DivertingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final ThreadLocal<ByteArrayOutputStream> buffer = new InheritableThreadLocal<ByteArrayOutputStream>();
+
+    /**
+     * @param out where threads that haven't been diverted write to
+     */
+    public DivertingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Divert what the current thread writes (and the threads that it starts from now on)
+     * until {@link #undivert()} is called
+     */
+    public void divert() {
+        buffer.set(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Stop diverting what the current thread writes
+     *
+     * @return what was written while the thread was diverted
+     */
+    public byte[] undivert() {
+        ByteArrayOutputStream diverted = buffer.get();
+        buffer.remove();
+        return diverted == null ? new byte[0] : diverted.toByteArray();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ByteArrayOutputStream diverted = buffer.get();
+        if (diverted == null)
+            out.write(b);
+        else
+            diverted.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ByteArrayOutputStream diverted = buffer.get();
+        if (diverted == null)
+            out.write(bytes, offset, length);
+        else
+            diverted.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer.get() == null)
+            out.flush();
+    }
+}
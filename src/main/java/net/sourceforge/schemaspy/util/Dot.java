@@ -20,12 +20,20 @@ package net.sourceforge.schemaspy.util;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -41,6 +49,7 @@ public class Dot {
     private String dotExe;
     private String format = "png";
     private String renderer;
+    private final List<DiagramCache> caches = new CopyOnWriteArrayList<DiagramCache>();
     private final Set<String> validatedRenderers = Collections.synchronizedSet(new HashSet<String>());
     private final Set<String> invalidatedRenderers = Collections.synchronizedSet(new HashSet<String>());
     private final Logger logger = Logger.getLogger(Dot.class.getName());
@@ -109,6 +118,17 @@ public class Dot {
         return getVersion().compareTo(new Version("2.6")) >= 0;
     }
 
+    /**
+     * Returns <code>true</code> if the installed dot can name its output files
+     * after its input files (<code>-O</code>), which lets a single dot process
+     * render many diagrams (see {@link #generateDiagrams(Map)}).
+     *
+     * @return
+     */
+    public boolean supportsBatches() {
+        return getVersion().compareTo(new Version("2.16")) >= 0;
+    }
+
     /**
      * Set the image format to generate.  Defaults to <code>png</code>.
      * See <a href='http://www.graphviz.org/doc/info/output.html'>http://www.graphviz.org/doc/info/output.html</a>
@@ -196,6 +216,48 @@ public class Dot {
         return getRenderer().indexOf(":cairo") != -1;
     }
 
+    /**
+     * Reuse the diagrams in the specified cache instead of rendering them again
+     * and add newly rendered diagrams to it.
+     * Only diagrams that {@link DiagramCache#isFor(File) belong} to the cache use it,
+     * so several schemas can be diagrammed at once, each with its own cache.
+     *
+     * @param cache
+     */
+    public void addCache(DiagramCache cache) {
+        caches.add(cache);
+    }
+
+    /**
+     * Stop using the specified cache
+     *
+     * @param cache
+     */
+    public void removeCache(DiagramCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * Returns the cache that the specified diagram belongs to,
+     * <code>null</code> if it isn't cached
+     */
+    private DiagramCache getCache(File diagramFile) {
+        for (DiagramCache cache : caches) {
+            if (cache.isFor(diagramFile))
+                return cache;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the details of this dot that affect the diagrams it renders
+     *
+     * @return
+     */
+    private String getRenderedBy() {
+        return "dot " + getVersion() + " -T" + getFormat() + getRenderer();
+    }
+
     /**
      * Returns <code>true</code> if the specified renderer is supported.
      * See {@link #setRenderer(String)} for renderer details.
@@ -266,23 +328,64 @@ public class Dot {
      * Using the specified .dot file generates an image returning the image's image map.
      */
     public String generateDiagram(File dotFile, File diagramFile) throws DotFailure {
+        return generateDiagram(dotFile, diagramFile, null, 0);
+    }
+
+    /**
+     * Using the specified .dot file generates an image returning the image's image map.
+     *
+     * @param dotFile
+     * @param diagramFile
+     * @param layout Graphviz layout engine to use (e.g. <code>sfdp</code> or <code>neato</code>),
+     *          <code>null</code> for dot's own
+     * @param timeout maximum number of milliseconds to let dot run for, 0 for no limit
+     * @return
+     * @throws DotTimeout if dot was killed because it ran for longer than <code>timeout</code>
+     * @throws DotFailure
+     */
+    public String generateDiagram(File dotFile, File diagramFile, String layout, long timeout) throws DotFailure {
+        String renderedBy = getRenderedBy() + (layout == null ? "" : " -K" + layout);
+        DiagramCache diagramCache = getCache(diagramFile);
+        if (diagramCache != null) {
+            String map = diagramCache.get(dotFile, diagramFile, renderedBy);
+            if (map != null)
+                return map;
+        }
+
         StringBuilder mapBuffer = new StringBuilder(1024);
 
         BufferedReader mapReader = null;
         // this one is for executing.  it can (hopefully) deal with funky things in filenames.
-        String[] dotCommand = new String[] {
-            getExe(),
-            "-T" + getFormat() + getRenderer(),
-            dotFile.toString(),
-            "-o" + diagramFile,
-            "-Tcmapx"
-        };
+        List<String> command = new ArrayList<String>();
+        command.add(getExe());
+        if (layout != null)
+            command.add("-K" + layout);
+        command.add("-T" + getFormat() + getRenderer());
+        command.add(dotFile.toString());
+        command.add("-o" + diagramFile);
+        command.add("-Tcmapx");
+        String[] dotCommand = command.toArray(new String[command.size()]);
         // this one is for display purposes ONLY.
         String commandLine = getDisplayableCommand(dotCommand);
         logger.fine(commandLine);
 
+        Timer watchdog = null;
+        final boolean[] killed = new boolean[1];
+
         try {
-            Process process = Runtime.getRuntime().exec(dotCommand);
+            final Process process = Runtime.getRuntime().exec(dotCommand);
+            if (timeout > 0) {
+                watchdog = new Timer(true);
+                watchdog.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        synchronized (killed) {
+                            killed[0] = true;
+                        }
+                        process.destroy();
+                    }
+                }, timeout);
+            }
             new ProcessOutputReader(commandLine, process.getErrorStream()).start();
             mapReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             String line;
@@ -291,13 +394,20 @@ public class Dot {
                 mapBuffer.append(lineSeparator);
             }
             int rc = process.waitFor();
+            synchronized (killed) {
+                if (killed[0])
+                    throw new DotTimeout("'" + commandLine + "' didn't finish within " + timeout + "ms");
+            }
             if (rc != 0)
                 throw new DotFailure("'" + commandLine + "' failed with return code " + rc);
             if (!diagramFile.exists())
                 throw new DotFailure("'" + commandLine + "' failed to create output file");
 
             // dot generates post-HTML 4.0.1 output...convert trailing />'s to >'s
-            return mapBuffer.toString().replace("/>", ">");
+            String map = mapBuffer.toString().replace("/>", ">");
+            if (diagramCache != null)
+                diagramCache.put(dotFile, diagramFile, renderedBy, map);
+            return map;
         } catch (InterruptedException interrupted) {
             throw new RuntimeException(interrupted);
         } catch (DotFailure failed) {
@@ -307,6 +417,8 @@ public class Dot {
             diagramFile.delete();
             throw new DotFailure("'" + commandLine + "' failed with exception " + failed);
         } finally {
+            if (watchdog != null)
+                watchdog.cancel();
             if (mapReader != null) {
                 try {
                     mapReader.close();
@@ -315,6 +427,138 @@ public class Dot {
         }
     }
 
+    /**
+     * Render several .dot files with a single dot process.
+     * Launching dot typically costs more than laying out the small diagrams
+     * of individual tables, so this can be significantly faster than calling
+     * {@link #generateDiagram(File, File)} for each of them.<p/>
+     *
+     * Requires {@link #supportsBatches()}.
+     *
+     * @param diagrams diagram files to create keyed by the .dot file that describes them
+     * @return the image maps of the diagrams keyed by their diagram files.
+     *          Diagrams that weren't rendered are left out.
+     * @throws DotFailure if dot couldn't be run at all
+     */
+    public Map<File, String> generateDiagrams(Map<File, File> diagrams) throws DotFailure {
+        Map<File, String> maps = new HashMap<File, String>();
+        if (!caches.isEmpty()) {
+            Map<File, File> uncached = new HashMap<File, File>();
+            for (Map.Entry<File, File> diagram : diagrams.entrySet()) {
+                DiagramCache diagramCache = getCache(diagram.getValue());
+                String map = diagramCache == null ? null : diagramCache.get(diagram.getKey(), diagram.getValue(), getRenderedBy());
+                if (map != null)
+                    maps.put(diagram.getValue(), map);
+                else
+                    uncached.put(diagram.getKey(), diagram.getValue());
+            }
+
+            diagrams = uncached;
+            if (diagrams.isEmpty())
+                return maps;
+        }
+
+        String imageFormat = getFormat() + getRenderer();
+        List<String> command = new ArrayList<String>();
+        command.add(getExe());
+        command.add("-T" + imageFormat);
+        command.add("-Tcmapx");
+        command.add("-O");
+        for (File dotFile : diagrams.keySet()) {
+            // get rid of anything that a previous run might've left behind
+            getAutoOutputFile(dotFile, imageFormat).delete();
+            getAutoOutputFile(dotFile, "cmapx").delete();
+            command.add(dotFile.toString());
+        }
+
+        String[] dotCommand = command.toArray(new String[command.size()]);
+        String commandLine = getDisplayableCommand(dotCommand);
+        logger.fine(commandLine);
+
+        try {
+            Process process = Runtime.getRuntime().exec(dotCommand);
+            new ProcessOutputReader(commandLine, process.getErrorStream()).start();
+            process.getOutputStream().close();
+            InputStream out = process.getInputStream();
+            while (out.read() != -1)
+                ;   // nothing should come out here, but don't let it block
+            int rc = process.waitFor();
+            if (rc != 0)
+                logger.fine("'" + commandLine + "' failed with return code " + rc);
+        } catch (InterruptedException interrupted) {
+            throw new RuntimeException(interrupted);
+        } catch (IOException failed) {
+            throw new DotFailure("'" + commandLine + "' failed with exception " + failed);
+        }
+
+        for (Map.Entry<File, File> diagram : diagrams.entrySet()) {
+            File imageFile = getAutoOutputFile(diagram.getKey(), imageFormat);
+            File mapFile = getAutoOutputFile(diagram.getKey(), "cmapx");
+            File diagramFile = diagram.getValue();
+
+            try {
+                if (imageFile.exists() && mapFile.exists()) {
+                    diagramFile.delete();
+                    if (imageFile.renameTo(diagramFile)) {
+                        String map = readMap(mapFile);
+                        DiagramCache diagramCache = getCache(diagramFile);
+                        if (diagramCache != null)
+                            diagramCache.put(diagram.getKey(), diagramFile, getRenderedBy(), map);
+                        maps.put(diagramFile, map);
+                    }
+                }
+            } catch (IOException failed) {
+                diagramFile.delete();
+            } finally {
+                imageFile.delete();
+                mapFile.delete();
+            }
+        }
+
+        return maps;
+    }
+
+    /**
+     * Returns the name of the file that <code>dot -O</code> writes the specified format to.
+     * It appends the components of the format in reverse order,
+     * so <code>png:cairo</code> ends up as <code>.cairo.png</code>.
+     *
+     * @param dotFile
+     * @param format
+     * @return
+     */
+    private File getAutoOutputFile(File dotFile, @SuppressWarnings("hiding") String format) {
+        String[] components = format.split(":");
+        StringBuilder name = new StringBuilder(dotFile.getName());
+        for (int i = components.length - 1; i >= 0; --i) {
+            if (components[i].length() > 0)
+                name.append('.').append(components[i]);
+        }
+        return new File(dotFile.getParentFile(), name.toString());
+    }
+
+    /**
+     * @param mapFile
+     * @return the image map that dot wrote to the specified file
+     * @throws IOException
+     */
+    private String readMap(File mapFile) throws IOException {
+        StringBuilder mapBuffer = new StringBuilder(1024);
+        BufferedReader mapReader = new BufferedReader(new InputStreamReader(new FileInputStream(mapFile)));
+        try {
+            String line;
+            while ((line = mapReader.readLine()) != null) {
+                mapBuffer.append(line);
+                mapBuffer.append(lineSeparator);
+            }
+        } finally {
+            mapReader.close();
+        }
+
+        // dot generates post-HTML 4.0.1 output...convert trailing />'s to >'s
+        return mapBuffer.toString().replace("/>", ">");
+    }
+
     public class DotFailure extends IOException {
         private static final long serialVersionUID = 3833743270181351987L;
 
@@ -323,6 +567,17 @@ public class Dot {
         }
     }
 
+    /**
+     * Thrown when dot was killed because it took too long
+     */
+    public class DotTimeout extends DotFailure {
+        private static final long serialVersionUID = 1L;
+
+        public DotTimeout(String msg) {
+            super(msg);
+        }
+    }
+
     private static String getDisplayableCommand(String[] command) {
         StringBuilder displayable = new StringBuilder();
         for (int i = 0; i < command.length; ++i) {
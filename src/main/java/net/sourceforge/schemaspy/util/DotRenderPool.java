@@ -0,0 +1,182 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import net.sourceforge.schemaspy.util.Dot.DotFailure;
+
+/**
+ * Renders diagrams with several concurrent <code>dot</code> processes.<p/>
+ *
+ * Diagrams are {@link #submit(File, File) submitted} as soon as their
+ * .dot files have been written and their image maps are
+ * {@link #getMap(File, File) collected} when the page that displays them
+ * is written, so the rendering of diagrams overlaps with everything else.<p/>
+ *
+ * If the installed dot {@link Dot#supportsBatches() supports it} then
+ * diagrams are handed to each dot process in batches to amortize its startup costs.
+ */
+public class DotRenderPool {
+    private final Dot dot;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final Map<File, Rendering> renderings = new HashMap<File, Rendering>();
+    private List<Rendering> pending = new ArrayList<Rendering>();  // not handed to dot yet
+
+    /**
+     * @param dot
+     * @param maxThreads maximum number of <code>dot</code> processes to run at once
+     */
+    public DotRenderPool(Dot dot, int maxThreads) {
+        this.dot = dot;
+        executor = Executors.newFixedThreadPool(Math.max(maxThreads, 1));
+        batchSize = dot.supportsBatches() ? 10 : 1; // not scientifically derived
+    }
+
+    /**
+     * Queue up the rendering of the specified .dot file
+     *
+     * @param dotFile
+     * @param diagramFile
+     */
+    public void submit(File dotFile, File diagramFile) {
+        Rendering rendering = new Rendering(dotFile, diagramFile);
+
+        synchronized (renderings) {
+            renderings.put(diagramFile, rendering);
+            pending.add(rendering);
+            if (pending.size() >= batchSize)
+                flush();
+        }
+    }
+
+    /**
+     * Returns the image map of a diagram, waiting for it to be rendered if
+     * it was {@link #submit(File, File) submitted} or rendering it now if it wasn't.
+     *
+     * @param dotFile
+     * @param diagramFile
+     * @return
+     * @throws DotFailure
+     */
+    public String getMap(File dotFile, File diagramFile) throws DotFailure {
+        Rendering rendering;
+        synchronized (renderings) {
+            rendering = renderings.remove(diagramFile);
+            if (rendering != null && !pending.isEmpty())
+                flush();    // we're waiting on it so don't let it sit in a partial batch
+        }
+
+        if (rendering == null)
+            return dot.generateDiagram(dotFile, diagramFile);
+
+        try {
+            return rendering.get();
+        } catch (InterruptedException interrupted) {
+            throw new RuntimeException(interrupted);
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof DotFailure)
+                throw (DotFailure)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw (Error)cause;
+        }
+    }
+
+    /**
+     * Hand the pending diagrams to a dot process.
+     * Must be called while synchronized on <code>renderings</code>.
+     */
+    private void flush() {
+        final List<Rendering> batch = pending;
+        pending = new ArrayList<Rendering>();
+
+        if (batch.size() == 1) {
+            executor.execute(batch.get(0));
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+                Map<File, File> diagrams = new LinkedHashMap<File, File>();
+                for (Rendering rendering : batch)
+                    diagrams.put(rendering.dotFile, rendering.diagramFile);
+
+                Map<File, String> maps;
+                try {
+                    maps = dot.generateDiagrams(diagrams);
+                } catch (DotFailure failure) {
+                    maps = new HashMap<File, String>();
+                } catch (RuntimeException failure) {
+                    maps = new HashMap<File, String>();
+                }
+
+                for (Rendering rendering : batch) {
+                    String map = maps.get(rendering.diagramFile);
+                    if (map != null)
+                        rendering.rendered(map);
+                    else
+                        rendering.run();    // try it on its own so we get its specific failure
+                }
+            }
+        });
+    }
+
+    /**
+     * The rendering of a single diagram.
+     * Rendered on its own when {@link #run() run}, otherwise the
+     * results of a batch are handed to it.
+     */
+    private class Rendering extends FutureTask<String> {
+        private final File dotFile;
+        private final File diagramFile;
+
+        Rendering(final File dotFile, final File diagramFile) {
+            super(new Callable<String>() {
+                public String call() throws DotFailure {
+                    return dot.generateDiagram(dotFile, diagramFile);
+                }
+            });
+
+            this.dotFile = dotFile;
+            this.diagramFile = diagramFile;
+        }
+
+        void rendered(String map) {
+            set(map);
+        }
+    }
+
+    /**
+     * Stop rendering.  Diagrams that haven't been started yet are abandoned.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
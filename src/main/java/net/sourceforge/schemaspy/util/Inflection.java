@@ -19,7 +19,10 @@
 package net.sourceforge.schemaspy.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -27,7 +30,11 @@ import java.util.regex.Pattern;
  * <a href='http://api.rubyonrails.org/classes/ActiveSupport/CoreExtensions/String/Inflections.html'>Inflections</a>
  * to handle singularization and pluralization of 'Rails strings'.
  *
- * Copied from <a href='http://code.google.com/p/rogueweb/'>rogueweb</a>'s port of Rails to Java.
+ * Copied from <a href='http://code.google.com/p/rogueweb/'>rogueweb</a>'s port of Rails to Java.<p/>
+ *
+ * The patterns are compiled once and the results of {@link #pluralize(String)} and
+ * {@link #singularize(String)} are cached since the same handful of words
+ * (<code>user</code>, <code>account</code>...) show up in the columns of lots of tables.
  *
  * @author Anthony Eden
  */
@@ -35,6 +42,9 @@ public class Inflection {
     private static final List<Inflection> plural = new ArrayList<Inflection>();
     private static final List<Inflection> singular = new ArrayList<Inflection>();
     private static final List<String> uncountable = new ArrayList<String>();
+    private static final int MAX_CACHED = 10000;
+    private static final Map<String, String> plurals = newCache();
+    private static final Map<String, String> singulars = newCache();
 
     static {
         // plural is "singular to plural form"
@@ -103,9 +113,8 @@ public class Inflection {
         //Collections.reverse(plural);
     }
 
-    private final String pattern;
+    private final Pattern pattern;
     private final String replacement;
-    private final boolean ignoreCase;
 
     public Inflection(String pattern) {
         this(pattern, null, true);
@@ -116,9 +125,22 @@ public class Inflection {
     }
 
     public Inflection(String pattern, String replacement, boolean ignoreCase) {
-        this.pattern = pattern;
+        this.pattern = Pattern.compile(pattern, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
         this.replacement = replacement;
-        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Least recently used words get dropped once the cache is full
+     */
+    private static Map<String, String> newCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_CACHED;
+            }
+        });
     }
 
     private static void plural(String pattern, String replacement) {
@@ -144,11 +166,7 @@ public class Inflection {
      * @return True if it matches the inflection pattern
      */
     public boolean match(String word) {
-        int flags = 0;
-        if (ignoreCase) {
-            flags = flags | Pattern.CASE_INSENSITIVE;
-        }
-        return Pattern.compile(pattern, flags).matcher(word).find();
+        return pattern.matcher(word).find();
     }
 
     /**
@@ -157,11 +175,7 @@ public class Inflection {
      * @return The result
      */
     public String replace(String word) {
-        int flags = 0;
-        if (ignoreCase) {
-            flags = flags | Pattern.CASE_INSENSITIVE;
-        }
-        return Pattern.compile(pattern, flags).matcher(word).replaceAll(replacement);
+        return pattern.matcher(word).replaceAll(replacement);
     }
 
     /**
@@ -170,16 +184,12 @@ public class Inflection {
      * @return The pluralized word
      */
     public static String pluralize(String word) {
-        if (Inflection.isUncountable(word)) {
-            return word;
+        String result = plurals.get(word);
+        if (result == null) {
+            result = inflect(word, plural);
+            plurals.put(word, result);
         }
-
-        for (Inflection inflection : plural) {
-            if (inflection.match(word)) {
-                return inflection.replace(word);
-            }
-        }
-        return word;
+        return result;
     }
 
     /**
@@ -188,14 +198,24 @@ public class Inflection {
      * @return The singularized word
      */
     public static String singularize(String word) {
+        String result = singulars.get(word);
+        if (result == null) {
+            result = inflect(word, singular);
+            singulars.put(word, result);
+        }
+        return result;
+    }
+
+    /**
+     * Apply the first of the inflections that matches the word
+     */
+    private static String inflect(String word, List<Inflection> inflections) {
         if (Inflection.isUncountable(word)) {
             return word;
         }
 
-        for (Inflection inflection : singular) {
-            //System.out.println(word + " matches " + inflection.pattern + "? (ignore case: " + inflection.ignoreCase + ")");
+        for (Inflection inflection : inflections) {
             if (inflection.match(word)) {
-                //System.out.println("match!");
                 return inflection.replace(word);
             }
         }
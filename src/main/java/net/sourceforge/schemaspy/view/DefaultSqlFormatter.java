@@ -137,7 +137,7 @@ public class DefaultSqlFormatter implements SqlFormatter {
      * @param db
      * @return
      */
-    protected Map<String, Table> getTableMap(Database db)
+    protected synchronized Map<String, Table> getTableMap(Database db)
     {
         if (tablesByPossibleNames == null)
         {
@@ -184,7 +184,7 @@ public class DefaultSqlFormatter implements SqlFormatter {
      * @param meta
      * @return
      */
-    public Set<String> getKeywords(DatabaseMetaData meta) {
+    public synchronized Set<String> getKeywords(DatabaseMetaData meta) {
         if (keywords == null) {
             keywords = new HashSet<String>(Arrays.asList(new String[] {
                 "ABSOLUTE", "ACTION", "ADD", "ALL", "ALLOCATE", "ALTER", "AND",
@@ -232,24 +232,26 @@ public class DefaultSqlFormatter implements SqlFormatter {
                 "ZONE"
             }));
 
-            try {
-                String keywordsArray[] = new String[] {
-                    meta.getSQLKeywords(),
-                    meta.getSystemFunctions(),
-                    meta.getNumericFunctions(),
-                    meta.getStringFunctions(),
-                    meta.getTimeDateFunctions()
-                };
-                for (int i = 0; i < keywordsArray.length; ++i) {
-                    StringTokenizer tokenizer = new StringTokenizer(keywordsArray[i].toUpperCase(), ",");
+            if (meta != null) {
+                try {
+                    String keywordsArray[] = new String[] {
+                        meta.getSQLKeywords(),
+                        meta.getSystemFunctions(),
+                        meta.getNumericFunctions(),
+                        meta.getStringFunctions(),
+                        meta.getTimeDateFunctions()
+                    };
+                    for (int i = 0; i < keywordsArray.length; ++i) {
+                        StringTokenizer tokenizer = new StringTokenizer(keywordsArray[i].toUpperCase(), ",");
 
-                    while (tokenizer.hasMoreTokens()) {
-                        keywords.add(tokenizer.nextToken().trim());
+                        while (tokenizer.hasMoreTokens()) {
+                            keywords.add(tokenizer.nextToken().trim());
+                        }
                     }
+                } catch (Exception exc) {
+                    // don't totally fail just because we can't extract these details...
+                    System.err.println(exc);
                 }
-            } catch (Exception exc) {
-                // don't totally fail just because we can't extract these details...
-                System.err.println(exc);
             }
         }
 
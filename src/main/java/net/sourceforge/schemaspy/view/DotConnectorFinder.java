@@ -19,8 +19,12 @@
 package net.sourceforge.schemaspy.view;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.sourceforge.schemaspy.model.Table;
 import net.sourceforge.schemaspy.model.TableColumn;
 
@@ -31,6 +35,7 @@ import net.sourceforge.schemaspy.model.TableColumn;
  */
 public class DotConnectorFinder {
     private static DotConnectorFinder instance = new DotConnectorFinder();
+    private final List<RelationshipIndex> indexes = new CopyOnWriteArrayList<RelationshipIndex>();  // one per schema being diagrammed
 
     /**
      * Singleton - prevent creation
@@ -42,6 +47,67 @@ public class DotConnectorFinder {
         return instance;
     }
 
+    /**
+     * Index the relationships of the specified tables (and of the tables that
+     * they're related to) so they can be found without walking their columns.<p/>
+     *
+     * The relationships must not change while the index is in use,
+     * so {@link #clearIndex(Collection) clear} it before changing them.
+     *
+     * @param tables
+     */
+    public void index(Collection<Table> tables) {
+        indexes.add(new RelationshipIndex(tables));
+    }
+
+    /**
+     * Go back to finding the relationships of the specified tables
+     * by walking their columns
+     *
+     * @param tables the tables that were {@link #index(Collection) indexed}
+     */
+    public void clearIndex(Collection<Table> tables) {
+        for (RelationshipIndex index : indexes) {
+            if (index.isOf(tables))
+                indexes.remove(index);
+        }
+    }
+
+    /**
+     * Returns the index that knows about the relationships of the specified table,
+     * <code>null</code> if none do
+     */
+    private RelationshipIndex getIndex(Table table) {
+        for (RelationshipIndex index : indexes) {
+            if (index.contains(table))
+                return index;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tables that have relationships with the specified table,
+     * regardless of whether those relationships are implied or excluded.
+     *
+     * @param table
+     * @return
+     */
+    public Set<Table> getRelatedTables(Table table) {
+        RelationshipIndex index = getIndex(table);
+        if (index != null)
+            return index.getRelatedTables(table);
+
+        Set<Table> relatedTables = new LinkedHashSet<Table>();
+        for (TableColumn column : table.getColumns()) {
+            for (TableColumn parentColumn : column.getParents())
+                relatedTables.add(parentColumn.getTable());
+            for (TableColumn childColumn : column.getChildren())
+                relatedTables.add(childColumn.getTable());
+        }
+        relatedTables.remove(table);
+        return relatedTables;
+    }
+
     /**
      *
      * @param table Table
@@ -49,6 +115,10 @@ public class DotConnectorFinder {
      * @return Set of <code>dot</code> relationships (as {@link DotConnector}s)
      */
     public Set<DotConnector> getRelatedConnectors(Table table, boolean includeImplied) {
+        RelationshipIndex index = getIndex(table);
+        if (index != null)
+            return index.getConnectors(table, includeImplied);
+
         Set<DotConnector> relationships = new HashSet<DotConnector>();
 
         for (TableColumn column : table.getColumns()) {
@@ -67,6 +137,10 @@ public class DotConnectorFinder {
      * @return Set of <code>dot</code> relationships (as {@link DotConnector}s)
      */
     public Set<DotConnector> getRelatedConnectors(Table table1, Table table2, boolean includeExcluded, boolean includeImplied) {
+        RelationshipIndex index = getIndex(table1);
+        if (index != null && index.contains(table2))
+            return index.getConnectors(table1, table2, includeExcluded, includeImplied);
+
         Set<DotConnector> relationships = new HashSet<DotConnector>();
 
         for (TableColumn column : table1.getColumns()) {
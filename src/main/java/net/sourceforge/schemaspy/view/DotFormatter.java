@@ -19,8 +19,8 @@
 package net.sourceforge.schemaspy.view;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -129,14 +129,19 @@ public class DotFormatter {
         }
 
         // glue together any 'participants' that aren't yet connected
-        // note that this is the epitome of nested loops from hell
-        List<Table> participants = new ArrayList<Table>(nodes.keySet());
-        Iterator<Table> iter = participants.iterator();
-        while (iter.hasNext()) {
-            Table participantA = iter.next();
-            iter.remove(); // cut down the combos as quickly as possible
-
-            for (Table participantB : participants) {
+        // by visiting each pair of related participants once
+        Map<Table, Integer> participants = new HashMap<Table, Integer>();
+        for (Table participant : nodes.keySet())
+            participants.put(participant, participants.size());
+
+        for (Table participantA : nodes.keySet()) {
+            int positionA = participants.get(participantA);
+
+            for (Table participantB : finder.getRelatedTables(participantA)) {
+                Integer positionB = participants.get(participantB);
+                if (positionB == null || positionB.intValue() <= positionA)
+                    continue;   // not a participant or already glued from the other side
+
                 for (DotConnector connector : finder.getRelatedConnectors(participantA, participantB, false, includeImplied)) {
                     if (twoDegreesOfSeparation && (allCousins.contains(participantA) || allCousins.contains(participantB))) {
                         allCousinConnectors.add(connector);
@@ -324,6 +329,120 @@ public class DotFormatter {
         return wroteImplied;
     }
 
+    /**
+     * Write the relationships between the tables of one of the clusters that
+     * the summary diagram was split into (see {@link net.sourceforge.schemaspy.TableClusterer}).
+     * Relationships with tables outside of the cluster are left to the
+     * {@link #writeClusterOverview(List, LineWriter) overview}.
+     *
+     * @param clusterNumber
+     * @param cluster
+     * @param stats
+     * @param dot
+     * @throws IOException
+     */
+    public void writeCluster(int clusterNumber, Set<Table> cluster, WriteStats stats, LineWriter dot) throws IOException {
+        DotConnectorFinder finder = DotConnectorFinder.getInstance();
+        DotNodeConfig nodeConfig = new DotNodeConfig(false, false);
+
+        writeHeader(getClusterDiagramName(clusterNumber), false, dot);
+
+        Map<Table, DotNode> nodes = new TreeMap<Table, DotNode>();
+        for (Table table : cluster) {
+            nodes.put(table, new DotNode(table, "tables/", nodeConfig));
+        }
+
+        Set<DotConnector> connectors = new TreeSet<DotConnector>();
+        for (Table table : cluster) {
+            for (DotConnector connector : finder.getRelatedConnectors(table, false)) {
+                if (cluster.contains(connector.getParentTable()) && cluster.contains(connector.getChildTable()))
+                    connectors.add(connector);
+            }
+        }
+
+        markExcludedColumns(nodes, stats.getExcludedColumns());
+
+        for (DotNode node : nodes.values()) {
+            dot.writeln(node.toString());
+            stats.wroteTable(node.getTable());
+        }
+
+        for (DotConnector connector : connectors) {
+            dot.writeln(connector.toString());
+        }
+
+        dot.writeln("}");
+    }
+
+    /**
+     * Write a diagram with a node for each cluster that links to the cluster's own
+     * diagram and an edge for the relationships between the tables of each pair of clusters.
+     *
+     * @param clusters
+     * @param dot
+     * @throws IOException
+     */
+    public void writeClusterOverview(List<Set<Table>> clusters, LineWriter dot) throws IOException {
+        StyleSheet css = StyleSheet.getInstance();
+        final int maxNamesShown = 5;
+
+        writeHeader("clustersDiagram", true, dot);
+
+        Map<Table, Integer> clusterNumbers = new HashMap<Table, Integer>();
+        for (int i = 0; i < clusters.size(); ++i) {
+            for (Table table : clusters.get(i))
+                clusterNumbers.put(table, i + 1);
+        }
+
+        for (int i = 0; i < clusters.size(); ++i) {
+            Set<Table> cluster = clusters.get(i);
+            dot.writeln("  \"cluster" + (i + 1) + "\" [");
+            dot.writeln("    label=<");
+            dot.writeln("    <TABLE BORDER=\"0\" CELLBORDER=\"1\" CELLSPACING=\"0\" BGCOLOR=\"" + css.getTableBackground() + "\">");
+            dot.writeln("      <TR><TD BGCOLOR=\"" + css.getTableHeadBackground() + "\" ALIGN=\"CENTER\">Cluster " + (i + 1) + "</TD></TR>");
+            Iterator<Table> iter = cluster.iterator();
+            for (int shown = 0; shown < maxNamesShown && iter.hasNext(); ++shown) {
+                Table table = iter.next();
+                dot.writeln("      <TR><TD ALIGN=\"LEFT\">" + (table.isRemote() ? table.getContainer() + "." : "") + table.getName() + "</TD></TR>");
+            }
+            if (iter.hasNext())
+                dot.writeln("      <TR><TD ALIGN=\"LEFT\">...</TD></TR>");
+            dot.writeln("      <TR><TD ALIGN=\"RIGHT\" BGCOLOR=\"" + css.getBodyBackground() + "\">" + cluster.size() + " tables</TD></TR>");
+            dot.writeln("    </TABLE>>");
+            dot.writeln("    URL=\"#cluster" + (i + 1) + "\"");
+            dot.writeln("    tooltip=\"Cluster " + (i + 1) + "\"");
+            dot.writeln("  ];");
+        }
+
+        // number of relationships from the tables of one cluster to the tables of another
+        Map<String, Integer> edges = new TreeMap<String, Integer>();
+        for (int i = 0; i < clusters.size(); ++i) {
+            for (Table table : clusters.get(i)) {
+                for (TableColumn column : table.getColumns()) {
+                    for (TableColumn parentColumn : column.getParents()) {
+                        Integer parentCluster = clusterNumbers.get(parentColumn.getTable());
+                        if (parentCluster == null || parentCluster.intValue() == i + 1 || column.getParentConstraint(parentColumn).isImplied())
+                            continue;
+
+                        String edge = "  \"cluster" + (i + 1) + "\" -> \"cluster" + parentCluster + "\"";
+                        Integer count = edges.get(edge);
+                        edges.put(edge, count == null ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+            dot.writeln(edge.getKey() + " [arrowhead=none dir=back arrowtail=crowodot label=\"" + edge.getValue() + "\"];");
+        }
+
+        dot.writeln("}");
+    }
+
+    public static String getClusterDiagramName(int clusterNumber) {
+        return "cluster" + clusterNumber + "RelationshipsDiagram";
+    }
+
     private void markExcludedColumns(Map<Table, DotNode> nodes, Set<TableColumn> excludedColumns) {
         for (TableColumn column : excludedColumns) {
             DotNode node = nodes.get(column.getTable());
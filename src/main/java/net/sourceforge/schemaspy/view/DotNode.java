@@ -151,6 +151,8 @@ public class DotNode {
         else {
             final long numRows = table.getNumRows();
             if (displayNumRows && numRows >= 0) {
+                if (table.isNumRowsEstimated())
+                    buf.append('~');
                 buf.append(NumberFormat.getInstance().format(numRows));
                 buf.append(" row");
                 if (numRows != 1)
@@ -171,7 +171,9 @@ public class HtmlAnomaliesPage extends HtmlFormatter {
                 out.writeln("</td>");
                 if (displayNumRows) {
                     out.write("  <td class='detail' align='right'>");
-                    if (table.getNumRows() >= 0)
+                    if (table.getNumRows() >= 0 && table.isNumRowsEstimated())
+                        out.write("<span title='Estimated row count'>~" + NumberFormat.getIntegerInstance().format(table.getNumRows()) + "</span>");
+                    else if (table.getNumRows() >= 0)
                         out.write(String.valueOf(NumberFormat.getIntegerInstance().format(table.getNumRows())));
                     else
                         out.write("&nbsp;");
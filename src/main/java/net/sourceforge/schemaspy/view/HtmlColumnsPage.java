@@ -18,9 +18,12 @@
  */
 package net.sourceforge.schemaspy.view;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,7 +42,11 @@ import net.sourceforge.schemaspy.util.LineWriter;
 
 /**
  * The page that lists all of the columns in the schema,
- * allowing the end user to sort by column's attributes.
+ * allowing the end user to sort by column's attributes.<p/>
+ *
+ * The columns are written once.  The order of the rows when sorted by each
+ * of the headings is computed here and written to a separate script that the
+ * page uses to rearrange its rows, so sorting doesn't require a page per heading.
  *
  * @author John Currier
  */
@@ -112,26 +119,30 @@ public class HtmlColumnsPage extends HtmlFormatter {
             return columnName;
         }
 
-        public String getLocation() {
-            return getLocation(columnName);
-        }
-
-        public String getLocation(String colName) {
-            return "columns.by" + colName + ".html";
-        }
-
         private Comparator<TableColumn> getComparator() {
             return comparator;
         }
 
         @Override
         public String toString() {
-            return getLocation();
+            return columnName;
         }
     }
 
-    public void write(Database database, Collection<Table> tables, ColumnInfo columnInfo, LineWriter html) throws IOException {
-        Set<TableColumn> columns = new TreeSet<TableColumn>(columnInfo.getComparator());
+    /**
+     * Write the page along with the script that sorts it
+     *
+     * @param database
+     * @param tables
+     * @param sortsFile where to write the order of the rows for each of the headings
+     * @param html
+     * @throws IOException
+     */
+    public void write(Database database, Collection<Table> tables, File sortsFile, LineWriter html) throws IOException {
+        Map<String, ColumnInfo> infos = getColumnInfos();
+        String selectedDetail = infos.containsKey("column") ? "column" : infos.keySet().iterator().next();
+
+        List<TableColumn> columns = new ArrayList<TableColumn>();
         Set<TableColumn> primaryColumns = new HashSet<TableColumn>();
         Set<TableColumn> indexedColumns = new HashSet<TableColumn>();
 
@@ -144,9 +155,19 @@ public class HtmlColumnsPage extends HtmlFormatter {
             }
         }
 
-        writeHeader(database, columns.size(), columnInfo, html);
+        Collections.sort(columns, infos.get(selectedDetail).getComparator());
+
+        LineWriter sorts = new LineWriter(sortsFile, 64 * 1024, Config.getInstance().getCharset());
+        try {
+            writeSorts(columns, infos, selectedDetail, sorts);
+        } finally {
+            sorts.close();
+        }
+
+        writeHeader(database, columns.size(), selectedDetail, sortsFile.getName(), html);
 
         HtmlTablePage formatter = HtmlTablePage.getInstance();
+        formatter.resetColumnCounter();
 
         for (TableColumn column : columns) {
             formatter.writeColumn(column, column.getTable().getName(), primaryColumns, indexedColumns, true, false, html);
@@ -155,8 +176,59 @@ public class HtmlColumnsPage extends HtmlFormatter {
         writeFooter(html);
     }
 
-    private void writeHeader(Database db, int numberOfColumns, ColumnInfo selectedColumn, LineWriter html) throws IOException {
+    /**
+     * Write the order of the rows when they're sorted by each of the headings.
+     * Each order lists the indexes of the rows as they were written.
+     * The rows are written in the order of <code>selectedDetail</code>, so its order is <code>null</code>.
+     * Comments can't be sorted by, so they don't get one.
+     */
+    private void writeSorts(final List<TableColumn> columns, Map<String, ColumnInfo> infos, String selectedDetail, LineWriter out) throws IOException {
+        out.writeln("// order of the rows of the columns page when sorted by each of its headings");
+        out.writeln("var columnSorts = {");
+
+        Integer[] order = new Integer[columns.size()];
+        boolean first = true;
+        for (Map.Entry<String, ColumnInfo> info : infos.entrySet()) {
+            if (info.getKey().equals("comments"))
+                continue;
+
+            if (!first)
+                out.writeln(",");
+            first = false;
+            out.write("  '");
+            out.write(info.getKey());
+            out.write("': ");
+
+            if (info.getKey().equals(selectedDetail)) {
+                out.write("null");
+            } else {
+                for (int i = 0; i < order.length; ++i)
+                    order[i] = i;
+
+                final Comparator<TableColumn> comparator = info.getValue().getComparator();
+                Arrays.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer row1, Integer row2) {
+                        return comparator.compare(columns.get(row1), columns.get(row2));
+                    }
+                });
+
+                out.write("[");
+                for (int i = 0; i < order.length; ++i) {
+                    if (i > 0)
+                        out.write(",");
+                    out.write(String.valueOf(order[i]));
+                }
+                out.write("]");
+            }
+        }
+
+        out.writeln();
+        out.writeln("};");
+    }
+
+    private void writeHeader(Database db, int numberOfColumns, String selectedDetail, String sortsScript, LineWriter html) throws IOException {
         writeHeader(db, null, "Columns", html);
+        html.writeln("<SCRIPT LANGUAGE='JavaScript' TYPE='text/javascript' SRC='" + sortsScript + "'></SCRIPT>");
 
         html.writeln("<table width='100%' border='0'>");
         html.writeln("<tr><td class='container'>");
@@ -188,12 +260,18 @@ public class HtmlColumnsPage extends HtmlFormatter {
         html.write(" columns</b> - click on heading to sort:");
         Collection<Table> tables = db.getTables();
         boolean hasTableIds = tables.size() > 0 && tables.iterator().next().getId() != null;
-        writeMainTableHeader(hasTableIds, selectedColumn, html);
+        writeMainTableHeader(hasTableIds, selectedDetail, html);
         html.writeln("<tbody valign='top'>");
     }
 
-    public void writeMainTableHeader(boolean hasTableIds, ColumnInfo selectedColumn, LineWriter out) throws IOException {
-        boolean onColumnsPage = selectedColumn != null;
+    /**
+     * @param hasTableIds
+     * @param selectedDetail the detail that the rows are sorted by if we're on the columns page, otherwise <code>null</code>
+     * @param out
+     * @throws IOException
+     */
+    public void writeMainTableHeader(boolean hasTableIds, String selectedDetail, LineWriter out) throws IOException {
+        boolean onColumnsPage = selectedDetail != null;
         List<String> details = null;
         out.writeln("<a name='columns'></a>");
         out.writeln("<table id='columns' class='dataTable' border='1' rules='groups'>");
@@ -221,16 +299,16 @@ public class HtmlColumnsPage extends HtmlFormatter {
         out.writeln("<tr>");
         if (onColumnsPage) {
             Map<String, String> headings = new HashMap<String, String>();
-            headings.put("id", getTH(selectedColumn, "ID", null, "right"));
-            headings.put("table", getTH(selectedColumn, "Table", null, null));
-            headings.put("column", getTH(selectedColumn, "Column", null, null));
-            headings.put("type", getTH(selectedColumn, "Type", null, null));
-            headings.put("size", getTH(selectedColumn, "Size", null, null));
-            headings.put("nulls", getTH(selectedColumn, "Nulls", "Are nulls allowed?", null));
-            headings.put("auto", getTH(selectedColumn, "Auto", "Is column automatically updated?", null));
-            headings.put("default", getTH(selectedColumn, "Default", "Default value", null));
-            headings.put("children", getTH(selectedColumn, "Children", "Columns in tables that reference this column", null));
-            headings.put("parents", getTH(selectedColumn, "Parents", "Columns in tables that are referenced by this column", null));
+            headings.put("id", getTH(selectedDetail, "id", "ID", null, "right"));
+            headings.put("table", getTH(selectedDetail, "table", "Table", null, null));
+            headings.put("column", getTH(selectedDetail, "column", "Column", null, null));
+            headings.put("type", getTH(selectedDetail, "type", "Type", null, null));
+            headings.put("size", getTH(selectedDetail, "size", "Size", null, null));
+            headings.put("nulls", getTH(selectedDetail, "nulls", "Nulls", "Are nulls allowed?", null));
+            headings.put("auto", getTH(selectedDetail, "auto", "Auto", "Is column automatically updated?", null));
+            headings.put("default", getTH(selectedDetail, "default", "Default", "Default value", null));
+            headings.put("children", getTH(selectedDetail, "children", "Children", "Columns in tables that reference this column", null));
+            headings.put("parents", getTH(selectedDetail, "parents", "Parents", "Columns in tables that are referenced by this column", null));
             headings.put("comments", "<th title='Comments' class='comment'><span class='notSortedByColumn'>Comments</span></th>");
 
             // output the headings in the order specified
@@ -241,15 +319,15 @@ public class HtmlColumnsPage extends HtmlFormatter {
             }
         } else {
             if (hasTableIds)
-                out.writeln(getTH(selectedColumn, "ID", null, "right"));
-            out.writeln(getTH(selectedColumn, "Column", null, null));
-            out.writeln(getTH(selectedColumn, "Type", null, null));
-            out.writeln(getTH(selectedColumn, "Size", null, null));
-            out.writeln(getTH(selectedColumn, "Nulls", "Are nulls allowed?", null));
-            out.writeln(getTH(selectedColumn, "Auto", "Is column automatically updated?", null));
-            out.writeln(getTH(selectedColumn, "Default", "Default value", null));
-            out.writeln(getTH(selectedColumn, "Children", "Columns in tables that reference this column", null));
-            out.writeln(getTH(selectedColumn, "Parents", "Columns in tables that are referenced by this column", null));
+                out.writeln(getTH(null, null, "ID", null, "right"));
+            out.writeln(getTH(null, null, "Column", null, null));
+            out.writeln(getTH(null, null, "Type", null, null));
+            out.writeln(getTH(null, null, "Size", null, null));
+            out.writeln(getTH(null, null, "Nulls", "Are nulls allowed?", null));
+            out.writeln(getTH(null, null, "Auto", "Is column automatically updated?", null));
+            out.writeln(getTH(null, null, "Default", "Default value", null));
+            out.writeln(getTH(null, null, "Children", "Columns in tables that reference this column", null));
+            out.writeln(getTH(null, null, "Parents", "Columns in tables that are referenced by this column", null));
             out.writeln("  <th title='Comments' class='comment'><span class='notSortedByColumn'>Comments</span></th>");
         }
 
@@ -257,7 +335,15 @@ public class HtmlColumnsPage extends HtmlFormatter {
         out.writeln("</thead>");
     }
 
-    private String getTH(ColumnInfo selectedColumn, String columnName, String title, String align) {
+    /**
+     * @param selectedDetail the detail that the rows are sorted by, <code>null</code> if they can't be sorted
+     * @param detail the detail that this heading sorts by
+     * @param columnName
+     * @param title
+     * @param align
+     * @return
+     */
+    private String getTH(String selectedDetail, String detail, String columnName, String title, String align) {
         StringBuilder buf = new StringBuilder("  <th");
 
         if (align != null) {
@@ -272,18 +358,15 @@ public class HtmlColumnsPage extends HtmlFormatter {
             buf.append("'");
         }
 
-        if (selectedColumn != null) {
-            if (selectedColumn.getColumnName().equals(columnName)) {
-                buf.append(" class='sortedByColumn'>");
-                buf.append(columnName);
-            } else {
-                buf.append(" class='notSortedByColumn'>");
-                buf.append("<a href='");
-                buf.append(selectedColumn.getLocation(columnName));
-                buf.append("#columns'><span class='notSortedByColumn'>");
-                buf.append(columnName);
-                buf.append("</span></a>");
-            }
+        if (selectedDetail != null) {
+            // schemaSpy.js sorts the rows when the link is clicked
+            buf.append(" id='sortBy");
+            buf.append(detail);
+            buf.append("' class='sortable ");
+            buf.append(selectedDetail.equals(detail) ? "sortedByColumn" : "notSortedByColumn");
+            buf.append("'><a href='#columns'><span class='notSortedByColumn'>");
+            buf.append(columnName);
+            buf.append("</span></a>");
         } else {
             buf.append('>');
             buf.append(columnName);
@@ -41,7 +41,13 @@ import net.sourceforge.schemaspy.util.LineWriter;
  */
 public class HtmlConstraintsPage extends HtmlFormatter {
     private static HtmlConstraintsPage instance = new HtmlConstraintsPage();
-    private int columnCounter;
+    // several schemas' pages can be written at once, so each thread counts its own rows
+    private final ThreadLocal<Integer> columnCounter = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return 0;
+        }
+    };
 
     /**
      * Singleton: Don't allow instantiation
@@ -59,6 +65,7 @@ public class HtmlConstraintsPage extends HtmlFormatter {
     }
 
     public void write(Database database, List<ForeignKeyConstraint> constraints, Collection<Table> tables, LineWriter html) throws IOException {
+        columnCounter.set(0);
         writeHeader(database, html);
         writeForeignKeyConstraints(constraints, html);
         writeCheckConstraints(tables, html);
@@ -130,7 +137,9 @@ public class HtmlConstraintsPage extends HtmlFormatter {
      * @throws IOException
      */
     private void writeForeignKeyConstraint(ForeignKeyConstraint constraint, LineWriter html) throws IOException {
-        boolean even = columnCounter++ % 2 == 0;
+        int counter = columnCounter.get();
+        columnCounter.set(counter + 1);
+        boolean even = counter % 2 == 0;
         if (even)
             html.writeln("  <tr class='even'>");
         else
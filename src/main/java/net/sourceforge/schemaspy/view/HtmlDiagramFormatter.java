@@ -30,8 +30,7 @@ public class HtmlDiagramFormatter extends HtmlFormatter {
     protected Dot getDot() {
         Dot dot = Dot.getInstance();
         if (!dot.exists()) {
-            if (!printedNoDotWarning) {
-                printedNoDotWarning = true;
+            if (!warnOnce(true)) {
                 System.err.println();
                 System.err.println("Warning: Failed to run dot.");
                 System.err.println("   Download " + dot.getSupportedVersions());
@@ -44,8 +43,7 @@ public class HtmlDiagramFormatter extends HtmlFormatter {
         }
 
         if (!dot.isValid()) {
-            if (!printedInvalidVersionWarning) {
-                printedInvalidVersionWarning = true;
+            if (!warnOnce(false)) {
                 System.err.println();
                 System.err.println("Warning: Invalid version of Graphviz dot detected (" + dot.getVersion() + ").");
                 System.err.println("   SchemaSpy requires " + dot.getSupportedVersions() + ". from www.graphviz.org.");
@@ -57,4 +55,17 @@ public class HtmlDiagramFormatter extends HtmlFormatter {
 
         return dot;
     }
+
+    /**
+     * Returns <code>true</code> if the warning has already been printed.
+     * Diagrams can be written by several threads, so only one of them gets to print it.
+     */
+    private static synchronized boolean warnOnce(boolean noDot) {
+        boolean printed = noDot ? printedNoDotWarning : printedInvalidVersionWarning;
+        if (noDot)
+            printedNoDotWarning = true;
+        else
+            printedInvalidVersionWarning = true;
+        return printed;
+    }
 }
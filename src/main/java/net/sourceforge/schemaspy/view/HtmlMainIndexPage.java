@@ -87,6 +87,7 @@ public class HtmlMainIndexPage extends HtmlFormatter {
         int numTableCols = 0;
         int numViewCols = 0;
         long numRows = 0;
+        boolean numRowsEstimated = false;
         for (Table table : tables) {
             writeLineItem(table, showIds, html);
 
@@ -95,9 +96,10 @@ public class HtmlMainIndexPage extends HtmlFormatter {
             else
                 numViewCols += table.getColumns().size();
             numRows += table.getNumRows() > 0 ? table.getNumRows() : 0;
+            numRowsEstimated |= table.isNumRowsEstimated();
         }
 
-        writeLocalsFooter(tables.size() - numViews, numTableCols, numViews, numViewCols, numRows, html);
+        writeLocalsFooter(tables.size() - numViews, numTableCols, numViews, numViewCols, numRows, numRowsEstimated, html);
 
         if (!remotes.isEmpty()) {
             writeRemotesHeader(database, showIds, hasComments, html);
@@ -289,7 +291,9 @@ public class HtmlMainIndexPage extends HtmlFormatter {
             if (displayNumRows) {
                 html.write("  <td class='detail' align='right'>");
                 if (!table.isView()) {
-                    if (table.getNumRows() >= 0)
+                    if (table.getNumRows() >= 0 && table.isNumRowsEstimated())
+                        html.write("<span title='Estimated row count'>~" + integerFormatter.format(table.getNumRows()) + "</span>");
+                    else if (table.getNumRows() >= 0)
                         html.write(String.valueOf(integerFormatter.format(table.getNumRows())));
                     else
                         html.write("<span title='Row count not available'>&nbsp;</span>");
@@ -312,7 +316,7 @@ public class HtmlMainIndexPage extends HtmlFormatter {
         html.writeln("  </tr>");
     }
 
-    protected void writeLocalsFooter(int numTables, int numTableCols, int numViews, int numViewCols, long numRows, LineWriter html) throws IOException {
+    protected void writeLocalsFooter(int numTables, int numTableCols, int numViews, int numViewCols, long numRows, boolean numRowsEstimated, LineWriter html) throws IOException {
         html.writeln("  <tr>");
         html.writeln("    <td class='detail'>&nbsp;</td>");
         html.writeln("    <td class='detail'>&nbsp;</td>");
@@ -329,7 +333,7 @@ public class HtmlMainIndexPage extends HtmlFormatter {
         html.writeln("    <td class='detail'>&nbsp;</td>");
         html.writeln("    <td class='detail' align='right'><b>" + integerFormatter.format(numTableCols) + "</b></td>");
         if (displayNumRows)
-            html.writeln("    <td class='detail' align='right'><b>" + integerFormatter.format(numRows) + "</b></td>");
+            html.writeln("    <td class='detail' align='right'><b>" + (numRowsEstimated ? "~" : "") + integerFormatter.format(numRows) + "</b></td>");
         html.writeln("    <td class='comment detail'>&nbsp;</td>");
         html.writeln("  </tr>");
         name = numViews == 1 ? " View" : " Views";
@@ -20,12 +20,18 @@ package net.sourceforge.schemaspy.view;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.sourceforge.schemaspy.Config;
 import net.sourceforge.schemaspy.model.Database;
+import net.sourceforge.schemaspy.model.Table;
 import net.sourceforge.schemaspy.model.TableColumn;
 import net.sourceforge.schemaspy.util.Dot;
+import net.sourceforge.schemaspy.util.DotRenderPool;
 import net.sourceforge.schemaspy.util.LineWriter;
 
 /**
@@ -35,7 +41,8 @@ import net.sourceforge.schemaspy.util.LineWriter;
  */
 public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
     private static final HtmlRelationshipsPage instance = new HtmlRelationshipsPage();
-    private static final boolean fineEnabled = Logger.getLogger(HtmlRelationshipsPage.class.getName()).isLoggable(Level.FINE);
+    private static final Logger logger = Logger.getLogger(HtmlRelationshipsPage.class.getName());
+    private static final boolean fineEnabled = logger.isLoggable(Level.FINE);
 
     /**
      * Singleton: Don't allow instantiation
@@ -53,6 +60,16 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
     }
 
     public boolean write(Database db, File diagramDir, String dotBaseFilespec, boolean hasRealRelationships, boolean hasImpliedRelationships, Set<TableColumn> excludedColumns, LineWriter html) {
+        List<Set<Table>> noClusters = Collections.emptyList();
+        return write(db, diagramDir, dotBaseFilespec, hasRealRelationships, hasImpliedRelationships, noClusters, excludedColumns, html);
+    }
+
+    /**
+     * @param clusters if not empty then the relationships were split into these
+     *          clusters of related tables (see {@link DotFormatter#writeCluster(int, Set, WriteStats, LineWriter)})
+     *          and their diagrams are displayed instead of the usual ones
+     */
+    public boolean write(Database db, File diagramDir, String dotBaseFilespec, boolean hasRealRelationships, boolean hasImpliedRelationships, List<Set<Table>> clusters, Set<TableColumn> excludedColumns, LineWriter html) {
         try {
             Dot dot = getDot();
             if (dot == null) {
@@ -72,15 +89,28 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
             File compactImpliedDiagramFile = new File(diagramDir, dotBaseFilespec + ".implied.compact." + dot.getFormat());
             File largeImpliedDotFile = new File(diagramDir, dotBaseFilespec + ".implied.large.dot");
             File largeImpliedDiagramFile = new File(diagramDir, dotBaseFilespec + ".implied.large." + dot.getFormat());
+            File noColumnsRelationshipsDotFile = new File(diagramDir, dotBaseFilespec + ".real.nocolumns.dot");
+            File noColumnsImpliedDotFile = new File(diagramDir, dotBaseFilespec + ".implied.nocolumns.dot");
+
+            if (!clusters.isEmpty()) {
+                writeHeader(db, "All Relationships", hasRealRelationships, false, true, html);
+                html.writeln("<table width=\"100%\"><tr><td class=\"container\">");
+                writeClusters(dot, diagramDir, dotBaseFilespec, clusters, html);
+                html.writeln("</td></tr></table>");
+                writeExcludedColumns(excludedColumns, null, html);
+                writeFooter(html);
+                return true;
+            }
 
-            writeHeader(db, "All Relationships", hasRealRelationships, hasImpliedRelationships, html);
+            writeHeader(db, "All Relationships", hasRealRelationships, hasImpliedRelationships, false, html);
             html.writeln("<table width=\"100%\"><tr><td class=\"container\">");
 
             if (hasRealRelationships) {
                 if (!fineEnabled)
                     System.out.print(".");
 
-                html.writeln(dot.generateDiagram(compactRelationshipsDotFile, compactRelationshipsDiagramFile));
+                html.writeln(generateDiagram(dot, "compactRelationshipsDiagram", compactRelationshipsDiagramFile,
+                                                compactRelationshipsDotFile, noColumnsRelationshipsDotFile));
                 html.writeln("  <a name='diagram'><img id='realCompactImg' src='diagrams/summary/" + compactRelationshipsDiagramFile.getName() + "' usemap='#compactRelationshipsDiagram' class='diagram' border='0' alt=''></a>");
 
                 // we've run into instances where the first diagrams get generated, but then
@@ -90,7 +120,8 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
                     if (!fineEnabled)
                         System.out.print(".");
 
-                    html.writeln(dot.generateDiagram(largeRelationshipsDotFile, largeRelationshipsDiagramFile));
+                    html.writeln(generateDiagram(dot, "largeRelationshipsDiagram", largeRelationshipsDiagramFile,
+                                                    largeRelationshipsDotFile, compactRelationshipsDotFile, noColumnsRelationshipsDotFile));
                     html.writeln("  <a name='diagram'><img id='realLargeImg' src='diagrams/summary/" + largeRelationshipsDiagramFile.getName() + "' usemap='#largeRelationshipsDiagram' class='diagram' border='0' alt=''></a>");
                 } catch (Dot.DotFailure dotFailure) {
                     System.err.println("dot failed to generate all of the relationships diagrams:");
@@ -104,13 +135,15 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
                     if (!fineEnabled)
                         System.out.print(".");
 
-                    html.writeln(dot.generateDiagram(compactImpliedDotFile, compactImpliedDiagramFile));
+                    html.writeln(generateDiagram(dot, "compactImpliedRelationshipsDiagram", compactImpliedDiagramFile,
+                                                    compactImpliedDotFile, noColumnsImpliedDotFile));
                     html.writeln("  <a name='diagram'><img id='impliedCompactImg' src='diagrams/summary/" + compactImpliedDiagramFile.getName() + "' usemap='#compactImpliedRelationshipsDiagram' class='diagram' border='0' alt=''></a>");
 
                     if (!fineEnabled)
                         System.out.print(".");
 
-                    html.writeln(dot.generateDiagram(largeImpliedDotFile, largeImpliedDiagramFile));
+                    html.writeln(generateDiagram(dot, "largeImpliedRelationshipsDiagram", largeImpliedDiagramFile,
+                                                    largeImpliedDotFile, compactImpliedDotFile, noColumnsImpliedDotFile));
                     html.writeln("  <a name='diagram'><img id='impliedLargeImg' src='diagrams/summary/" + largeImpliedDiagramFile.getName() + "' usemap='#largeImpliedRelationshipsDiagram' class='diagram' border='0' alt=''></a>");
                 }
             } catch (Dot.DotFailure dotFailure) {
@@ -135,7 +168,116 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
         }
     }
 
-    private void writeHeader(Database db, String title, boolean hasRealRelationships, boolean hasImpliedRelationships, LineWriter html) throws IOException {
+    /**
+     * Write the overview of the clusters followed by the diagram of each cluster.
+     * The clusters' diagrams are rendered concurrently.
+     */
+    private void writeClusters(Dot dot, File diagramDir, String dotBaseFilespec, List<Set<Table>> clusters, LineWriter html) throws Dot.DotFailure, IOException {
+        File overviewDotFile = new File(diagramDir, dotBaseFilespec + ".clusters.dot");
+        File overviewDiagramFile = new File(diagramDir, dotBaseFilespec + ".clusters." + dot.getFormat());
+
+        DotRenderPool renderPool = new DotRenderPool(dot, Config.getInstance().getMaxDotThreads());
+        try {
+            for (int i = 1; i <= clusters.size(); ++i) {
+                renderPool.submit(new File(diagramDir, dotBaseFilespec + ".cluster" + i + ".dot"),
+                                  new File(diagramDir, dotBaseFilespec + ".cluster" + i + "." + dot.getFormat()));
+            }
+
+            if (!fineEnabled)
+                System.out.print(".");
+            html.writeln(generateDiagram(dot, "clustersDiagram", overviewDiagramFile, overviewDotFile));
+            html.writeln("  <img src='diagrams/summary/" + overviewDiagramFile.getName() + "' usemap='#clustersDiagram' border='0' alt=''>");
+
+            for (int i = 1; i <= clusters.size(); ++i) {
+                File dotFile = new File(diagramDir, dotBaseFilespec + ".cluster" + i + ".dot");
+                File diagramFile = new File(diagramDir, dotBaseFilespec + ".cluster" + i + "." + dot.getFormat());
+
+                if (!fineEnabled)
+                    System.out.print(".");
+                html.writeln("<p><a name='cluster" + i + "'>Cluster " + i + "</a> (" + clusters.get(i - 1).size() + " tables):<br>");
+                try {
+                    html.writeln(renderPool.getMap(dotFile, diagramFile));
+                    html.writeln("  <img src='diagrams/summary/" + diagramFile.getName() + "' usemap='#" + DotFormatter.getClusterDiagramName(i) + "' border='0' alt=''>");
+                } catch (Dot.DotFailure dotFailure) {
+                    System.err.println(dotFailure);
+                }
+                html.writeln("</p>");
+            }
+        } finally {
+            renderPool.shutdown();
+        }
+    }
+
+    /**
+     * Render a summary diagram.<p/>
+     *
+     * If a time limit was specified (see {@link Config#getSummaryDiagramTimeout()})
+     * and the diagram can't be rendered within it then progressively cheaper
+     * versions of it are rendered instead: the less detailed .dot files
+     * and then the faster <code>sfdp</code> and <code>neato</code> layout engines.
+     * The most detailed rendering gets all but a fifth of the time limit and
+     * the cheaper ones share whatever is left of it.
+     *
+     * @param dot
+     * @param diagramName name of the image map that the page refers to
+     * @param diagramFile
+     * @param dotFiles the .dot files that describe the diagram, from most to least detailed.
+     *          Any that don't exist are skipped.
+     * @return the diagram's image map
+     * @throws Dot.DotFailure if none of the attempts succeeded
+     */
+    private String generateDiagram(Dot dot, String diagramName, File diagramFile, File... dotFiles) throws Dot.DotFailure {
+        long timeLimit = Config.getInstance().getSummaryDiagramTimeout() * 1000L;
+        if (timeLimit == 0)
+            return dot.generateDiagram(dotFiles[0], diagramFile);
+
+        List<File> attemptFiles = new ArrayList<File>();
+        List<String> attemptLayouts = new ArrayList<String>();
+        for (File dotFile : dotFiles) {
+            if (dotFile.exists()) {
+                attemptFiles.add(dotFile);
+                attemptLayouts.add(null);
+            }
+        }
+        File cheapest = attemptFiles.get(attemptFiles.size() - 1);
+        String[] fasterLayouts = new String[] {"sfdp", "neato"};
+        for (String layout : fasterLayouts) {
+            attemptFiles.add(cheapest);
+            attemptLayouts.add(layout);
+        }
+
+        long deadline = System.currentTimeMillis() + timeLimit;
+        long reserve = timeLimit / 5;   // kept back for the cheaper renderings
+        Dot.DotFailure failure = null;
+
+        for (int i = 0; i < attemptFiles.size(); ++i) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (i > 0 && remaining <= 0)
+                break;
+
+            File dotFile = attemptFiles.get(i);
+            String layout = attemptLayouts.get(i);
+            try {
+                long allowed = i == 0 ? remaining - reserve : remaining / (attemptFiles.size() - i);
+                String map = dot.generateDiagram(dotFile, diagramFile, layout, Math.max(allowed, 1));
+                if (i == 0)
+                    return map;
+
+                // the map is named after the diagram that it was rendered from
+                map = map.replaceFirst("<map id=\"[^\"]*\" name=\"[^\"]*\"", "<map id=\"" + diagramName + "\" name=\"" + diagramName + "\"");
+                String fallback = "rendered from " + dotFile.getName() + (layout == null ? "" : " with " + layout) + " to stay within " + timeLimit / 1000 + " seconds";
+                logger.info(diagramFile.getName() + " " + fallback);
+                return "<!-- " + diagramFile.getName() + " " + fallback + " -->" + map;
+            } catch (Dot.DotFailure exc) {
+                logger.info("Falling back to a cheaper rendering of " + diagramFile.getName() + ": " + exc);
+                failure = exc;
+            }
+        }
+
+        throw failure;
+    }
+
+    private void writeHeader(Database db, String title, boolean hasRealRelationships, boolean hasImpliedRelationships, boolean clustered, LineWriter html) throws IOException {
         writeHeader(db, null, title, html);
         html.writeln("<table class='container' width='100%'>");
         html.writeln("<tr><td class='container'>");
@@ -155,6 +297,12 @@ public class HtmlRelationshipsPage extends HtmlDiagramFormatter {
             html.writeln("</td></tr>");
         }
         html.writeln("<tr><td class='container' align='left' valign='top'>");
+        if (clustered) {
+            html.writeln("There are too many related tables to display in a single diagram, so they've been split into clusters of related tables.<br>");
+            html.writeln("The first diagram shows how the clusters relate to each other.");
+            html.writeln("</td></tr></table>");
+            return;
+        }
 
         html.writeln("<form name='options' action=''>");
         if (hasImpliedRelationships) {
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import net.sourceforge.schemaspy.model.Table;
 import net.sourceforge.schemaspy.util.Dot;
+import net.sourceforge.schemaspy.util.DotRenderPool;
 import net.sourceforge.schemaspy.util.LineWriter;
 
 public class HtmlTableDiagrammer extends HtmlDiagramFormatter {
@@ -34,7 +35,41 @@ public class HtmlTableDiagrammer extends HtmlDiagramFormatter {
         return instance;
     }
 
+    /**
+     * Queue up the rendering of the diagrams whose .dot files were generated for
+     * the specified table so they'll be ready when
+     * {@link #write(Table, File, DotRenderPool, LineWriter)} needs them.
+     *
+     * @param table
+     * @param diagramDir
+     * @param renderPool
+     */
+    public void render(Table table, File diagramDir, DotRenderPool renderPool) {
+        Dot dot = getDot();
+        if (dot == null)
+            return;
+
+        String[] diagrams = new String[] {".1degree.", ".2degrees.", ".implied2degrees."};
+        for (String diagram : diagrams) {
+            File dotFile = new File(diagramDir, table.getName() + diagram + "dot");
+            if (dotFile.exists())
+                renderPool.submit(dotFile, new File(diagramDir, table.getName() + diagram + dot.getFormat()));
+        }
+    }
+
     public boolean write(Table table, File diagramDir, LineWriter html) {
+        return write(table, diagramDir, null, html);
+    }
+
+    /**
+     * @param table
+     * @param diagramDir
+     * @param renderPool pool that was previously asked to {@link #render(Table, File, DotRenderPool)}
+     *          the table's diagrams, <code>null</code> to render them now
+     * @param html
+     * @return
+     */
+    public boolean write(Table table, File diagramDir, DotRenderPool renderPool, LineWriter html) {
         try {
             Dot dot = getDot();
             if (dot == null)
@@ -47,7 +82,7 @@ public class HtmlTableDiagrammer extends HtmlDiagramFormatter {
             File impliedDotFile = new File(diagramDir, table.getName() + ".implied2degrees.dot");
             File impliedDiagramFile = new File(diagramDir, table.getName() + ".implied2degrees." + dot.getFormat());
 
-            String map = dot.generateDiagram(oneDegreeDotFile, oneDegreeDiagramFile);
+            String map = getMap(dot, renderPool, oneDegreeDotFile, oneDegreeDiagramFile);
 
             html.write("<br><form action='get'><b>Close relationships");
             if (twoDegreesDotFile.exists()) {
@@ -64,14 +99,14 @@ public class HtmlTableDiagrammer extends HtmlDiagramFormatter {
             html.writeln("  <a name='diagram'><img id='oneDegreeImg' src='../diagrams/" + urlEncode(oneDegreeDiagramFile.getName()) + "' usemap='#oneDegreeRelationshipsDiagram' class='diagram' border='0' alt='' align='left'></a>");
 
             if (impliedDotFile.exists()) {
-                html.writeln(dot.generateDiagram(impliedDotFile, impliedDiagramFile));
+                html.writeln(getMap(dot, renderPool, impliedDotFile, impliedDiagramFile));
                 html.writeln("  <a name='diagram'><img id='impliedTwoDegreesImg' src='../diagrams/" + urlEncode(impliedDiagramFile.getName()) + "' usemap='#impliedTwoDegreesRelationshipsDiagram' class='diagram' border='0' alt='' align='left'></a>");
             } else {
                 impliedDotFile.delete();
                 impliedDiagramFile.delete();
             }
             if (twoDegreesDotFile.exists()) {
-                html.writeln(dot.generateDiagram(twoDegreesDotFile, twoDegreesDiagramFile));
+                html.writeln(getMap(dot, renderPool, twoDegreesDotFile, twoDegreesDiagramFile));
                 html.writeln("  <a name='diagram'><img id='twoDegreesImg' src='../diagrams/" + urlEncode(twoDegreesDiagramFile.getName()) + "' usemap='#twoDegreesRelationshipsDiagram' class='diagram' border='0' alt='' align='left'></a>");
             } else {
                 twoDegreesDotFile.delete();
@@ -87,4 +122,10 @@ public class HtmlTableDiagrammer extends HtmlDiagramFormatter {
 
         return true;
     }
+
+    private String getMap(Dot dot, DotRenderPool renderPool, File dotFile, File diagramFile) throws Dot.DotFailure {
+        if (renderPool == null)
+            return dot.generateDiagram(dotFile, diagramFile);
+        return renderPool.getMap(dotFile, diagramFile);
+    }
 }
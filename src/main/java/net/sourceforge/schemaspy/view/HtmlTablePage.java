@@ -36,6 +36,7 @@ import net.sourceforge.schemaspy.model.TableIndex;
 import net.sourceforge.schemaspy.model.View;
 import net.sourceforge.schemaspy.util.CaseInsensitiveMap;
 import net.sourceforge.schemaspy.util.Dot;
+import net.sourceforge.schemaspy.util.DotRenderPool;
 import net.sourceforge.schemaspy.util.HtmlEncoder;
 import net.sourceforge.schemaspy.util.LineWriter;
 
@@ -46,7 +47,13 @@ import net.sourceforge.schemaspy.util.LineWriter;
  */
 public class HtmlTablePage extends HtmlFormatter {
     private static final HtmlTablePage instance = new HtmlTablePage();
-    private int columnCounter = 0;
+    // pages can be written concurrently, so each thread counts its own rows
+    private final ThreadLocal<Integer> columnCounter = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return 0;
+        }
+    };
 
     private final Map<String, String> defaultValueAliases = new HashMap<String, String>();
     {
@@ -73,8 +80,43 @@ public class HtmlTablePage extends HtmlFormatter {
     }
 
     public WriteStats write(Database db, Table table, File outputDir, WriteStats stats, LineWriter out) throws IOException {
+        generateDots(table, new File(outputDir, "diagrams"), stats);
+        return write(db, table, outputDir, stats, null, out);
+    }
+
+    /**
+     * Generate the .dot files for the specified table and have <code>renderPool</code>
+     * start rendering them.
+     * The table's page can then be written with
+     * {@link #write(Database, Table, File, WriteStats, DotRenderPool, LineWriter)}.
+     *
+     * @param table
+     * @param outputDir
+     * @param stats
+     * @param renderPool
+     * @throws IOException
+     */
+    public void prepare(Table table, File outputDir, WriteStats stats, DotRenderPool renderPool) throws IOException {
+        File diagramsDir = new File(outputDir, "diagrams");
+        generateDots(table, diagramsDir, stats);
+        HtmlTableDiagrammer.getInstance().render(table, diagramsDir, renderPool);
+    }
+
+    /**
+     * Write the page of a table whose .dot files have already been generated
+     *
+     * @param db
+     * @param table
+     * @param outputDir
+     * @param stats
+     * @param renderPool pool that the table was {@link #prepare(Table, File, WriteStats, DotRenderPool) prepared} with
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public WriteStats write(Database db, Table table, File outputDir, WriteStats stats, DotRenderPool renderPool, LineWriter out) throws IOException {
         File diagramsDir = new File(outputDir, "diagrams");
-        boolean hasImplied = generateDots(table, diagramsDir, stats);
+        boolean hasImplied = new File(diagramsDir, table.getName() + ".implied2degrees.dot").exists();
 
         writeHeader(db, table, null, out);
         out.writeln("<table width='100%' border='0'>");
@@ -89,7 +131,7 @@ public class HtmlTablePage extends HtmlFormatter {
         writeCheckConstraints(table, out);
         writeIndexes(table, out);
         writeView(table, db, out);
-        writeDiagram(table, stats, diagramsDir, out);
+        writeDiagram(table, stats, diagramsDir, renderPool, out);
         writeFooter(out);
 
         return stats;
@@ -121,6 +163,7 @@ public class HtmlTablePage extends HtmlFormatter {
     }
 
     public void writeMainTable(Table table, LineWriter out) throws IOException {
+        resetColumnCounter();
         HtmlColumnsPage.getInstance().writeMainTableHeader(table.getId() != null, null, out);
 
         out.writeln("<tbody valign='top'>");
@@ -138,8 +181,17 @@ public class HtmlTablePage extends HtmlFormatter {
         out.writeln("</table>");
     }
 
+    /**
+     * Start a page's columns with an even row
+     */
+    void resetColumnCounter() {
+        columnCounter.set(0);
+    }
+
     public void writeColumn(TableColumn column, String tableName, Set<TableColumn> primaries, Set<TableColumn> indexedColumns, boolean slim, boolean showIds, LineWriter out) throws IOException {
-        boolean even = columnCounter++ % 2 == 0;
+        int counter = columnCounter.get();
+        columnCounter.set(counter + 1);
+        boolean even = counter % 2 == 0;
         if (even)
             out.writeln("<tr class='even'>");
         else
@@ -300,7 +352,7 @@ public class HtmlTablePage extends HtmlFormatter {
     private void writeNumRows(Database db, Table table, LineWriter out) throws IOException {
         out.write("<p title='" + table.getColumns().size() + " columns'>");
         if (displayNumRows && table.getNumRows() >= 0) {
-            out.write("Table contained " + NumberFormat.getIntegerInstance().format(table.getNumRows()) + " rows at ");
+            out.write("Table contained " + (table.isNumRowsEstimated() ? "an estimated " : "") + NumberFormat.getIntegerInstance().format(table.getNumRows()) + " rows at ");
         } else {
             out.write("Analyzed at ");
         }
@@ -525,10 +577,10 @@ public class HtmlTablePage extends HtmlFormatter {
         return false;
     }
 
-    private void writeDiagram(Table table, WriteStats stats, File diagramsDir, LineWriter html) throws IOException {
+    private void writeDiagram(Table table, WriteStats stats, File diagramsDir, DotRenderPool renderPool, LineWriter html) throws IOException {
         if (table.getMaxChildren() + table.getMaxParents() > 0) {
             html.writeln("<table width='100%' border='0'><tr><td class='container'>");
-            if (HtmlTableDiagrammer.getInstance().write(table, diagramsDir, html)) {
+            if (HtmlTableDiagrammer.getInstance().write(table, diagramsDir, renderPool, html)) {
                 html.writeln("</td></tr></table>");
                 writeExcludedColumns(stats.getExcludedColumns(), table, html);
             } else {
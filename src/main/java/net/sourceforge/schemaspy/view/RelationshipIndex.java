@@ -0,0 +1,221 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy.view;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.sourceforge.schemaspy.model.Table;
+import net.sourceforge.schemaspy.model.TableColumn;
+
+/**
+ * Snapshot of the relationships between tables, laid out so that the relationships
+ * of a table, or between a pair of tables, can be found without walking the
+ * columns of the tables and their constraints.<p/>
+ *
+ * Every table gets a number and the relationships of table <code>n</code> are
+ * the entries <code>offsets[n]</code> up to <code>offsets[n + 1]</code>
+ * of the per-relationship arrays, ordered by the number of the other table.
+ * Each relationship is recorded at both of its tables.<p/>
+ *
+ * The index doesn't see relationships that are added after it's built.
+ */
+class RelationshipIndex {
+    private final Collection<Table> indexed;
+    private final Map<Table, Integer> ids = new HashMap<Table, Integer>();
+    private final List<Table> tables = new ArrayList<Table>();
+    private final int[] offsets;
+    private final int[] others;                 // number of the table at the other end
+    private final TableColumn[] columns;        // column of the table that the relationship is recorded at
+    private final TableColumn[] otherColumns;   // column of the table at the other end
+    private final boolean[] toParent;           // if the other column is the parent
+    private final boolean[] implied;
+
+    RelationshipIndex(Collection<Table> tables) {
+        indexed = tables;
+        for (Table table : tables)
+            getId(table);
+
+        // tables can be related to tables that we weren't given (remote tables, for example)
+        for (int i = 0; i < this.tables.size(); ++i) {
+            for (TableColumn column : this.tables.get(i).getColumns()) {
+                for (TableColumn parentColumn : column.getParents())
+                    getId(parentColumn.getTable());
+                for (TableColumn childColumn : column.getChildren())
+                    getId(childColumn.getTable());
+            }
+        }
+
+        // count the relationships of each table the same way that they're added below
+        int numTables = this.tables.size();
+        offsets = new int[numTables + 1];
+        for (Table other : this.tables) {
+            for (TableColumn otherColumn : other.getColumns()) {
+                for (TableColumn column : otherColumn.getChildren())
+                    ++offsets[ids.get(column.getTable()) + 1];
+                for (TableColumn column : otherColumn.getParents())
+                    ++offsets[ids.get(column.getTable()) + 1];
+            }
+        }
+        for (int i = 0; i < numTables; ++i)
+            offsets[i + 1] += offsets[i];
+
+        int numRelationships = offsets[numTables];
+        others = new int[numRelationships];
+        columns = new TableColumn[numRelationships];
+        otherColumns = new TableColumn[numRelationships];
+        toParent = new boolean[numRelationships];
+        implied = new boolean[numRelationships];
+
+        int[] next = new int[numTables];
+        System.arraycopy(offsets, 0, next, 0, numTables);
+
+        // counting sort by the number of the other table so each table's relationships
+        // with another table are next to each other
+        for (int other = 0; other < numTables; ++other) {
+            for (TableColumn otherColumn : this.tables.get(other).getColumns()) {
+                for (TableColumn column : otherColumn.getChildren()) {
+                    add(next, column, otherColumn, other, true, column.getParentConstraint(otherColumn).isImplied());
+                }
+                for (TableColumn column : otherColumn.getParents()) {
+                    add(next, column, otherColumn, other, false, column.getChildConstraint(otherColumn).isImplied());
+                }
+            }
+        }
+    }
+
+    private int getId(Table table) {
+        Integer id = ids.get(table);
+        if (id == null) {
+            id = tables.size();
+            ids.put(table, id);
+            tables.add(table);
+        }
+        return id;
+    }
+
+    private void add(int[] next, TableColumn column, TableColumn otherColumn, int other, boolean isParent, boolean isImplied) {
+        int edge = next[ids.get(column.getTable())]++;
+        others[edge] = other;
+        columns[edge] = column;
+        otherColumns[edge] = otherColumn;
+        toParent[edge] = isParent;
+        implied[edge] = isImplied;
+    }
+
+    /**
+     * Returns <code>true</code> if this is the index of the specified tables
+     */
+    boolean isOf(Collection<Table> tables) {
+        return indexed == tables;
+    }
+
+    /**
+     * Returns <code>true</code> if the index knows about the relationships of the specified table
+     */
+    boolean contains(Table table) {
+        return ids.containsKey(table);
+    }
+
+    /**
+     * Returns the tables that the specified table has relationships with
+     */
+    Set<Table> getRelatedTables(Table table) {
+        int id = ids.get(table);
+        Set<Table> related = new LinkedHashSet<Table>();
+        for (int edge = offsets[id]; edge < offsets[id + 1]; ++edge) {
+            if (others[edge] != id)
+                related.add(tables.get(others[edge]));
+        }
+        return related;
+    }
+
+    /**
+     * Returns all of the relationships of the specified table.
+     *
+     * @see DotConnectorFinder#getRelatedConnectors(Table, boolean)
+     */
+    Set<DotConnector> getConnectors(Table table, boolean includeImplied) {
+        int id = ids.get(table);
+        Set<DotConnector> connectors = new HashSet<DotConnector>();
+        for (int edge = offsets[id]; edge < offsets[id + 1]; ++edge) {
+            if (columns[edge].isExcluded() || otherColumns[edge].isExcluded())
+                continue;
+            if (!implied[edge] || includeImplied)
+                connectors.add(newConnector(edge));
+        }
+        return connectors;
+    }
+
+    /**
+     * Returns the relationships between the two tables.
+     *
+     * @see DotConnectorFinder#getRelatedConnectors(Table, Table, boolean, boolean)
+     */
+    Set<DotConnector> getConnectors(Table table1, Table table2, boolean includeExcluded, boolean includeImplied) {
+        int id1 = ids.get(table1);
+        int id2 = ids.get(table2);
+
+        // look from the side of the table with fewer relationships
+        if (offsets[id1 + 1] - offsets[id1] > offsets[id2 + 1] - offsets[id2]) {
+            int swap = id1;
+            id1 = id2;
+            id2 = swap;
+        }
+
+        Set<DotConnector> connectors = new HashSet<DotConnector>();
+        int end = offsets[id1 + 1];
+        for (int edge = findFirst(offsets[id1], end, id2); edge < end && others[edge] == id2; ++edge) {
+            // it's excluded if the columns at both ends are
+            if (!includeExcluded && columns[edge].isExcluded() && otherColumns[edge].isExcluded())
+                continue;
+            if (!implied[edge] || includeImplied)
+                connectors.add(newConnector(edge));
+        }
+        return connectors;
+    }
+
+    /**
+     * Binary search for the first relationship in <code>[from, to)</code> with the specified table
+     */
+    private int findFirst(int from, int to, int other) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (others[mid] < other)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * Connectors get modified as they're positioned in a diagram,
+     * so each request gets new ones.
+     */
+    private DotConnector newConnector(int edge) {
+        if (toParent[edge])
+            return new DotConnector(otherColumns[edge], columns[edge], implied[edge]);
+        return new DotConnector(columns[edge], otherColumns[edge], implied[edge]);
+    }
+}
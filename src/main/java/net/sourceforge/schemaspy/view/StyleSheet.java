@@ -114,7 +114,7 @@ public class StyleSheet {
      * @return the singleton
      * @throws ParseException
      */
-    public static StyleSheet getInstance() throws ParseException {
+    public static synchronized StyleSheet getInstance() throws ParseException {
         if (instance == null) {
             try {
                 instance = new StyleSheet(new BufferedReader(getReader(Config.getInstance().getCss())));
@@ -26,6 +26,7 @@ import net.sourceforge.schemaspy.model.TableColumn;
 
 /**
  * Simple ugly hack that provides details of what was written.
+ * Pages can be written concurrently, so the counts are synchronized.
  */
 public class WriteStats {
     private int numTables;
@@ -48,18 +49,18 @@ public class WriteStats {
         excludedColumns = stats.excludedColumns;
     }
 
-    public void wroteTable(Table table) {
+    public synchronized void wroteTable(Table table) {
         if (table.isView())
             ++numViews;
         else
             ++numTables;
     }
 
-    public int getNumTablesWritten() {
+    public synchronized int getNumTablesWritten() {
         return numTables;
     }
 
-    public int getNumViewsWritten() {
+    public synchronized int getNumViewsWritten() {
         return numViews;
     }
 
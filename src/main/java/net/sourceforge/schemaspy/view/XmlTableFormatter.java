@@ -97,8 +97,11 @@ public class XmlTableFormatter {
         DOMUtil.appendAttribute(tableNode, "catalog", table.getCatalog());
         DOMUtil.appendAttribute(tableNode, "schema", table.getSchema());
         DOMUtil.appendAttribute(tableNode, "name", table.getName());
-        if (table.getNumRows() >= 0)
+        if (table.getNumRows() >= 0) {
             DOMUtil.appendAttribute(tableNode, "numRows", String.valueOf(table.getNumRows()));
+            if (table.isNumRowsEstimated())
+                DOMUtil.appendAttribute(tableNode, "numRowsEstimated", "true");
+        }
         DOMUtil.appendAttribute(tableNode, "type", table.isView() ? "VIEW" : "TABLE");
         DOMUtil.appendAttribute(tableNode, "remarks", table.getComments() == null ? "" : table.getComments());
         appendColumns(tableNode, table);
@@ -163,6 +166,8 @@ public class XmlTableFormatter {
             DOMUtil.appendAttribute(childNode, "column", childColumn.getName());
             DOMUtil.appendAttribute(childNode, "implied", String.valueOf(constraint.isImplied()));
             DOMUtil.appendAttribute(childNode, "onDeleteCascade", String.valueOf(constraint.isCascadeOnDelete()));
+            DOMUtil.appendAttribute(childNode, "updateRule", String.valueOf(constraint.getUpdateRule()));
+            DOMUtil.appendAttribute(childNode, "deleteRule", String.valueOf(constraint.getDeleteRule()));
         }
 
         for (TableColumn parentColumn : column.getParents()) {
@@ -177,6 +182,8 @@ public class XmlTableFormatter {
             DOMUtil.appendAttribute(parentNode, "column", parentColumn.getName());
             DOMUtil.appendAttribute(parentNode, "implied", String.valueOf(constraint.isImplied()));
             DOMUtil.appendAttribute(parentNode, "onDeleteCascade", String.valueOf(constraint.isCascadeOnDelete()));
+            DOMUtil.appendAttribute(parentNode, "updateRule", String.valueOf(constraint.getUpdateRule()));
+            DOMUtil.appendAttribute(parentNode, "deleteRule", String.valueOf(constraint.getDeleteRule()));
         }
 
         return columnNode;
@@ -241,6 +248,7 @@ public class XmlTableFormatter {
                     DOMUtil.appendAttribute(indexNode, "id", String.valueOf(index.getId()));
                 DOMUtil.appendAttribute(indexNode, "name", index.getName());
                 DOMUtil.appendAttribute(indexNode, "unique", String.valueOf(index.isUnique()));
+                DOMUtil.appendAttribute(indexNode, "primaryKey", String.valueOf(index.isPrimaryKey()));
 
                 for (TableColumn column : index.getColumns()) {
                     Node columnNode = document.createElement("column");
@@ -72,6 +72,33 @@ function syncImage() {
   }
 }
 
+// rows of the columns page in the order that they were written,
+// which is the order that the precomputed columnSorts refer to
+var columnRows = null;
+
+// rearrange the rows of the columns page in the order of the specified detail
+function sortColumns(by) {
+  var body = $('#columns tbody').get(0);
+  if (!columnRows)
+    columnRows = $(body).children('tr').get();
+
+  var order = columnSorts[by];
+  var table = body.parentNode;
+  table.removeChild(body);  // so the page isn't laid out again as each row moves
+  for (var i = 0; i < columnRows.length; ++i) {
+    var row = columnRows[order ? order[i] : i];
+    var stripe = i % 2 == 0 ? 'even' : 'odd';
+    row.className = stripe;
+    // the parent/child cells have nested rows that are striped like their outer row
+    $(row).find('tr.relative').removeClass('even odd').addClass(stripe);
+    body.appendChild(row);
+  }
+  table.appendChild(body);
+
+  $('#columns th.sortable').removeClass('sortedByColumn').addClass('notSortedByColumn');
+  $('#sortBy' + by).removeClass('notSortedByColumn').addClass('sortedByColumn');
+}
+
 // our 'ready' handler makes the page consistent
 $(function(){
   associate($('#implied'),         $('.impliedRelationship'));
@@ -90,6 +117,11 @@ $(function(){
     unsync($('#implied'), $('.degrees'));
   });
 
+  $('#columns th.sortable a').click(function() {
+    sortColumns($(this).parent().attr('id').substring('sortBy'.length));
+    return false;
+  });
+
   unsync($('#removeImpliedOrphans'), $('.impliedNotOrphan'));
   $('#removeImpliedOrphans').click(function() {
     unsync($('#removeImpliedOrphans'), $('.impliedNotOrphan'));
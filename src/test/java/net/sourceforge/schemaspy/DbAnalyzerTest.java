@@ -0,0 +1,122 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.util.List;
+import junit.framework.TestCase;
+import net.sourceforge.schemaspy.model.Database;
+import net.sourceforge.schemaspy.model.ImpliedForeignKeyConstraint;
+
+/**
+ * Tests of inferring implied constraints from columns that match primary keys.
+ * The tables are loaded from an offline XML model.
+ */
+public class DbAnalyzerTest extends TestCase {
+    /**
+     * A column that matches another table's single column primary key is implied to reference it
+     */
+    public void testSingleColumnMatch() throws Exception {
+        Database db = TestModel.load(
+            table("customer", new String[] {"customer_id"}, "name") +
+            table("orders", new String[] {"order_id"}, "customer_id"));
+
+        List<ImpliedForeignKeyConstraint> implied = DbAnalyzer.getImpliedConstraints(db.getTables());
+
+        assertEquals(1, implied.size());
+        assertEquals("customer", implied.get(0).getParentTable().getName());
+        assertEquals("orders", implied.get(0).getChildTable().getName());
+        assertEquals("[customer_id]", implied.get(0).getChildColumns().toString());
+    }
+
+    /**
+     * Columns that together match another table's composite primary key
+     * are implied to reference all of it, whatever order they're in
+     */
+    public void testCompositeMatch() throws Exception {
+        Database db = TestModel.load(
+            table("region", new String[] {"country", "code"}, "name") +
+            table("office", new String[] {"office_id"}, "code", "country"));
+
+        List<ImpliedForeignKeyConstraint> implied = DbAnalyzer.getImpliedConstraints(db.getTables());
+
+        assertEquals(1, implied.size());
+        ImpliedForeignKeyConstraint constraint = implied.get(0);
+        assertEquals("region", constraint.getParentTable().getName());
+        assertEquals("office", constraint.getChildTable().getName());
+        assertEquals(2, constraint.getChildColumns().size());
+        for (int i = 0; i < 2; ++i)
+            assertEquals(constraint.getParentColumns().get(i).getName(), constraint.getChildColumns().get(i).getName());
+    }
+
+    /**
+     * A composite primary key that several tables have doesn't say which of them is the parent
+     */
+    public void testSharedCompositeKeyIgnored() throws Exception {
+        Database db = TestModel.load(
+            table("region", new String[] {"country", "code"}, "name") +
+            table("zone", new String[] {"country", "code"}, "name") +
+            table("office", new String[] {"office_id"}, "country", "code"));
+
+        assertTrue(DbAnalyzer.getImpliedConstraints(db.getTables()).isEmpty());
+    }
+
+    /**
+     * A primary key that already references a matching column isn't implied
+     * to be referenced by that column as well
+     */
+    public void testReverseRelationshipSkipped() throws Exception {
+        Database db = TestModel.load(
+            "<table name='item' schema='s' type='TABLE' remarks=''>" +
+                column(0, "item_id") +
+                "<column id='1' name='code' type='int4' size='10' digits='0' nullable='true' autoUpdated='false' remarks=''>" +
+                    "<child column='code' foreignKey='item_code_fk' implied='false' onDeleteCascade='false' schema='s' table='item_code'/>" +
+                "</column>" +
+                "<primaryKey column='item_id' sequenceNumberInPK='1'/>" +
+            "</table>" +
+            "<table name='item_code' schema='s' type='TABLE' remarks=''>" +
+                "<column id='0' name='code' type='int4' size='10' digits='0' nullable='false' autoUpdated='false' remarks=''>" +
+                    "<parent column='code' foreignKey='item_code_fk' implied='false' onDeleteCascade='false' schema='s' table='item'/>" +
+                "</column>" +
+                "<primaryKey column='code' sequenceNumberInPK='1'/>" +
+            "</table>");
+
+        assertTrue(DbAnalyzer.getImpliedConstraints(db.getTables()).isEmpty());
+    }
+
+    /**
+     * Returns the XML of a table with the specified primary key and other columns,
+     * all of which are the same type and size
+     */
+    private static String table(String name, String[] primaryKey, String... columns) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<table name='" + name + "' schema='s' type='TABLE' remarks=''>");
+        int id = 0;
+        for (String column : primaryKey)
+            xml.append(column(id++, column));
+        for (String column : columns)
+            xml.append(column(id++, column));
+        for (String column : primaryKey)
+            xml.append("<primaryKey column='" + column + "' sequenceNumberInPK='1'/>");
+        xml.append("</table>");
+        return xml.toString();
+    }
+
+    private static String column(int id, String name) {
+        return "<column id='" + id + "' name='" + name + "' type='int4' size='10' digits='0' nullable='false' autoUpdated='false' remarks=''/>";
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Tests of what a {@link RunManifest} considers to be completed
+ */
+public class RunManifestTest extends TestCase {
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        outputDir = File.createTempFile("schemaspy", "");
+        outputDir.delete();
+        outputDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(outputDir);
+    }
+
+    public void testCompletedWithHtml() throws Exception {
+        RunManifest manifest = new RunManifest(outputDir, false);
+        manifest.started("a");
+        assertFalse(manifest.isCompleted("a"));
+
+        write("a", "index.html", "index");
+        write("a", "db.a.xml", "model");
+        manifest.completed("a", 10);
+        assertTrue(manifest.isCompleted("a"));
+
+        // clobbered output gets redone
+        write("a", "index.html", "something else");
+        assertFalse(manifest.isCompleted("a"));
+    }
+
+    /**
+     * With <code>-nohtml</code> there's no <code>index.html</code>, just the XML model
+     */
+    public void testCompletedWithoutHtml() throws Exception {
+        RunManifest manifest = new RunManifest(outputDir, false);
+        manifest.started("a");
+        write("a", "db.a.xml", "model");
+        manifest.completed("a", 10);
+        assertTrue(manifest.isCompleted("a"));
+
+        write("a", "db.a.xml", "another model");
+        assertFalse(manifest.isCompleted("a"));
+    }
+
+    public void testNoOutput() throws Exception {
+        RunManifest manifest = new RunManifest(outputDir, false);
+        manifest.started("a");
+        manifest.completed("a", 10);
+        assertFalse(manifest.isCompleted("a"));
+    }
+
+    public void testFailed() throws Exception {
+        RunManifest manifest = new RunManifest(outputDir, false);
+        manifest.started("a");
+        write("a", "index.html", "index");
+        manifest.failed("a", 10);
+        assertFalse(manifest.isCompleted("a"));
+    }
+
+    /**
+     * Only a resumed run picks up what the previous one recorded
+     */
+    public void testResume() throws Exception {
+        RunManifest manifest = new RunManifest(outputDir, false);
+        manifest.started("a");
+        write("a", "index.html", "index");
+        manifest.completed("a", 10);
+        manifest.started("b");
+
+        RunManifest resumed = new RunManifest(outputDir, true);
+        assertTrue(resumed.isCompleted("a"));
+        assertFalse(resumed.isCompleted("b"));
+
+        assertFalse(new RunManifest(outputDir, false).isCompleted("a"));
+    }
+
+    private void write(String schema, String fileName, String content) throws IOException {
+        File schemaDir = new File(outputDir, schema);
+        schemaDir.mkdirs();
+        FileWriter out = new FileWriter(new File(schemaDir, fileName));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                delete(child);
+        }
+        file.delete();
+    }
+}
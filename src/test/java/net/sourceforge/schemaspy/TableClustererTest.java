@@ -0,0 +1,96 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+import net.sourceforge.schemaspy.model.Database;
+import net.sourceforge.schemaspy.model.Table;
+
+/**
+ * Tests of splitting tables into clusters of related tables.
+ * The tables are loaded from an offline XML model.
+ */
+public class TableClustererTest extends TestCase {
+    /**
+     * A group of related tables that's too big has to be split into
+     * clusters no bigger than the limit, along its weakest relationships
+     */
+    public void testSizeCap() throws Exception {
+        Database db = TestModel.load(new String[][] {
+            {"a1"},
+            {"a2", "a1"},
+            {"a3", "a1", "a2"},
+            {"a4", "a1", "a2", "a3"},
+            {"b1", "a1"},
+            {"b2", "b1"},
+            {"b3", "b1", "b2"},
+            {"b4", "b1", "b2", "b3"}
+        });
+
+        List<Set<Table>> clusters = new TableClusterer().getClusters(db.getTables(), false, 4);
+
+        assertEquals(2, clusters.size());
+        assertEquals("[a1, a2, a3, a4]", clusters.get(0).toString());
+        assertEquals("[b1, b2, b3, b4]", clusters.get(1).toString());
+    }
+
+    /**
+     * Small groups have to be packed together without exceeding the limit
+     */
+    public void testPacking() throws Exception {
+        Database db = TestModel.load(new String[][] {
+            {"a1"},
+            {"a2", "a1"},
+            {"a3", "a1"},
+            {"b1"},
+            {"b2", "b1"},
+            {"c1"},
+            {"c2", "c1"},
+            {"loner"}
+        });
+
+        List<Set<Table>> clusters = new TableClusterer().getClusters(db.getTables(), false, 4);
+
+        assertEquals(2, clusters.size());
+        assertEquals("[a1, a2, a3, loner]", clusters.get(0).toString());
+        assertEquals("[b1, b2, c1, c2]", clusters.get(1).toString());
+    }
+
+    /**
+     * Groups that fit within the limit are left alone,
+     * even if they could be packed with each other
+     */
+    public void testRelatedTablesStayTogether() throws Exception {
+        Database db = TestModel.load(new String[][] {
+            {"a1"},
+            {"a2", "a1"},
+            {"a3", "a2"},
+            {"b1"},
+            {"b2", "b1"},
+            {"b3", "b2"}
+        });
+
+        List<Set<Table>> clusters = new TableClusterer().getClusters(db.getTables(), false, 5);
+
+        assertEquals(2, clusters.size());
+        assertEquals("[a1, a2, a3]", clusters.get(0).toString());
+        assertEquals("[b1, b2, b3]", clusters.get(1).toString());
+    }
+}
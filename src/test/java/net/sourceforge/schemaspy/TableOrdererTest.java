@@ -0,0 +1,95 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import net.sourceforge.schemaspy.model.Database;
+import net.sourceforge.schemaspy.model.ForeignKeyConstraint;
+import net.sourceforge.schemaspy.model.Table;
+
+/**
+ * Tests of ordering tables by their RI constraints.
+ * The tables are loaded from an offline XML model.
+ */
+public class TableOrdererTest extends TestCase {
+    /**
+     * Parents have to be listed before their children
+     */
+    public void testParentsFirst() throws Exception {
+        Database db = TestModel.load(new String[][] {
+            {"order_item", "orders", "item"},
+            {"orders", "customer"},
+            {"item"},
+            {"customer"},
+            {"loner"}
+        });
+
+        List<ForeignKeyConstraint> recursiveConstraints = new ArrayList<ForeignKeyConstraint>();
+        List<Table> ordered = new TableOrderer().getTablesOrderedByRI(db.getTables(), recursiveConstraints);
+
+        assertEquals(5, ordered.size());
+        assertTrue(recursiveConstraints.isEmpty());
+        assertBefore(ordered, "customer", "orders");
+        assertBefore(ordered, "orders", "order_item");
+        assertBefore(ordered, "item", "order_item");
+        assertEquals("tables without relationships go last", "loner", ordered.get(4).getName());
+    }
+
+    /**
+     * Cycles have to be broken by ignoring as few constraints as possible
+     * and the tables' relationships must be left alone
+     */
+    public void testCycles() throws Exception {
+        Database db = TestModel.load(new String[][] {
+            {"a", "c"},
+            {"b", "a"},
+            {"c", "b"},
+            {"d", "c", "d"},
+            {"e", "d"}
+        });
+
+        List<ForeignKeyConstraint> recursiveConstraints = new ArrayList<ForeignKeyConstraint>();
+        List<Table> ordered = new TableOrderer().getTablesOrderedByRI(db.getTables(), recursiveConstraints);
+
+        assertEquals(5, ordered.size());
+        assertEquals("one to break the a-b-c cycle and d's reference to itself", 2, recursiveConstraints.size());
+        assertBefore(ordered, "c", "d");
+        assertBefore(ordered, "d", "e");
+
+        Table a = db.getTablesByName().get("a");
+        assertEquals(1, a.getNumParents());
+        assertEquals(1, a.getNumChildren());
+        assertEquals(2, db.getTablesByName().get("d").getNumParents());
+    }
+
+    private static void assertBefore(List<Table> ordered, String parent, String child) {
+        int parentIndex = -1;
+        int childIndex = -1;
+        for (int i = 0; i < ordered.size(); ++i) {
+            String name = ordered.get(i).getName();
+            if (name.equals(parent))
+                parentIndex = i;
+            if (name.equals(child))
+                childIndex = i;
+        }
+
+        assertTrue(parent + " should be listed before " + child, parentIndex != -1 && parentIndex < childIndex);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import net.sourceforge.schemaspy.model.Database;
+
+/**
+ * Offline XML models of databases for tests to load
+ */
+class TestModel {
+    /**
+     * Load a database where each table has an <code>id</code> primary key
+     * and references the <code>id</code> of each of the tables that follow its name.
+     */
+    static Database load(String[][] tables) throws Exception {
+        StringBuilder xml = new StringBuilder();
+        for (String[] table : tables) {
+            xml.append("<table name='" + table[0] + "' schema='s' type='TABLE' remarks=''>");
+            xml.append("<column id='0' name='id' type='int4' size='10' digits='0' nullable='false' autoUpdated='false' remarks=''>");
+            for (String[] child : tables) {
+                for (int i = 1; i < child.length; ++i) {
+                    if (child[i].equals(table[0]))
+                        xml.append("<child column='" + child[i] + "_id' foreignKey='" + child[0] + "_" + child[i] + "' implied='false' onDeleteCascade='false' schema='s' table='" + child[0] + "'/>");
+                }
+            }
+            xml.append("</column>");
+            for (int i = 1; i < table.length; ++i) {
+                xml.append("<column id='" + i + "' name='" + table[i] + "_id' type='int4' size='10' digits='0' nullable='true' autoUpdated='false' remarks=''>");
+                xml.append("<parent column='id' foreignKey='" + table[0] + "_" + table[i] + "' implied='false' onDeleteCascade='false' schema='s' table='" + table[i] + "'/>");
+                xml.append("</column>");
+            }
+            xml.append("<primaryKey column='id' sequenceNumberInPK='1'/>");
+            xml.append("</table>");
+        }
+
+        return load(xml.toString());
+    }
+
+    /**
+     * Load a database from the XML of its tables
+     */
+    static Database load(String tablesXml) throws Exception {
+        String xml = "<database name='test' schema='s' type='test'><tables>" + tablesXml + "</tables></database>";
+
+        File file = File.createTempFile("schemaspy", ".xml");
+        file.deleteOnExit();
+        write(xml, file);
+
+        return new Database(new Config(new String[] {"-t", "pgsql"}), file);
+    }
+
+    private static void write(String contents, File file) throws IOException {
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+}
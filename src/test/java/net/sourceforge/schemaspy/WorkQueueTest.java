@@ -0,0 +1,135 @@
+/*
+ * This file is a part of the SchemaSpy project (http://schemaspy.sourceforge.net).
+ *
+ * SchemaSpy is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * SchemaSpy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.sourceforge.schemaspy;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Tests of several workers sharing a {@link WorkQueue}.
+ * Each worker gets its own instance of the queue, like it would in its own process.
+ */
+public class WorkQueueTest extends TestCase {
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        outputDir = File.createTempFile("schemaspy", "");
+        outputDir.delete();
+        outputDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(outputDir);
+    }
+
+    /**
+     * Each schema has to be claimed by exactly one worker
+     */
+    public void testClaimedOnce() throws Exception {
+        new WorkQueue(outputDir).create(Arrays.asList(new String[] {"a", "b", "c", "d", "e"}));
+
+        WorkQueue worker1 = new WorkQueue(outputDir);
+        WorkQueue worker2 = new WorkQueue(outputDir);
+        Set<String> claimed = new HashSet<String>();
+        String schema;
+        while ((schema = (claimed.size() % 2 == 0 ? worker1 : worker2).claim()) != null)
+            assertTrue(schema + " claimed twice", claimed.add(schema));
+        worker1.close();
+        worker2.close();
+
+        assertEquals(5, claimed.size());
+        assertTrue(worker1.hasClaims());
+    }
+
+    /**
+     * Schemas claimed by a worker that stopped renewing its claims go to someone else,
+     * who then owns their outcomes, and the outcomes end up in the manifest
+     */
+    public void testExpiredClaims() throws Exception {
+        new WorkQueue(outputDir).create(Arrays.asList(new String[] {"a", "b"}));
+
+        WorkQueue dead = new WorkQueue(outputDir, 1500);
+        assertEquals("a", dead.claim());
+        dead.close();
+
+        WorkQueue alive = new WorkQueue(outputDir, 1500);
+        assertEquals("b", alive.claim());
+        assertNull("a's claim hasn't expired yet", alive.claim());
+        Thread.sleep(2500);  // some file systems only keep modification times to the second
+        assertEquals("a", alive.claim());
+
+        // the dead worker coming back to life mustn't disturb the claim that replaced its own
+        dead.finished("a", false, 5);
+        assertTrue(alive.hasClaims());
+
+        writeIndex("a");
+        alive.finished("a", true, 10);
+        alive.finished("b", false, 20);
+        alive.close();
+        assertFalse(alive.hasClaims());
+
+        RunManifest manifest = new RunManifest(outputDir, false);
+        alive.reportTo(manifest);
+        assertTrue(manifest.isCompleted("a"));
+        assertFalse(manifest.isCompleted("b"));
+    }
+
+    /**
+     * A claim that doesn't name a schema is an error, not the end of the queue
+     */
+    public void testUnreadableClaim() throws Exception {
+        WorkQueue queue = new WorkQueue(outputDir);
+        queue.create(Arrays.asList(new String[] {"a"}));
+        new FileWriter(new File(new File(new File(outputDir, "queue"), "pending"), "000000")).close();
+
+        try {
+            queue.claim();
+            fail("Claimed a schema without a name");
+        } catch (IOException expected) {
+        } finally {
+            queue.close();
+        }
+    }
+
+    private void writeIndex(String schema) throws IOException {
+        File schemaDir = new File(outputDir, schema);
+        schemaDir.mkdirs();
+        FileWriter out = new FileWriter(new File(schemaDir, "index.html"));
+        try {
+            out.write(schema);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                delete(child);
+        }
+        file.delete();
+    }
+}
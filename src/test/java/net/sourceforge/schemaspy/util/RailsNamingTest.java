@@ -53,4 +53,18 @@ public class RailsNamingTest extends TestCase {
 
         assertEquals(expectedTableName, primaryTableName);
     }
-}
\ No newline at end of file
+
+    /**
+     * Results are cached, so make sure that words that differ only by case
+     * don't get each other's results
+     */
+    public void testRepeatedWords() {
+        assertEquals("people", Inflection.pluralize("person"));
+        assertEquals("People", Inflection.pluralize("Person"));
+        assertEquals("people", Inflection.pluralize("person"));
+        assertEquals("person", Inflection.singularize("people"));
+        assertEquals("Statuses", Inflection.pluralize("Status"));
+        assertEquals("status", Inflection.singularize("statuses"));
+        assertEquals("sheep", Inflection.pluralize("sheep"));
+    }
+}